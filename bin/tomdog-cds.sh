@@ -0,0 +1,36 @@
+#!/bin/sh
+# 使用AppCDS启动Tomdog
+#   bin/tomdog-cds.sh train  打包并运行一次训练启动, 退出时把加载过的类归档到 target/tomdog.jsa
+#   bin/tomdog-cds.sh run    使用归档启动, 没有归档时先训练
+# CDS只归档jar中的类, 所以使用打包后的jar而不是target/classes; 更换JDK或者依赖后需要重新训练.
+set -e
+cd "$(dirname "$0")/.."
+
+ARCHIVE=target/tomdog.jsa
+JAVA_OPTS=${JAVA_OPTS:-"--add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED"}
+
+classpath() {
+    jar=$(ls target/Tomdog-*.jar)
+    deps=$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+    echo "$jar:$deps"
+}
+
+train() {
+    mvn -q -B package -DskipTests
+    rm -f "$ARCHIVE"
+    java $JAVA_OPTS -Xlog:cds=error -XX:ArchiveClassesAtExit="$ARCHIVE" -Dtomdog.cds.training=true -cp "$(classpath)" com.hdh.Main
+}
+
+case "$1" in
+    train)
+        train
+        ;;
+    run)
+        [ -f "$ARCHIVE" ] || train
+        exec java $JAVA_OPTS -XX:SharedArchiveFile="$ARCHIVE" -Xlog:cds=error -cp "$(classpath)" com.hdh.Main
+        ;;
+    *)
+        echo "用法: $0 train|run" >&2
+        exit 1
+        ;;
+esac
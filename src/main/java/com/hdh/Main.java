@@ -4,12 +4,34 @@ import com.hdh.connector.HttpConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
 public class Main {
     public static void main(String[] args) {
         Logger logger = LoggerFactory.getLogger(HttpConnector.class);
         String host = "0.0.0.0";
         int port = 8080;
+        // AppCDS训练模式: 启动后发送几个请求加载请求处理路径上的类, 然后退出, 由-XX:ArchiveClassesAtExit生成归档
+        boolean training = Boolean.getBoolean("tomdog.cds.training");
         try (HttpConnector connector = new HttpConnector(host, port)) {
+            if (training) {
+                for (String path : new String[]{"/", "/metrics", "/login"}) {
+                    warmUp(port, path);
+                }
+                logger.info("AppCDS训练完成");
+                return;
+            }
+            // kill/Ctrl+C时优雅停止: 等待正在处理的请求, 销毁应用, 报告完成和中断的请求数
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                HttpConnector.ShutdownReport report = connector.shutdown();
+                logger.info("Tomdog http server was shutdown: 完成 {} 个请求, 中断 {} 个请求, 拒绝 {} 个新请求, 提前关闭 {} 个空闲连接, 耗时 {} ms",
+                        report.drained(), report.aborted(), report.rejected(),
+                        report.idleClosed() < 0 ? "(不支持)" : report.idleClosed(), report.elapsedMillis());
+            }, "tomdog-shutdown"));
             for (;;) {
                 try {
                     Thread.sleep(1000);
@@ -22,4 +44,17 @@ public class Main {
         }
         logger.info("Tomdog http server was shutdown.");
     }
+
+    /**
+     * 向本机服务器发送一个GET请求并读完响应
+     */
+    private static void warmUp(int port, String path) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            OutputStream output = socket.getOutputStream();
+            output.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+            InputStream input = socket.getInputStream();
+            input.readAllBytes();
+        }
+    }
 }
@@ -0,0 +1,312 @@
+package com.hdh.connector;
+
+import com.hdh.engine.mapping.AbstractMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 准入控制
+ * 使用基于延迟梯度的自适应并发限制: 短期平均延迟相对长期平均延迟升高时降低并发上限, 延迟平稳时缓慢提高上限.
+ * 超过上限的请求进入有界等待队列, 队列已满或等待超时时快速拒绝.
+ * 工作线程队列中的请求数也不超过等待队列长度(见AdmissionExecutor), 排队时间计入等待时间和延迟样本.
+ * 请求按URL分为三个优先级, 低优先级只能使用部分并发额度, 过载时最先被拒绝.
+ */
+public class AdmissionController {
+
+    /**
+     * 优先级, share 表示可以使用的并发额度比例
+     */
+    public enum Priority {
+        CRITICAL(1.0), NORMAL(0.9), SHEDDABLE(0.5);
+
+        final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+    }
+
+    static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100); // 采样窗口
+    static final int MIN_WINDOW_SAMPLES = 10;
+    static final double TOLERANCE = 1.5; // 允许的延迟升高倍数
+    static final double SMOOTHING = 0.2;
+
+    final int minLimit;
+    final int maxLimit;
+    final int maxQueue;
+    final long queueTimeoutNanos;
+    final int retryAfterSeconds;
+    final List<PriorityMapping> priorityMappings;
+
+    final ReentrantLock lock = new ReentrantLock();
+    final Condition[] conditions = new Condition[Priority.values().length];
+    final int[] waiting = new int[Priority.values().length];
+    int totalWaiting = 0;
+    final AtomicInteger queued = new AtomicInteger(); // 工作线程队列中的请求数
+    int inFlight = 0;
+    volatile double limit;
+
+    // 延迟统计, 由lock保护
+    double longRtt = 0;
+    long windowStart = System.nanoTime();
+    long windowSum = 0;
+    int windowCount = 0;
+    int windowMaxInFlight = 0;
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 最小并发上限
+     * @param maxLimit 最大并发上限
+     * @param maxQueue 等待队列长度
+     * @param queueTimeoutMillis 最长等待时间
+     * @param retryAfterSeconds 拒绝时返回的Retry-After
+     * @param priorityMappings URL优先级映射
+     */
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, int maxQueue, long queueTimeoutMillis,
+                               int retryAfterSeconds, List<PriorityMapping> priorityMappings) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("并发上限配置错误");
+        }
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.priorityMappings = priorityMappings;
+        for (int i = 0; i < this.conditions.length; i++) {
+            this.conditions[i] = this.lock.newCondition();
+        }
+    }
+
+    /**
+     * 根据系统属性创建准入控制, 未开启时返回null
+     * -Dtomdog.admission=true 开启准入控制
+     * -Dtomdog.admission.initialLimit=20
+     * -Dtomdog.admission.minLimit=4
+     * -Dtomdog.admission.maxLimit=工作线程数
+     * -Dtomdog.admission.maxQueue=100
+     * -Dtomdog.admission.queueTimeoutMillis=50
+     * -Dtomdog.admission.retryAfterSeconds=1
+     * -Dtomdog.admission.critical=/login,/logout 高优先级URL
+     * -Dtomdog.admission.sheddable= 低优先级URL
+     * @param workerThreads 工作线程数, 作为默认的最大并发上限
+     */
+    public static AdmissionController fromSystemProperties(int workerThreads) {
+        if (!Boolean.getBoolean("tomdog.admission")) {
+            return null;
+        }
+        List<PriorityMapping> mappings = new ArrayList<>();
+        addMappings(mappings, System.getProperty("tomdog.admission.critical", "/login,/logout"), Priority.CRITICAL);
+        addMappings(mappings, System.getProperty("tomdog.admission.sheddable", ""), Priority.SHEDDABLE);
+        mappings.sort(null);
+        return new AdmissionController(
+                Integer.getInteger("tomdog.admission.initialLimit", 20),
+                Integer.getInteger("tomdog.admission.minLimit", 4),
+                Integer.getInteger("tomdog.admission.maxLimit", Math.max(4, workerThreads)),
+                Integer.getInteger("tomdog.admission.maxQueue", 100),
+                Long.getLong("tomdog.admission.queueTimeoutMillis", 50),
+                Integer.getInteger("tomdog.admission.retryAfterSeconds", 1),
+                mappings);
+    }
+
+    static void addMappings(List<PriorityMapping> mappings, String patterns, Priority priority) {
+        for (String pattern : patterns.split(",")) {
+            pattern = pattern.strip();
+            if (!pattern.isEmpty()) {
+                mappings.add(new PriorityMapping(pattern, priority));
+            }
+        }
+    }
+
+    /**
+     * 获取请求路径的优先级
+     */
+    public Priority classify(String path) {
+        for (PriorityMapping mapping : this.priorityMappings) {
+            if (mapping.matches(path)) {
+                return mapping.priority;
+            }
+        }
+        return Priority.NORMAL;
+    }
+
+    /**
+     * 请求进入工作线程队列之前调用, 排队的请求数已经达到队列长度时拒绝
+     * @return 是否可以排队, 可以时出队后必须调用dequeue
+     */
+    public boolean enqueue() {
+        if (this.queued.incrementAndGet() > this.maxQueue) {
+            this.queued.decrementAndGet();
+            this.rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 请求离开工作线程队列
+     */
+    public void dequeue() {
+        this.queued.decrementAndGet();
+    }
+
+    /**
+     * 已经排队的请求被线程池拒绝
+     */
+    void rejectedInQueue() {
+        this.rejected.increment();
+    }
+
+    /**
+     * 申请执行许可
+     * @return 是否获得许可, 获得许可后必须调用release
+     */
+    public boolean acquire(Priority priority) {
+        return acquire(priority, System.nanoTime());
+    }
+
+    /**
+     * 申请执行许可, 在工作线程队列中的等待时间也计入排队超时
+     * @param enqueuedNanos 请求进入队列的时间(System.nanoTime())
+     * @return 是否获得许可, 获得许可后必须调用release
+     */
+    public boolean acquire(Priority priority, long enqueuedNanos) {
+        this.lock.lock();
+        try {
+            if (this.inFlight < capacity(priority)) {
+                admit();
+                return true;
+            }
+            long nanos = this.queueTimeoutNanos - (System.nanoTime() - enqueuedNanos);
+            if (this.totalWaiting >= this.maxQueue || nanos <= 0) {
+                this.rejected.increment();
+                return false;
+            }
+            int p = priority.ordinal();
+            this.waiting[p]++;
+            this.totalWaiting++;
+            try {
+                while (this.inFlight >= capacity(priority)) {
+                    if (nanos <= 0) {
+                        this.rejected.increment();
+                        return false;
+                    }
+                    nanos = this.conditions[p].awaitNanos(nanos);
+                }
+                admit();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.rejected.increment();
+                return false;
+            } finally {
+                this.waiting[p]--;
+                this.totalWaiting--;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可并记录处理耗时
+     * @param rttNanos 处理耗时
+     */
+    public void release(long rttNanos) {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            sample(rttNanos);
+            // 按优先级唤醒等待的请求
+            for (Priority priority : Priority.values()) {
+                int p = priority.ordinal();
+                if (this.waiting[p] > 0 && this.inFlight < capacity(priority)) {
+                    this.conditions[p].signal();
+                    break;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void admit() {
+        this.inFlight++;
+        this.windowMaxInFlight = Math.max(this.windowMaxInFlight, this.inFlight);
+        this.accepted.increment();
+    }
+
+    private int capacity(Priority priority) {
+        return Math.max(1, (int) (this.limit * priority.share));
+    }
+
+    /**
+     * 记录延迟样本, 每个窗口结束时更新并发上限
+     */
+    private void sample(long rttNanos) {
+        this.windowSum += rttNanos;
+        this.windowCount++;
+        long now = System.nanoTime();
+        if (now - this.windowStart < WINDOW_NANOS || this.windowCount < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        double shortRtt = (double) this.windowSum / this.windowCount;
+        if (this.longRtt == 0) {
+            this.longRtt = shortRtt;
+        } else {
+            this.longRtt = this.longRtt * 0.95 + shortRtt * 0.05;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.longRtt / shortRtt));
+        double current = this.limit;
+        double newLimit = current * gradient + Math.sqrt(current);
+        if (newLimit > current && this.windowMaxInFlight < current / 2) {
+            // 并发没有用满时不提高上限
+            newLimit = current;
+        }
+        newLimit = current * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+        this.windowStart = now;
+        this.windowSum = 0;
+        this.windowCount = 0;
+        this.windowMaxInFlight = this.inFlight;
+    }
+
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    public long getAccepted() {
+        return this.accepted.sum();
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    /**
+     * URL优先级映射
+     */
+    public static class PriorityMapping extends AbstractMapping {
+
+        final Priority priority;
+
+        public PriorityMapping(String urlPattern, Priority priority) {
+            super(urlPattern);
+            this.priority = priority;
+        }
+    }
+}
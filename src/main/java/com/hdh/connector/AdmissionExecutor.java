@@ -0,0 +1,123 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 开启准入控制时交给HttpServer的执行器, 在分发线程上限制排队的请求数
+ * JDK HttpServer在工作线程中才解析请求行, 分发时还不知道请求路径, 所以这里只按排队数量拒绝,
+ * 按优先级的准入仍在工作线程中进行(见HttpConnector.handle), 等待时间从进入队列开始计算.
+ * 排队数达到上限或者线程池拒绝时, 直接在分发线程写出503 + Retry-After, 然后由HttpServer关闭连接.
+ */
+class AdmissionExecutor implements Executor {
+
+    static final int MAX_DRAIN_READS = 16; // 写出503前最多读取几次未读的请求数据
+
+    // 当前工作线程正在处理的请求进入队列的时间, 0表示不是经过这个执行器分发的
+    private static final ThreadLocal<long[]> enqueuedAt = ThreadLocal.withInitial(() -> new long[1]);
+    private static volatile Reflection reflection;
+
+    private final Executor executor;
+    private final AdmissionController admission;
+    private final byte[] rejectResponse;
+
+    AdmissionExecutor(Executor executor, AdmissionController admission) {
+        this.executor = executor;
+        this.admission = admission;
+        Headers headers = new Headers();
+        headers.set("Retry-After", Integer.toString(admission.getRetryAfterSeconds()));
+        headers.set("Content-Length", "0");
+        headers.set("Connection", "close");
+        this.rejectResponse = ResponseHead.encode(503, headers);
+    }
+
+    /**
+     * 当前请求进入工作线程队列的时间(System.nanoTime()), 不是经过这个执行器分发时返回0
+     */
+    static long enqueuedAt() {
+        return enqueuedAt.get()[0];
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!this.admission.enqueue()) {
+            reject(command);
+        }
+        long enqueued = System.nanoTime();
+        try {
+            this.executor.execute(() -> {
+                this.admission.dequeue();
+                long[] holder = enqueuedAt.get();
+                holder[0] = enqueued;
+                try {
+                    command.run();
+                } finally {
+                    holder[0] = 0;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.admission.dequeue();
+            this.admission.rejectedInQueue();
+            reject(command);
+        }
+    }
+
+    /**
+     * 在分发线程写出503, 然后抛出RejectedExecutionException让HttpServer关闭连接
+     * 只支持HTTP连接, HTTPS连接和无法反射访问HttpServer内部实现时直接关闭
+     */
+    void reject(Runnable command) {
+        SocketChannel channel = channel(command);
+        if (channel != null) {
+            try {
+                channel.configureBlocking(false);
+                // 先读掉已经到达的请求数据, 关闭时接收缓冲区中还有数据会发送RST, 客户端可能读不到503
+                ByteBuffer discard = ByteBuffer.allocate(4096);
+                for (int i = 0; i < MAX_DRAIN_READS && channel.read(discard) > 0; i++) {
+                    discard.clear();
+                }
+                channel.write(ByteBuffer.wrap(this.rejectResponse));
+            } catch (IOException ignored) {
+                // 连接由HttpServer关闭
+            }
+        }
+        throw new RejectedExecutionException("请求排队已满");
+    }
+
+    /**
+     * 取出HttpServer待处理请求(ServerImpl.Exchange)的HTTP连接, 不是HTTP连接时返回null
+     */
+    static SocketChannel channel(Runnable command) {
+        try {
+            Reflection r = reflection;
+            if (r == null) {
+                r = new Reflection();
+                reflection = r;
+            }
+            if (!r.exchangeClass.isInstance(command) || !"http".equals(r.protocol.get(command))) {
+                return null;
+            }
+            return (SocketChannel) r.channel.get(command);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static final class Reflection {
+        final Class<?> exchangeClass;
+        final Field channel;
+        final Field protocol;
+
+        Reflection() throws ReflectiveOperationException {
+            this.exchangeClass = Class.forName("sun.net.httpserver.ServerImpl$Exchange");
+            this.channel = ConnectionTakeover.Reflection.accessible(this.exchangeClass.getDeclaredField("chan"));
+            this.protocol = ConnectionTakeover.Reflection.accessible(this.exchangeClass.getDeclaredField("protocol"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 从JDK HttpServer接管连接, 用于协议升级
+ * JDK HttpServer没有提供接管连接的API, 这里通过反射取出底层SocketChannel和已缓冲的数据,
+ * 需要启动参数: --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED
+ * 接管后HttpServer不再读写这个连接, 连接关闭时调用release()从HttpServer中移除.
+ */
+class ConnectionTakeover {
+
+    private static volatile Reflection reflection;
+
+    final SocketChannel channel;
+    final byte[] leftover; // HttpServer已经读入缓冲区但还没有处理的数据
+    private final Object server;
+    private final Object connection;
+
+    private ConnectionTakeover(SocketChannel channel, byte[] leftover, Object server, Object connection) {
+        this.channel = channel;
+        this.leftover = leftover;
+        this.server = server;
+        this.connection = connection;
+    }
+
+    /**
+     * 接管HttpExchange所在的连接, 调用前不能提交响应头
+     */
+    static ConnectionTakeover of(HttpExchange exchange) throws IOException {
+        Reflection r = reflection();
+        try {
+            Object impl = r.impl.get(exchange);
+            Object connection = r.getConnection.invoke(impl);
+            Object server = r.getServerImpl.invoke(impl);
+            SocketChannel channel = (SocketChannel) r.getChannel.invoke(connection);
+            InputStream raw = (InputStream) r.raw.get(connection);
+            // BufferedInputStream.available()只返回缓冲区中的字节数, 不会读socket
+            byte[] leftover = raw.readNBytes(Math.max(0, raw.available()));
+            return new ConnectionTakeover(channel, leftover, server, connection);
+        } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException e) {
+            // HTTPS连接的HttpExchange是另一个实现类, 也走这里
+            throw new IOException("接管连接失败", e);
+        }
+    }
+
+    /**
+     * 关闭连接并从HttpServer的连接集合中移除, 同时结束这个HttpExchange的计数, 避免停止服务时等待
+     */
+    void release() {
+        Reflection r = reflection;
+        try {
+            r.closeConnection.invoke(this.server, this.connection);
+            r.endExchange.invoke(this.server);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 检查能否接管连接, 启动时调用一次, 提前提示缺少的启动参数
+     * @throws IOException 不能反射访问HttpServer内部实现
+     */
+    static void checkSupported() throws IOException {
+        reflection();
+    }
+
+    private static Reflection reflection() throws IOException {
+        Reflection r = reflection;
+        if (r == null) {
+            try {
+                r = new Reflection();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                throw new IOException("不支持协议升级, 需要启动参数 --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED", e);
+            }
+            reflection = r;
+        }
+        return r;
+    }
+
+    static final class Reflection {
+        final Field impl;
+        final Method getConnection;
+        final Method getServerImpl;
+        final Method getChannel;
+        final Field raw;
+        final Method closeConnection;
+        final Method endExchange;
+
+        Reflection() throws ReflectiveOperationException {
+            Class<?> exchangeClass = Class.forName("sun.net.httpserver.HttpExchangeImpl");
+            Class<?> implClass = Class.forName("sun.net.httpserver.ExchangeImpl");
+            Class<?> connectionClass = Class.forName("sun.net.httpserver.HttpConnection");
+            Class<?> serverClass = Class.forName("sun.net.httpserver.ServerImpl");
+            this.impl = accessible(exchangeClass.getDeclaredField("impl"));
+            this.getConnection = accessible(implClass.getDeclaredMethod("getConnection"));
+            this.getServerImpl = accessible(implClass.getDeclaredMethod("getServerImpl"));
+            this.getChannel = accessible(connectionClass.getDeclaredMethod("getChannel"));
+            this.raw = accessible(connectionClass.getDeclaredField("raw"));
+            this.closeConnection = accessible(serverClass.getDeclaredMethod("closeConnection", connectionClass));
+            this.endExchange = accessible(serverClass.getDeclaredMethod("endExchange"));
+        }
+
+        static <T extends java.lang.reflect.AccessibleObject> T accessible(T member) {
+            member.setAccessible(true);
+            return member;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.hdh.connector;
+
+/**
+ * 连接器配置
+ * 默认值可以通过系统属性覆盖, 例如: -Dtomdog.recycleFacades=true
+ */
+public class ConnectorConfig {
+
+    private boolean recycleFacades = false; // 是否回收复用请求/响应对象
+    private int workerThreads = 200; // 工作线程数, 0 表示使用JDK HttpServer的单个分发线程
+    private int workerQueueSize = 10000; // 等待工作线程的连接任务数, 超过时关闭连接
+    private int keepAliveTimeoutSeconds = 30; // 长连接空闲超时
+    private int maxKeepAliveConnections = 200; // 最多保持的空闲长连接数
+    private int maxKeepAliveRequests = 100; // 每个长连接最多处理的请求数, -1 表示不限制
+    // 读取整个请求(请求头和请求体)的超时时间, 超时后HttpServer直接关闭连接, -1 表示不限制
+    // JDK HttpServer没有只限制请求头的超时, 开启后上传慢的大文件也会被中断, 所以默认不限制
+    private int requestReadTimeoutSeconds = -1;
+    private boolean tcpNoDelay = true; // 响应头和响应体分两次写出, 关闭Nagle避免与延迟ACK叠加
+    private String keyStore = null; // 证书库路径, 设置后使用HTTPS
+    private String keyStorePassword = null;
+    private String keyStoreType = "PKCS12";
+    private String sslProtocols = "TLSv1.3,TLSv1.2";
+    private int sslSessionCacheSize = 10000; // TLS会话缓存数量, 0 表示不限制
+    private int sslSessionTimeoutSeconds = 86400; // TLS会话复用超时
+    private String contexts = ""; // 额外的Web应用, 格式: /路径=类路径[,/路径=类路径], 类路径中的多个目录或jar用路径分隔符分开
+    private String appBase = null; // 应用目录, 其中的WAR和展开目录自动部署, 为null时不部署
+    private int deployScanIntervalSeconds = 5; // 检查应用目录变化的间隔, 0 表示只在启动时部署
+    private int drainTimeoutSeconds = 30; // 替换或卸载应用时等待正在处理的请求结束的时间
+    private int shutdownTimeoutSeconds = 20; // 停止服务时等待正在处理的请求结束的时间, 小于容器编排常见的30秒宽限期, 留出销毁应用的时间
+    private String hosts = ""; // 虚拟主机, 格式: 主机名=应用目录[,主机名=应用目录], 主机名可以是*.example.com; 其他Host使用默认主机
+    private String errorPages = ""; // 所有应用的错误页, 格式: 状态码或异常类名=应用内路径[,...], 例如: 404=/errors/404,java.lang.Exception=/errors/500
+
+    /**
+     * 从系统属性读取配置
+     */
+    public static ConnectorConfig fromSystemProperties() {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setRecycleFacades(Boolean.getBoolean("tomdog.recycleFacades"));
+        config.setWorkerThreads(Integer.getInteger("tomdog.workerThreads", config.getWorkerThreads()));
+        config.setWorkerQueueSize(Integer.getInteger("tomdog.workerQueueSize", config.getWorkerQueueSize()));
+        config.setKeepAliveTimeoutSeconds(Integer.getInteger("tomdog.keepAliveTimeoutSeconds", config.getKeepAliveTimeoutSeconds()));
+        config.setMaxKeepAliveConnections(Integer.getInteger("tomdog.maxKeepAliveConnections", config.getMaxKeepAliveConnections()));
+        config.setMaxKeepAliveRequests(Integer.getInteger("tomdog.maxKeepAliveRequests", config.getMaxKeepAliveRequests()));
+        config.setRequestReadTimeoutSeconds(Integer.getInteger("tomdog.requestReadTimeoutSeconds", config.getRequestReadTimeoutSeconds()));
+        config.setTcpNoDelay(Boolean.parseBoolean(System.getProperty("tomdog.tcpNoDelay", Boolean.toString(config.isTcpNoDelay()))));
+        config.setKeyStore(System.getProperty("tomdog.ssl.keyStore"));
+        config.setKeyStorePassword(System.getProperty("tomdog.ssl.keyStorePassword"));
+        config.setKeyStoreType(System.getProperty("tomdog.ssl.keyStoreType", config.getKeyStoreType()));
+        config.setSslProtocols(System.getProperty("tomdog.ssl.protocols", config.getSslProtocols()));
+        config.setSslSessionCacheSize(Integer.getInteger("tomdog.ssl.sessionCacheSize", config.getSslSessionCacheSize()));
+        config.setSslSessionTimeoutSeconds(Integer.getInteger("tomdog.ssl.sessionTimeoutSeconds", config.getSslSessionTimeoutSeconds()));
+        config.setContexts(System.getProperty("tomdog.contexts", config.getContexts()));
+        config.setAppBase(System.getProperty("tomdog.appBase"));
+        config.setDeployScanIntervalSeconds(Integer.getInteger("tomdog.deploy.scanIntervalSeconds", config.getDeployScanIntervalSeconds()));
+        config.setDrainTimeoutSeconds(Integer.getInteger("tomdog.deploy.drainTimeoutSeconds", config.getDrainTimeoutSeconds()));
+        config.setShutdownTimeoutSeconds(Integer.getInteger("tomdog.shutdown.timeoutSeconds", config.getShutdownTimeoutSeconds()));
+        config.setHosts(System.getProperty("tomdog.hosts", config.getHosts()));
+        config.setErrorPages(System.getProperty("tomdog.errorPages", config.getErrorPages()));
+        return config;
+    }
+
+    public boolean isRecycleFacades() {
+        return recycleFacades;
+    }
+
+    public void setRecycleFacades(boolean recycleFacades) {
+        this.recycleFacades = recycleFacades;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public int getKeepAliveTimeoutSeconds() {
+        return keepAliveTimeoutSeconds;
+    }
+
+    public void setKeepAliveTimeoutSeconds(int keepAliveTimeoutSeconds) {
+        this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+    }
+
+    public int getMaxKeepAliveConnections() {
+        return maxKeepAliveConnections;
+    }
+
+    public void setMaxKeepAliveConnections(int maxKeepAliveConnections) {
+        this.maxKeepAliveConnections = maxKeepAliveConnections;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    public int getRequestReadTimeoutSeconds() {
+        return requestReadTimeoutSeconds;
+    }
+
+    public void setRequestReadTimeoutSeconds(int requestReadTimeoutSeconds) {
+        this.requestReadTimeoutSeconds = requestReadTimeoutSeconds;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * 是否启用HTTPS
+     */
+    public boolean isSecure() {
+        return keyStore != null;
+    }
+
+    public String getKeyStore() {
+        return keyStore;
+    }
+
+    public void setKeyStore(String keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    public String getKeyStorePassword() {
+        return keyStorePassword;
+    }
+
+    public void setKeyStorePassword(String keyStorePassword) {
+        this.keyStorePassword = keyStorePassword;
+    }
+
+    public String getKeyStoreType() {
+        return keyStoreType;
+    }
+
+    public void setKeyStoreType(String keyStoreType) {
+        this.keyStoreType = keyStoreType;
+    }
+
+    public String getSslProtocols() {
+        return sslProtocols;
+    }
+
+    public void setSslProtocols(String sslProtocols) {
+        this.sslProtocols = sslProtocols;
+    }
+
+    public int getSslSessionCacheSize() {
+        return sslSessionCacheSize;
+    }
+
+    public void setSslSessionCacheSize(int sslSessionCacheSize) {
+        this.sslSessionCacheSize = sslSessionCacheSize;
+    }
+
+    public int getSslSessionTimeoutSeconds() {
+        return sslSessionTimeoutSeconds;
+    }
+
+    public void setSslSessionTimeoutSeconds(int sslSessionTimeoutSeconds) {
+        this.sslSessionTimeoutSeconds = sslSessionTimeoutSeconds;
+    }
+
+    public String getContexts() {
+        return contexts;
+    }
+
+    public void setContexts(String contexts) {
+        this.contexts = contexts;
+    }
+
+    public String getAppBase() {
+        return appBase;
+    }
+
+    public void setAppBase(String appBase) {
+        this.appBase = appBase;
+    }
+
+    public int getDeployScanIntervalSeconds() {
+        return deployScanIntervalSeconds;
+    }
+
+    public void setDeployScanIntervalSeconds(int deployScanIntervalSeconds) {
+        this.deployScanIntervalSeconds = deployScanIntervalSeconds;
+    }
+
+    public int getDrainTimeoutSeconds() {
+        return drainTimeoutSeconds;
+    }
+
+    public void setDrainTimeoutSeconds(int drainTimeoutSeconds) {
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    public String getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(String hosts) {
+        this.hosts = hosts;
+    }
+
+    public String getErrorPages() {
+        return errorPages;
+    }
+
+    public void setErrorPages(String errorPages) {
+        this.errorPages = errorPages;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+}
@@ -0,0 +1,135 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.Headers;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 脱离HttpServer的响应, 用于异步请求(例如SSE长连接)
+ * 连接由UpgradeProcessor接管, 响应头和响应体通过非阻塞连接写出, 不占用工作线程.
+ * 响应结束后连接直接关闭, 不再回到HttpServer.
+ */
+class DetachedResponse {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final UpgradedConnection connection;
+    private final ServletOutputStream output;
+    final Body body = new Body();
+    private boolean chunked = false;
+
+    DetachedResponse(UpgradedConnection connection) {
+        this.connection = connection;
+        this.output = connection.getOutputStream();
+        // 只读取连接用于发现客户端断开, 收到的数据丢弃
+        ServletInputStream input = connection.getInputStream();
+        input.setReadListener(new ReadListener() {
+            final byte[] discard = new byte[1024];
+
+            @Override
+            public void onDataAvailable() throws IOException {
+                while (input.isReady() && input.read(this.discard) > 0) {
+                    // 丢弃
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                connection.close();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                connection.close();
+            }
+        });
+    }
+
+    /**
+     * 写出响应头, 长度参数与HttpExchange.sendResponseHeaders()相同: 0表示chunked, -1表示没有响应体
+     */
+    void sendHeaders(int status, long length, Headers headers) throws IOException {
+        headers.set("Connection", "close");
+        if (length == 0) {
+            this.chunked = true;
+            headers.set("Transfer-Encoding", "chunked");
+        } else {
+            headers.set("Content-Length", Long.toString(Math.max(0, length)));
+        }
+        this.output.write(ResponseHead.encode(status, headers));
+        if (length < 0) {
+            this.connection.closeAfterDrain();
+        }
+    }
+
+    /**
+     * 中止响应, 不等排队的数据写完直接关闭连接
+     */
+    void abort() {
+        this.connection.close();
+    }
+
+    /**
+     * 响应体, chunked时每次write编码成一个chunk, 一次写出
+     */
+    final class Body extends ServletOutputStream {
+
+        @Override
+        public boolean isReady() {
+            return output.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            output.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            if (!chunked) {
+                output.write(b, off, len);
+                return;
+            }
+            byte[] size = Integer.toHexString(len).getBytes(StandardCharsets.ISO_8859_1);
+            byte[] chunk = new byte[size.length + 2 + len + 2];
+            System.arraycopy(size, 0, chunk, 0, size.length);
+            System.arraycopy(CRLF, 0, chunk, size.length, 2);
+            System.arraycopy(b, off, chunk, size.length + 2, len);
+            System.arraycopy(CRLF, 0, chunk, chunk.length - 2, 2);
+            output.write(chunk);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (connection.isClosed()) {
+                return;
+            }
+            try {
+                if (chunked) {
+                    output.write(LAST_CHUNK);
+                }
+            } finally {
+                connection.closeAfterDrain();
+            }
+        }
+    }
+}
@@ -1,73 +1,681 @@
 package com.hdh.connector;
 
+import com.hdh.engine.ContextMapper;
+import com.hdh.engine.HostMapper;
+import com.hdh.engine.support.ErrorResponses;
 import com.hdh.engine.HttpServletRequestImpl;
 import com.hdh.engine.HttpServletResponseImpl;
 import com.hdh.engine.ServletContextImpl;
-import com.hdh.engine.filter.LogFilter;
-import com.hdh.engine.listener.*;
-import com.hdh.engine.servlet.IndexServlet;
-import com.hdh.engine.servlet.LoginServlet;
-import com.hdh.engine.servlet.LogoutServlet;
+import com.hdh.engine.WebappClassLoader;
+import com.hdh.engine.accesslog.AccessLogWriter;
+import com.hdh.engine.jfr.RequestEvent;
+import com.hdh.engine.scan.ComponentIndex;
+import com.hdh.engine.scan.ComponentScanner;
+import com.hdh.engine.utils.HttpUtils;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
+import com.sun.net.httpserver.HttpsServer;
+import jakarta.servlet.http.HttpUpgradeHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.EventListener;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpConnector implements HttpHandler, AutoCloseable{
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final HttpServer httpServer;
-    private final ServletContextImpl servletContext;
+    private final ContextMapper contexts = new ContextMapper(); // 按contextPath映射的Web应用
+    private final HostMapper hosts = new HostMapper(this.contexts); // 按Host请求头选择虚拟主机, 默认主机是contexts
+    private final List<WebAppDeployer> deployers = new ArrayList<>(); // 应用目录部署器, 每个应用目录一个
+    private final AccessLogWriter accessLog;
+    private final ThreadPoolExecutor executor; // 工作线程池, 为null时使用JDK默认的分发线程
+    private final AdmissionController admission; // 准入控制, 为null时不限制
+    private final KeepAliveTracker keepAlive; // 长连接请求数限制, 为null时不限制
+    private volatile UpgradeProcessor upgradeProcessor; // 升级连接(WebSocket等)的处理器, 第一次升级时创建
+    private final ConnectorConfig config;
+    private final ThreadLocal<RecycledExchange> recycledExchanges = new ThreadLocal<>(); // 每个处理线程复用的请求/响应对象
     private final String host;
     private final int port;
+    private volatile boolean stopping = false; // 正在停止, 拒绝新请求
+    private final AtomicInteger rejectedOnShutdown = new AtomicInteger(); // 停止期间拒绝的请求数
+    private ShutdownReport shutdownReport; // 停止的结果, 停止后不为null
+
+    /**
+     * 停止服务的结果
+     * @param drained 开始停止时正在处理、在期限内完成的请求数
+     * @param aborted 超过期限仍未完成、被中断的请求数
+     * @param rejected 停止期间到达、被拒绝的请求数
+     * @param idleClosed 提前关闭的空闲长连接数, 不支持时为-1
+     */
+    public record ShutdownReport(int drained, int aborted, int rejected, int idleClosed, long elapsedMillis) {
+    }
 
     public HttpConnector(String host, int port) throws IOException {
-        // 1. 创建Servlet容器
-        this.servletContext = new ServletContextImpl();
-        // 2. 初始化Servlet
-        this.servletContext.initServlets(List.of(IndexServlet.class, LoginServlet.class, LogoutServlet.class));
-        // 3. 初始化Filter
-        this.servletContext.initFilters(List.of(LogFilter.class));
-        // 4. 注册Listener
-        List<Class<? extends EventListener>> listeners = List.of(
-                HelloHttpSessionAttributeListener.class, HelloHttpSessionListener.class,
-                HelloServletContextAttributeListener.class, HelloServletContextListener.class,
-                HelloServletRequestAttributeListener.class, HelloServletRequestListener.class);
-        for (Class<? extends EventListener> listener : listeners) {
-            this.servletContext.addListener(listener);
+        this(host, port, ConnectorConfig.fromSystemProperties());
+    }
+
+    public HttpConnector(String host, int port, ConnectorConfig config) throws IOException {
+        this.config = config;
+        StartupTimer timer = new StartupTimer();
+        // 1. 创建根应用的Servlet容器
+        ServletContextImpl root = new ServletContextImpl();
+        this.accessLog = AccessLogWriter.fromSystemProperties();
+        root.setAccessLog(this.accessLog);
+        timer.mark("创建容器");
+        // 2. 扫描类路径中的组件
+        ComponentIndex components = ComponentScanner.fromSystemProperties().scan();
+        timer.mark("扫描组件");
+        // 3~5. 注册Listener, 初始化Servlet, Filter
+        startContext(root, components, timer);
+        this.contexts.add(root);
+        // 6. 部署其他Web应用, 每个应用使用独立的类加载器和会话管理器
+        for (var entry : parseContexts(config.getContexts()).entrySet()) {
+            this.contexts.add(deployContext(this.contexts.getHostName(), entry.getKey(), entry.getValue()));
         }
+        // 7. 部署应用目录中的WAR和展开目录, 之后定时检查变化并热部署
+        if (config.getAppBase() != null) {
+            startDeployer(this.contexts, Path.of(config.getAppBase()));
+        }
+        // 8. 虚拟主机, 每个主机有自己的应用集合, 部署各自应用目录中的应用
+        for (var entry : parseMappings(config.getHosts(), "tomdog.hosts").entrySet()) {
+            ContextMapper contexts = new ContextMapper(entry.getKey());
+            startDeployer(contexts, Path.of(entry.getValue()));
+            this.hosts.add(entry.getKey(), contexts);
+        }
+        timer.mark("部署应用");
 
         this.host = host;
         this.port = port;
-        this.httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.admission = AdmissionController.fromSystemProperties(config.getWorkerThreads());
+        this.keepAlive = config.getMaxKeepAliveRequests() > 0
+                ? new KeepAliveTracker(config.getMaxKeepAliveRequests(), config.getKeepAliveTimeoutSeconds() * 1000L)
+                : null;
+        configureTransport(config);
+        if (config.isSecure()) {
+            HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress(host, port), 0);
+            httpsServer.setHttpsConfigurator(SslSupport.createConfigurator(SslSupport.createContext(config), config));
+            this.httpServer = httpsServer;
+        } else {
+            this.httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        }
         this.httpServer.createContext("/", this);
+        if (config.getWorkerThreads() > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(), 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(config.getWorkerQueueSize()),
+                    r -> new Thread(r, "tomdog-worker-" + threadNumber.incrementAndGet()));
+            // 开启准入控制时在分发线程限制排队的请求数, 超过时直接返回503
+            this.httpServer.setExecutor(this.admission != null ? new AdmissionExecutor(this.executor, this.admission) : this.executor);
+        } else {
+            this.executor = null;
+        }
         this.httpServer.start();
-        logger.info("Tomdog Server started at {}:{}", host, port);
+        timer.mark("绑定端口");
+        logger.info("Tomdog Server started at {}://{}:{}", config.isSecure() ? "https" : "http", host, port);
+        try {
+            ConnectionTakeover.checkSupported();
+        } catch (IOException e) {
+            logger.warn("无法访问JDK HttpServer内部实现({}): WebSocket等协议升级、异步请求和SSE、停止时关闭空闲连接不可用, "
+                    + "启动参数需要加上 --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED", String.valueOf(e.getCause()));
+        }
+        timer.log(logger);
+    }
+
+    /**
+     * 注册应用的Listener, 初始化Servlet, Filter
+     */
+    void startContext(ServletContextImpl context, ComponentIndex components, StartupTimer timer) {
+        ClassLoader loader = context.getClassLoader();
+        for (var entry : parseMappings(this.config.getErrorPages(), "tomdog.errorPages").entrySet()) {
+            String key = entry.getKey();
+            if (key.chars().allMatch(Character::isDigit)) {
+                context.addErrorPage(Integer.parseInt(key), entry.getValue());
+            } else {
+                context.addErrorPage(key, entry.getValue());
+            }
+        }
+        // Listener先注册, contextInitialized在Servlet和Filter初始化之前触发
+        for (Class<?> listener : ComponentScanner.loadClasses(components.getListeners(), loader)) {
+            if (EventListener.class.isAssignableFrom(listener)) {
+                context.addListener(listener.asSubclass(EventListener.class));
+            } else {
+                logger.warn("{} 不是Listener, 忽略", listener.getName());
+            }
+        }
+        context.invokeServletContextInitialized();
+        timer.mark("注册Listener");
+        context.initServlets(ComponentScanner.loadClasses(components.getServlets(), loader));
+        if (!context.isReady()) {
+            // 启动时必须加载的Servlet初始化失败, 不开始接收请求
+            throw new IllegalStateException("应用 " + context.getContextPath() + " 的Servlet初始化失败, 服务器未启动");
+        }
+        timer.mark("初始化Servlet");
+        context.initFilters(ComponentScanner.loadClasses(components.getFilters(), loader));
+        timer.mark("初始化Filter");
+    }
+
+    /**
+     * 部署Web应用: 创建独立的类加载器, 扫描应用类路径中的组件并初始化
+     * @param hostName 应用所属的虚拟主机
+     * @param contextPath 应用路径
+     * @param classPath 应用的类目录和jar
+     */
+    ServletContextImpl deployContext(String hostName, String contextPath, List<Path> classPath) throws IOException {
+        long start = System.nanoTime();
+        URL[] urls = new URL[classPath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = classPath.get(i).toUri().toURL();
+        }
+        WebappClassLoader loader = new WebappClassLoader("webapp" + contextPath.replace('/', '-'), urls, getClass().getClassLoader());
+        ServletContextImpl context = new ServletContextImpl(hostName, contextPath, loader);
+        context.setAccessLog(this.accessLog);
+        // 应用的类路径只包含应用自己的类, 不跳过任何jar
+        ComponentIndex components = new ComponentScanner(List.of()).scan(classPath);
+        try {
+            startContext(context, components, new StartupTimer());
+        } catch (RuntimeException e) {
+            // 初始化失败的应用不会被使用, 释放已经初始化的组件和类加载器
+            context.destroy();
+            loader.close();
+            throw e;
+        }
+        logger.info("部署应用 {} 完成, {} 个组件, 耗时 {} ms", contextPath, components.size(), (System.nanoTime() - start) / 1_000_000);
+        return context;
+    }
+
+    void startDeployer(ContextMapper contexts, Path appBase) {
+        WebAppDeployer deployer = new WebAppDeployer(this, contexts, appBase, this.config);
+        this.deployers.add(deployer);
+        deployer.start();
+    }
+
+    /**
+     * 解析"键=值,键=值"格式的配置
+     */
+    static Map<String, String> parseMappings(String value, String property) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String item : value.split(",")) {
+            item = item.strip();
+            if (item.isEmpty()) {
+                continue;
+            }
+            int n = item.indexOf('=');
+            if (n <= 0) {
+                throw new IllegalArgumentException(property + "格式错误: " + item);
+            }
+            result.put(item.substring(0, n).strip(), item.substring(n + 1).strip());
+        }
+        return result;
+    }
+
+    /**
+     * 解析tomdog.contexts, 例如 /shop=/srv/shop/classes:/srv/shop/lib/a.jar,/blog=/srv/blog.jar
+     */
+    static Map<String, List<Path>> parseContexts(String contexts) {
+        Map<String, List<Path>> result = new LinkedHashMap<>();
+        for (var entry : parseMappings(contexts, "tomdog.contexts").entrySet()) {
+            List<Path> classPath = new ArrayList<>();
+            for (String path : entry.getValue().split(File.pathSeparator)) {
+                if (!path.isBlank()) {
+                    classPath.add(Path.of(path.strip()));
+                }
+            }
+            result.put(entry.getKey(), classPath);
+        }
+        return result;
+    }
+
+    /**
+     * 把长连接相关的配置转换成JDK HttpServer的系统属性
+     * JDK在第一次创建HttpServer时读取这些属性, 已经通过命令行设置的属性不覆盖
+     */
+    static void configureTransport(ConnectorConfig config) {
+        setIfAbsent("sun.net.httpserver.idleInterval", config.getKeepAliveTimeoutSeconds());
+        setIfAbsent("sun.net.httpserver.maxIdleConnections", config.getMaxKeepAliveConnections());
+        if (config.getRequestReadTimeoutSeconds() > 0) {
+            // maxReqTime限制的是从开始读取请求到读完请求体的时间, 不只是请求头
+            setIfAbsent("sun.net.httpserver.maxReqTime", config.getRequestReadTimeoutSeconds());
+        }
+        setIfAbsent("sun.net.httpserver.nodelay", config.isTcpNoDelay());
+    }
+
+    static void setIfAbsent(String key, Object value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, String.valueOf(value));
+        }
     }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        var adapter = new HttpExchangeAdapter(exchange); // 多态写法,使用var可以转成2个接口
-        HttpServletResponse response = new HttpServletResponseImpl(adapter);
-        HttpServletRequest request = new HttpServletRequestImpl(this.servletContext, adapter, response);
-        // 使用Servlet容器处理请求
+        if (this.stopping) {
+            rejectOnShutdown(exchange);
+            return;
+        }
+        if (this.keepAlive != null && this.keepAlive.onRequest(exchange.getRemoteAddress())) {
+            // 达到单连接请求数上限, 本次响应后由HttpServer关闭连接
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        if (this.admission == null) {
+            handleAdmitted(exchange);
+            return;
+        }
+        AdmissionController.Priority priority = this.admission.classify(exchange.getRequestURI().getPath());
+        // 从进入工作线程队列开始计时, 排队时间计入等待超时和延迟样本
+        long enqueued = AdmissionExecutor.enqueuedAt();
+        long start = enqueued != 0 ? enqueued : System.nanoTime();
+        if (!this.admission.acquire(priority, start)) {
+            reject(exchange);
+            return;
+        }
+        try {
+            handleAdmitted(exchange);
+        } finally {
+            this.admission.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 过载时快速拒绝: 503 + Retry-After, 不创建请求/响应对象
+     */
+    void reject(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getResponseHeaders().set("Retry-After", Integer.toString(this.admission.getRetryAfterSeconds()));
+            exchange.sendResponseHeaders(503, -1);
+        }
+    }
+
+    /**
+     * 停止期间到达的请求: 503并关闭连接, 客户端可以重试其他实例
+     */
+    void rejectOnShutdown(HttpExchange exchange) throws IOException {
+        this.rejectedOnShutdown.incrementAndGet();
+        try (exchange) {
+            exchange.getResponseHeaders().set("Connection", "close");
+            exchange.sendResponseHeaders(503, -1);
+        }
+    }
+
+    void handleAdmitted(HttpExchange exchange) throws IOException {
+        RequestEvent event = new RequestEvent();
+        event.begin();
+        ContextMapper contexts = this.hosts.map(exchange.getRequestHeaders().getFirst("Host"));
+        ServletContextImpl context = enterContext(contexts, exchange.getRequestURI().getPath());
+        if (context == null) {
+            // 没有根应用, 也没有匹配的应用
+            try (exchange) {
+                byte[] body = ErrorResponses.body(404);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    exchange.sendResponseHeaders(404, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            }
+            return;
+        }
+        if (this.config.isRecycleFacades()) {
+            handleRecycled(exchange, context, event);
+            return;
+        }
+        // 创建请求/响应对象也在try中, 创建失败时同样要退出应用, 否则正在处理的请求数永远不会归零
+        HttpServletRequestImpl request = null;
+        try {
+            var adapter = new HttpExchangeAdapter(exchange, this); // 多态写法,使用var可以转成2个接口
+            HttpServletResponseImpl response = new HttpServletResponseImpl(adapter);
+            request = new HttpServletRequestImpl(context, adapter, response);
+            service(exchange, request, response, event);
+        } finally {
+            if (request != null && request.wasAsyncStarted()) {
+                request.asyncDispatchReturned();
+            } else {
+                try {
+                    if (request != null) {
+                        request.cleanup();
+                    }
+                } finally {
+                    context.exit();
+                }
+            }
+        }
+    }
+
+    /**
+     * 查找处理请求的应用并登记一个正在处理的请求
+     * 应用正在被替换或卸载时重新查找, 这时映射中已经是新的应用
+     */
+    ServletContextImpl enterContext(ContextMapper contexts, String path) {
+        for (;;) {
+            ServletContextImpl context = contexts.map(path);
+            if (context == null || context.enter()) {
+                return context;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 使用Servlet容器处理请求, 并提交JFR事件
+     */
+    void service(HttpExchange exchange, HttpServletRequestImpl request, HttpServletResponseImpl response, RequestEvent event) {
         try {
-            this.servletContext.process(request, response);
+            request.getServletContext().process(request, response);
         } catch (Exception e) {
-            logger.error(e.getMessage(), e);
+            if (HttpUtils.isConnectionClosed(e)) {
+                logger.debug("连接已关闭: {}", e.toString());
+            } else {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        HttpUpgradeHandler upgradeHandler = request.getUpgradeHandler();
+        if (upgradeHandler != null && !response.isCommitted()) {
+            upgrade(exchange, response.getStatus(), upgradeHandler);
+        } else if (!request.wasAsyncStarted()) {
+            // 异步请求由AsyncContext.complete()结束响应
+            if (this.stopping && !response.isCommitted()) {
+                // 正在停止, 响应后关闭长连接
+                response.setHeader("Connection", "close");
+            }
+            try {
+                // 写出缓冲区中剩余的响应体, 没有响应体时也要提交响应头
+                response.cleanup();
+            } catch (IOException e) {
+                logger.debug("写出响应失败", e);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.method = request.getMethod();
+            event.path = request.getRequestURI();
+            event.status = response.getStatus();
+            event.bytes = response.getBytesWritten();
+            event.commit();
+        }
+    }
+
+    /**
+     * 协议升级: 接管连接, 写出101响应头, 然后初始化HttpUpgradeHandler
+     * 响应头不经过HttpServer, 因为HttpServer发送1xx响应后会继续把连接当作HTTP连接读取
+     */
+    void upgrade(HttpExchange exchange, int status, HttpUpgradeHandler handler) {
+        exchange.getResponseHeaders().remove("Content-Type");
+        byte[] head = ResponseHead.encode(status, exchange.getResponseHeaders());
+        UpgradedConnection connection;
+        try {
+            connection = upgradeProcessor().takeOver(exchange);
+        } catch (IOException e) {
+            logger.error("协议升级失败", e);
+            try (exchange) {
+                exchange.sendResponseHeaders(500, -1);
+            } catch (IOException ignored) {
+            }
+            handler.destroy();
+            return;
+        }
+        connection.handler = handler;
+        try {
+            // 还没有设置WriteListener, 阻塞写出响应头
+            connection.getOutputStream().write(head);
+        } catch (IOException e) {
+            logger.debug("写出101响应失败", e);
+            connection.close();
+            return;
+        }
+        try {
+            handler.init(connection);
+        } catch (RuntimeException e) {
+            logger.error("HttpUpgradeHandler初始化失败", e);
+            connection.close();
+        }
+    }
+
+    /**
+     * 第一次升级时创建升级连接处理器
+     */
+    UpgradeProcessor upgradeProcessor() throws IOException {
+        UpgradeProcessor processor = this.upgradeProcessor;
+        if (processor == null) {
+            synchronized (this) {
+                processor = this.upgradeProcessor;
+                if (processor == null) {
+                    processor = new UpgradeProcessor(this.executor);
+                    this.upgradeProcessor = processor;
+                }
+            }
+        }
+        return processor;
+    }
+
+    /**
+     * 复用当前线程的请求/响应对象处理请求
+     */
+    void handleRecycled(HttpExchange exchange, ServletContextImpl context, RequestEvent event) throws IOException {
+        RecycledExchange recycled = null;
+        try {
+            recycled = acquireRecycled(exchange, context);
+            service(exchange, recycled.request, recycled.response, event);
+        } finally {
+            if (recycled == null) {
+                // 创建请求/响应对象失败, 这个线程的对象组可能只绑定了一半, 丢弃后重新分配
+                this.recycledExchanges.remove();
+                context.exit();
+            } else if (recycled.request.wasAsyncStarted()) {
+                // 异步请求的对象在complete()之前还会被使用, 不能回收, 这个线程以后重新分配
+                if (this.recycledExchanges.get() == recycled) {
+                    this.recycledExchanges.remove();
+                }
+                recycled.request.asyncDispatchReturned();
+            } else {
+                try {
+                    recycled.request.cleanup();
+                } finally {
+                    recycled.recycle();
+                    context.exit();
+                }
+            }
+        }
+    }
+
+    /**
+     * 取得当前线程的请求/响应对象组并绑定这次请求
+     */
+    RecycledExchange acquireRecycled(HttpExchange exchange, ServletContextImpl context) {
+        RecycledExchange recycled = this.recycledExchanges.get();
+        if (recycled == null) {
+            recycled = new RecycledExchange(context, exchange, this);
+            this.recycledExchanges.set(recycled);
+        } else if (recycled.inUse) {
+            // 同一线程重入时不能复用, 退回到普通分配
+            recycled = new RecycledExchange(context, exchange, this);
+        } else {
+            recycled.reuse(exchange, context);
+        }
+        recycled.inUse = true;
+        return recycled;
+    }
+
+    /**
+     * 正在处理的请求数, 包括所有应用中未结束的异步请求
+     */
+    int getActiveRequests() {
+        int active = 0;
+        for (ContextMapper contexts : this.hosts.getHosts()) {
+            for (ServletContextImpl context : contexts.getContexts()) {
+                active += context.getActiveRequests();
+            }
         }
+        return active;
+    }
+
+    /**
+     * 所有应用中未结束的异步请求数
+     */
+    int getAsyncRequests() {
+        int async = 0;
+        for (ContextMapper contexts : this.hosts.getHosts()) {
+            for (ServletContextImpl context : contexts.getContexts()) {
+                async += context.getAsyncRequests();
+            }
+        }
+        return async;
+    }
+
+    /**
+     * 结束所有应用中未结束的异步请求
+     */
+    int completeAsyncRequests() {
+        int completed = 0;
+        for (ContextMapper contexts : this.hosts.getHosts()) {
+            for (ServletContextImpl context : contexts.getContexts()) {
+                completed += context.completeAsyncRequests();
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 优雅停止, 只执行一次, 之后的调用返回第一次的结果
+     * 1. 拒绝新请求, 停止热部署, 关闭监听端口和空闲长连接
+     * 2. 等待正在处理的请求结束, 最多等待timeoutMillis, 期间完成的响应带Connection: close
+     *    SSE等异步请求不会自己结束, 先等待同步请求, 然后结束异步请求(写完已排队的数据), 再等待它们的响应写完
+     * 3. 关闭所有连接, 中断还没有结束的请求
+     * 4. 并行销毁所有应用: Servlet destroy(), Filter destroy(), 会话失效, contextDestroyed
+     */
+    public synchronized ShutdownReport shutdown(long timeoutMillis) {
+        if (this.shutdownReport != null) {
+            return this.shutdownReport;
+        }
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000;
+        this.stopping = true;
+        for (WebAppDeployer deployer : this.deployers) {
+            deployer.close();
+        }
+        // 1. 不再接受新连接, 空闲的长连接先关闭, 不用等它们发来请求再拒绝
+        int idleClosed = -1;
+        ServerDrain drain = ServerDrain.of(this.httpServer);
+        if (drain != null) {
+            drain.stopAccepting();
+            idleClosed = drain.closeIdleConnections();
+        }
+        // 2. 等待正在处理的请求
+        int inFlight = getActiveRequests();
+        logger.info("开始停止, 正在处理 {} 个请求, 其中 {} 个异步请求, 最多等待 {} ms", inFlight, getAsyncRequests(), timeoutMillis);
+        try {
+            while (getActiveRequests() - getAsyncRequests() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(20);
+            }
+            int completed = completeAsyncRequests();
+            if (completed > 0) {
+                logger.info("结束 {} 个异步请求", completed);
+            }
+            while (getActiveRequests() > 0 && System.nanoTime() - deadline < 0) {
+                Thread.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int aborted = getActiveRequests();
+        // 3. 关闭所有连接, 包括升级连接和异步请求的连接
+        if (this.upgradeProcessor != null) {
+            try {
+                this.upgradeProcessor.close();
+            } catch (IOException e) {
+                logger.debug("关闭升级连接失败", e);
+            }
+        }
+        this.httpServer.stop(0);
+        if (this.executor != null) {
+            this.executor.shutdown();
+            try {
+                if (!this.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    this.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 4. 销毁应用
+        destroyContexts();
+        for (WebAppDeployer deployer : this.deployers) {
+            deployer.deleteWorkDirs();
+        }
+        if (this.admission != null) {
+            logger.info("准入控制: 接受 {} 个请求, 拒绝 {} 个请求", this.admission.getAccepted(), this.admission.getRejected());
+        }
+        if (this.accessLog != null) {
+            this.accessLog.close();
+        }
+        this.shutdownReport = new ShutdownReport(Math.max(0, inFlight - aborted), aborted, this.rejectedOnShutdown.get(), idleClosed,
+                (System.nanoTime() - start) / 1_000_000);
+        return this.shutdownReport;
+    }
+
+    /**
+     * 并行销毁所有虚拟主机中的应用, 然后关闭应用的类加载器
+     */
+    private void destroyContexts() {
+        List<ServletContextImpl> contexts = new ArrayList<>();
+        for (ContextMapper mapper : this.hosts.getHosts()) {
+            contexts.addAll(mapper.getContexts());
+        }
+        List<Thread> threads = new ArrayList<>(contexts.size());
+        for (ServletContextImpl context : contexts) {
+            Thread thread = new Thread(() -> {
+                try {
+                    context.destroy();
+                } catch (RuntimeException e) {
+                    logger.error("应用 {} 销毁失败", context.getContextPath(), e);
+                }
+            }, "tomdog-destroy" + (context.getContextPath().isEmpty() ? "-ROOT" : context.getContextPath().replace('/', '-')));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (ServletContextImpl context : contexts) {
+            if (context.getClassLoader() instanceof WebappClassLoader loader) {
+                try {
+                    loader.close();
+                } catch (IOException e) {
+                    logger.debug("关闭类加载器失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按配置的期限(tomdog.shutdown.timeoutSeconds)优雅停止
+     */
+    public ShutdownReport shutdown() {
+        return shutdown(this.config.getShutdownTimeoutSeconds() * 1000L);
     }
 
     @Override
-    public void close() throws Exception {
-        httpServer.stop(3);
+    public void close() {
+        shutdown();
     }
 }
@@ -2,7 +2,9 @@ package com.hdh.connector;
 
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsExchange;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -15,60 +17,147 @@ import java.net.URI;
  */
 public class HttpExchangeAdapter implements HttpExchangeRequest, HttpExchangeResponse {
 
-    private final HttpExchange exchange;
+    private HttpExchange exchange;
+    private final HttpConnector connector; // 用于脱离HttpServer, 为null时不支持
     byte[] requestBodyData;
+    private boolean headersSent = false;
+    private DetachedResponse detached; // 脱离HttpServer后的响应
 
     public HttpExchangeAdapter(HttpExchange exchange) {
+        this(exchange, null);
+    }
+
+    HttpExchangeAdapter(HttpExchange exchange, HttpConnector connector) {
+        this.exchange = exchange;
+        this.connector = connector;
+    }
+
+    /**
+     * 复用适配器, 绑定新的HttpExchange
+     */
+    public void reset(HttpExchange exchange) {
         this.exchange = exchange;
+        this.requestBodyData = null;
+        this.headersSent = false;
+        this.detached = null;
+    }
+
+    /**
+     * 回收适配器, 之后的访问会抛出异常
+     */
+    public void recycle() {
+        this.exchange = null;
+        this.requestBodyData = null;
+    }
+
+    private HttpExchange exchange() {
+        if (this.exchange == null) {
+            throw new IllegalStateException("HttpExchange已回收");
+        }
+        return this.exchange;
     }
 
     @Override
     public String getRequestMethod() {
-        return exchange.getRequestMethod();
+        return exchange().getRequestMethod();
     }
 
     @Override
     public URI getRequestURI() {
-        return exchange.getRequestURI();
+        return exchange().getRequestURI();
+    }
+
+    @Override
+    public String getProtocol() {
+        return exchange().getProtocol();
+    }
+
+    @Override
+    public boolean isSecure() {
+        return exchange() instanceof HttpsExchange;
     }
 
     @Override
     public Headers getRequestHeaders() {
-        return exchange.getRequestHeaders();
+        return exchange().getRequestHeaders();
     }
 
     @Override
     public InetSocketAddress getRemoteAddress() {
-        return exchange.getRemoteAddress();
+        return exchange().getRemoteAddress();
     }
 
     @Override
     public InetSocketAddress getLocalAddress() {
-        return exchange.getLocalAddress();
+        return exchange().getLocalAddress();
     }
 
     @Override
     public byte[] getRequestBody() throws IOException {
         if(this.requestBodyData == null) {
-            try (InputStream is = this.exchange.getRequestBody()){
+            try (InputStream is = exchange().getRequestBody()){
                 this.requestBodyData = is.readAllBytes();
             }
         }
         return this.requestBodyData;
     }
 
+    @Override
+    public InputStream getRequestBodyStream() throws IOException {
+        if (this.requestBodyData != null) {
+            return new ByteArrayInputStream(this.requestBodyData);
+        }
+        return exchange().getRequestBody();
+    }
+
     @Override
     public Headers getResponseHeaders() {
-        return exchange.getResponseHeaders();
+        return exchange().getResponseHeaders();
     }
 
     @Override
-    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
-        exchange.sendResponseHeaders(rCode, responseLength);
+    public synchronized void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (this.detached != null) {
+            this.detached.sendHeaders(rCode, responseLength, exchange().getResponseHeaders());
+        } else {
+            exchange().sendResponseHeaders(rCode, responseLength);
+        }
+        this.headersSent = true;
     }
 
     @Override
-    public OutputStream getResponseBody() {
-        return exchange.getResponseBody();
+    public synchronized OutputStream getResponseBody() {
+        if (this.detached != null) {
+            return this.detached.body;
+        }
+        return exchange().getResponseBody();
+    }
+
+    /**
+     * 脱离HttpServer: 先读完请求体, 再接管连接, 之后的响应通过非阻塞连接写出
+     * 已经提交响应头或者是HTTPS连接时不能脱离, 返回false
+     */
+    @Override
+    public synchronized boolean detach(Runnable onClose) throws IOException {
+        if (this.connector == null || this.detached != null || this.headersSent || exchange() instanceof HttpsExchange) {
+            return false;
+        }
+        getRequestBody();
+        UpgradedConnection connection = this.connector.upgradeProcessor().takeOver(exchange());
+        connection.closeListener = onClose;
+        this.detached = new DetachedResponse(connection);
+        return true;
+    }
+
+    /**
+     * 中止响应: 直接关闭连接, 排队没有写出的数据丢弃. 只有脱离HttpServer的连接可以中止
+     */
+    @Override
+    public synchronized boolean abort() {
+        if (this.detached == null) {
+            return false;
+        }
+        this.detached.abort();
+        return true;
     }
 }
@@ -3,6 +3,7 @@ package com.hdh.connector;
 import com.sun.net.httpserver.Headers;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
 
@@ -12,8 +13,11 @@ import java.net.URI;
 public interface HttpExchangeRequest{
     String getRequestMethod();
     URI getRequestURI();
+    String getProtocol(); // 请求行中的协议版本, 例如HTTP/1.1
+    boolean isSecure(); // 是否通过TLS连接
     Headers getRequestHeaders();
     InetSocketAddress getRemoteAddress();
     InetSocketAddress getLocalAddress();
     byte[] getRequestBody() throws IOException;
+    InputStream getRequestBodyStream() throws IOException; // 流式读取请求体, 不缓存到内存
 }
\ No newline at end of file
@@ -13,4 +13,8 @@ public interface HttpExchangeResponse{
     Headers getResponseHeaders();
     void sendResponseHeaders(int rCode, long responseLength) throws IOException;
     OutputStream getResponseBody();
+    // 脱离HttpServer, 之后的响应通过非阻塞连接写出, 连接关闭时回调onClose; 不能脱离时返回false
+    boolean detach(Runnable onClose) throws IOException;
+    // 中止响应: 直接关闭脱离HttpServer的连接, 没有写出的数据丢弃; 没有脱离时返回false
+    boolean abort();
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.hdh.connector;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统计每个长连接上已处理的请求数
+ * JDK HttpServer不暴露连接对象, 这里用客户端地址+端口标识一个连接. 同一连接上的请求是串行处理的,
+ * 连接被关闭后留下的记录在超过空闲时间后清除.
+ */
+class KeepAliveTracker {
+
+    static final int SWEEP_INTERVAL = 1024; // 每新增多少个连接清理一次
+
+    private final Map<InetSocketAddress, Connection> connections = new ConcurrentHashMap<>();
+    private final int maxRequests;
+    private final long idleTimeoutMillis;
+    private final AtomicInteger inserts = new AtomicInteger(); // 用于触发清理
+
+    KeepAliveTracker(int maxRequests, long idleTimeoutMillis) {
+        this.maxRequests = maxRequests;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * 记录一个请求
+     * @param remote 客户端地址
+     * @return 是否需要在本次响应后关闭连接
+     */
+    boolean onRequest(InetSocketAddress remote) {
+        long now = System.currentTimeMillis();
+        Connection connection = this.connections.get(remote);
+        if (connection == null) {
+            connection = new Connection();
+            this.connections.put(remote, connection);
+            if (this.inserts.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                sweep(now - this.idleTimeoutMillis);
+            }
+        } else if (now - connection.lastSeen > this.idleTimeoutMillis) {
+            // 端口被新连接复用
+            connection.requests = 0;
+        }
+        connection.lastSeen = now;
+        if (++connection.requests >= this.maxRequests) {
+            this.connections.remove(remote);
+            return true;
+        }
+        return false;
+    }
+
+    void sweep(long threshold) {
+        this.connections.values().removeIf(connection -> connection.lastSeen < threshold);
+    }
+
+    static final class Connection {
+        volatile int requests;
+        volatile long lastSeen;
+    }
+}
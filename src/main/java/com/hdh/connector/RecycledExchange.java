@@ -0,0 +1,44 @@
+package com.hdh.connector;
+
+import com.hdh.engine.HttpServletRequestImpl;
+import com.hdh.engine.HttpServletResponseImpl;
+import com.hdh.engine.ServletContextImpl;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * 可复用的请求/响应对象组, 每个处理线程持有一组
+ * 复用的是适配器、响应缓冲区、参数表和属性表; 请求/响应对象本身每次请求新建,
+ * 回收后的旧对象不再复用, 业务代码保留的旧引用只会抛出异常, 不会读到之后请求的数据
+ */
+class RecycledExchange {
+
+    final HttpExchangeAdapter adapter;
+    HttpServletResponseImpl response;
+    HttpServletRequestImpl request;
+    boolean inUse = false;
+
+    RecycledExchange(ServletContextImpl servletContext, HttpExchange exchange, HttpConnector connector) {
+        this.adapter = new HttpExchangeAdapter(exchange, connector);
+        this.response = new HttpServletResponseImpl(this.adapter);
+        this.request = new HttpServletRequestImpl(servletContext, this.adapter, this.response);
+    }
+
+    /**
+     * 绑定新的HttpExchange, 在回收的对象之上创建这次请求的请求/响应对象
+     */
+    void reuse(HttpExchange exchange, ServletContextImpl servletContext) {
+        this.adapter.reset(exchange);
+        this.response = new HttpServletResponseImpl(this.adapter, this.response);
+        this.request = new HttpServletRequestImpl(servletContext, this.adapter, this.response, this.request);
+    }
+
+    /**
+     * 回收对象, 回收后业务代码继续持有的引用将无法使用
+     */
+    void recycle() {
+        this.request.recycle();
+        this.response.recycle();
+        this.adapter.recycle();
+        this.inUse = false;
+    }
+}
@@ -0,0 +1,38 @@
+package com.hdh.connector;
+
+import com.hdh.engine.support.DateService;
+import com.hdh.engine.support.ErrorResponses;
+import com.sun.net.httpserver.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 编码HTTP/1.1响应头, 用于接管连接后自己写出响应
+ */
+final class ResponseHead {
+
+    private ResponseHead() {
+    }
+
+    static byte[] encode(int status, Headers headers) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        head.append("Date: ").append(DateService.currentDate()).append("\r\n");
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase("Date")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static String reason(int status) {
+        return ErrorResponses.reason(status);
+    }
+}
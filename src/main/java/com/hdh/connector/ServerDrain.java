@@ -0,0 +1,87 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 停止服务时提前关闭JDK HttpServer的监听端口和空闲长连接
+ * HttpServer.stop()在等待结束后才关闭所有连接, 等待期间空闲的长连接还可以发来新请求;
+ * 这里通过反射关闭监听通道和空闲连接, 需要启动参数: --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED
+ * 不能反射时什么也不做, 由连接器拒绝停止期间的新请求, 最后由HttpServer.stop()关闭连接.
+ */
+class ServerDrain {
+
+    private final Object server; // sun.net.httpserver.ServerImpl
+    private final Reflection reflection;
+
+    private ServerDrain(Object server, Reflection reflection) {
+        this.server = server;
+        this.reflection = reflection;
+    }
+
+    /**
+     * @return 不能反射访问HttpServer内部时返回null
+     */
+    static ServerDrain of(HttpServer httpServer) {
+        try {
+            Field field = ConnectionTakeover.Reflection.accessible(httpServer.getClass().getDeclaredField("server"));
+            return new ServerDrain(field.get(httpServer), new Reflection());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 关闭监听通道, 不再接受新连接, 已经建立的连接不受影响
+     */
+    void stopAccepting() {
+        try {
+            ((ServerSocketChannel) this.reflection.schan.get(this.server)).close();
+        } catch (IllegalAccessException | IOException e) {
+            // HttpServer.stop()时还会关闭
+        }
+    }
+
+    /**
+     * 关闭当前空闲的长连接
+     * @return 关闭的连接数
+     */
+    int closeIdleConnections() {
+        Reflection r = this.reflection;
+        try {
+            Set<?> idle = (Set<?>) r.idleConnections.get(this.server);
+            List<Object> connections;
+            synchronized (idle) {
+                connections = new ArrayList<>(idle);
+            }
+            for (Object connection : connections) {
+                r.closeConnection.invoke(this.server, connection);
+            }
+            return connections.size();
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return 0;
+        }
+    }
+
+    static final class Reflection {
+        final Field schan;
+        final Field idleConnections;
+        final Method closeConnection;
+
+        Reflection() throws ReflectiveOperationException {
+            Class<?> serverClass = Class.forName("sun.net.httpserver.ServerImpl");
+            Class<?> connectionClass = Class.forName("sun.net.httpserver.HttpConnection");
+            this.schan = ConnectionTakeover.Reflection.accessible(serverClass.getDeclaredField("schan"));
+            this.idleConnections = ConnectionTakeover.Reflection.accessible(serverClass.getDeclaredField("idleConnections"));
+            this.closeConnection = ConnectionTakeover.Reflection.accessible(serverClass.getDeclaredMethod("closeConnection", connectionClass));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * HTTPS支持, 由JDK HttpsServer完成TLS握手和加解密
+ * 会话复用: TLS 1.2使用服务端会话缓存, TLS 1.3使用JDK默认开启的无状态session ticket, 两者都受会话超时控制
+ */
+class SslSupport {
+
+    /**
+     * 根据配置创建SSLContext
+     */
+    static SSLContext createContext(ConnectorConfig config) throws IOException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(config.getKeyStoreType());
+            char[] password = config.getKeyStorePassword() == null ? null : config.getKeyStorePassword().toCharArray();
+            try (InputStream input = Files.newInputStream(Path.of(config.getKeyStore()))) {
+                keyStore.load(input, password);
+            }
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, password);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(kmf.getKeyManagers(), null, null);
+            SSLSessionContext sessions = context.getServerSessionContext();
+            sessions.setSessionCacheSize(config.getSslSessionCacheSize());
+            sessions.setSessionTimeout(config.getSslSessionTimeoutSeconds());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("加载证书失败: " + config.getKeyStore(), e);
+        }
+    }
+
+    /**
+     * 创建HttpsServer的配置器, 每个连接握手前设置协议版本和ALPN
+     */
+    static HttpsConfigurator createConfigurator(SSLContext context, ConnectorConfig config) {
+        String[] protocols = config.getSslProtocols().split(",");
+        return new HttpsConfigurator(context) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters parameters = context.getDefaultSSLParameters();
+                parameters.setProtocols(protocols);
+                // 只能处理HTTP/1.1, ALPN协商时明确告诉客户端
+                parameters.setApplicationProtocols(new String[]{"http/1.1"});
+                parameters.setUseCipherSuitesOrder(true);
+                params.setSSLParameters(parameters);
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.hdh.connector;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动阶段计时
+ * 每调用一次mark()记录上一个阶段的耗时, 启动完成后log()输出一行汇总, 方便发现启动变慢.
+ */
+class StartupTimer {
+
+    private final List<String> phases = new ArrayList<>();
+    private final List<Long> nanos = new ArrayList<>();
+    private final long start = System.nanoTime();
+    private long last = this.start;
+
+    /**
+     * 结束一个阶段
+     * @param phase 阶段名称
+     */
+    void mark(String phase) {
+        long now = System.nanoTime();
+        this.phases.add(phase);
+        this.nanos.add(now - this.last);
+        this.last = now;
+    }
+
+    void log(Logger logger) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("启动耗时 ").append(millis(this.last - this.start)).append(" ms");
+        // JVM启动到创建连接器之前的时间(类加载, 日志初始化等), 取不到进程启动时间时不输出
+        ProcessHandle.current().info().startInstant().ifPresent(processStart -> {
+            long jvm = Duration.between(processStart, Instant.now()).toNanos() - (System.nanoTime() - this.start);
+            sb.append(", JVM ").append(millis(jvm)).append(" ms");
+        });
+        for (int i = 0; i < this.phases.size(); i++) {
+            sb.append(i == 0 ? " (" : ", ").append(this.phases.get(i)).append(' ').append(millis(this.nanos.get(i))).append(" ms");
+        }
+        if (!this.phases.isEmpty()) {
+            sb.append(')');
+        }
+        logger.info(sb.toString());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,164 @@
+package com.hdh.connector;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 处理升级后的连接(例如WebSocket)
+ * 所有升级连接共用一个Selector线程, 空闲连接不占用线程; 可读/可写时把ReadListener/WriteListener回调交给工作线程池执行.
+ * 回调期间对应的事件不再注册, 直到流再次返回未就绪, 所以同一个连接的读回调(写回调)不会并发执行.
+ */
+class UpgradeProcessor implements Runnable, AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Selector selector;
+    private final Executor executor; // 执行回调的线程池, 为null时在Selector线程执行
+    private final Queue<UpgradedConnection> registrations = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    UpgradeProcessor(Executor executor) throws IOException {
+        this.selector = Selector.open();
+        this.executor = executor;
+        this.thread = new Thread(this, "tomdog-upgrade");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 从HttpServer接管连接, 切换到非阻塞模式并注册到Selector
+     */
+    UpgradedConnection takeOver(HttpExchange exchange) throws IOException {
+        ConnectionTakeover takeover = ConnectionTakeover.of(exchange);
+        try {
+            takeover.channel.configureBlocking(false);
+        } catch (IOException e) {
+            takeover.release();
+            throw e;
+        }
+        UpgradedConnection connection = new UpgradedConnection(this, takeover);
+        this.registrations.add(connection);
+        this.selector.wakeup();
+        return connection;
+    }
+
+    /**
+     * 注册感兴趣的事件, 可以在任意线程调用
+     */
+    void interest(UpgradedConnection connection, int ops) {
+        // 还没有注册到Selector时, 注册时会带上; 先写pendingOps再读key, 与注册线程的顺序相反, 不会丢失事件
+        connection.pendingOps |= ops;
+        SelectionKey key = connection.key;
+        if (key == null) {
+            return;
+        }
+        try {
+            key.interestOpsOr(ops);
+            this.selector.wakeup();
+        } catch (CancelledKeyException ignored) {
+        }
+    }
+
+    /**
+     * 在工作线程执行回调
+     */
+    void dispatch(Runnable task) {
+        if (this.executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            this.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.selector.select();
+                UpgradedConnection registration;
+                while ((registration = this.registrations.poll()) != null) {
+                    register(registration);
+                }
+                try {
+                    for (SelectionKey key : this.selector.selectedKeys()) {
+                        UpgradedConnection connection = (UpgradedConnection) key.attachment();
+                        try {
+                            if (!key.isValid()) {
+                                continue;
+                            }
+                            int ready = key.readyOps();
+                            // 回调结束前不再关注已就绪的事件
+                            key.interestOpsAnd(~ready);
+                            if ((ready & SelectionKey.OP_READ) != 0) {
+                                dispatch(connection::onReadable);
+                            }
+                            if ((ready & SelectionKey.OP_WRITE) != 0) {
+                                dispatch(connection::onWritable);
+                            }
+                        } catch (CancelledKeyException e) {
+                            // 其他线程刚关闭了连接
+                        }
+                    }
+                } finally {
+                    this.selector.selectedKeys().clear();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (this.running) {
+                    logger.error("升级连接处理失败", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把新连接注册到Selector, 失败时只关闭这个连接, 不影响其他连接
+     */
+    private void register(UpgradedConnection connection) {
+        if (connection.isClosed()) {
+            return;
+        }
+        try {
+            SelectionKey key = connection.channel.register(this.selector, connection.pendingOps, connection);
+            connection.key = key;
+            key.interestOpsOr(connection.pendingOps);
+        } catch (IOException | RuntimeException e) {
+            // 注册之前连接已经被关闭(ClosedChannelException)等
+            logger.debug("注册升级连接失败: {}", e.toString());
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        this.selector.wakeup();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : this.selector.keys()) {
+            ((UpgradedConnection) key.attachment()).close();
+        }
+        UpgradedConnection registration;
+        while ((registration = this.registrations.poll()) != null) {
+            registration.close();
+        }
+        this.selector.close();
+    }
+}
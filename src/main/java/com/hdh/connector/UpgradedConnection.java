@@ -0,0 +1,424 @@
+package com.hdh.connector;
+
+import com.hdh.engine.support.BufferPool;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpUpgradeHandler;
+import jakarta.servlet.http.WebConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * 升级后的连接
+ * 输入输出流是非阻塞的: 设置了ReadListener/WriteListener时由UpgradeProcessor回调, 没有设置时读写会阻塞当前线程直到就绪.
+ */
+class UpgradedConnection implements WebConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpgradedConnection.class);
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    final UpgradeProcessor processor;
+    final SocketChannel channel;
+    private final ConnectionTakeover takeover;
+    private final Input input;
+    private final Output output;
+
+    volatile SelectionKey key;
+    volatile int pendingOps = 0; // 注册到Selector之前请求的事件
+    HttpUpgradeHandler handler;
+    Runnable closeListener; // 连接关闭时回调, 用于脱离HttpServer的异步响应
+    private volatile boolean closed = false;
+
+    UpgradedConnection(UpgradeProcessor processor, ConnectionTakeover takeover) {
+        this.processor = processor;
+        this.channel = takeover.channel;
+        this.takeover = takeover;
+        this.input = new Input(takeover.leftover);
+        this.output = new Output();
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        return this.input;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return this.output;
+    }
+
+    /**
+     * 关闭连接, 丢弃排队没有写出的数据, 然后调用HttpUpgradeHandler.destroy()
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        SelectionKey key = this.key;
+        if (key != null) {
+            key.cancel();
+        }
+        this.takeover.release();
+        synchronized (this.input) {
+            this.input.notifyAll();
+        }
+        synchronized (this.output) {
+            // 连接已经关闭, 排队的数据不会再写出
+            this.output.pending.clear();
+            this.output.notifyAll();
+        }
+        if (this.handler != null) {
+            try {
+                this.handler.destroy();
+            } catch (RuntimeException e) {
+                logger.error("HttpUpgradeHandler销毁失败", e);
+            }
+        }
+        if (this.closeListener != null) {
+            try {
+                this.closeListener.run();
+            } catch (RuntimeException e) {
+                logger.error("连接关闭回调失败", e);
+            }
+        }
+    }
+
+    /**
+     * 排队的数据全部写出后关闭连接
+     */
+    void closeAfterDrain() {
+        if (this.output.closeWhenDrained()) {
+            close();
+        }
+    }
+
+    boolean isClosed() {
+        return this.closed;
+    }
+
+    void onReadable() {
+        this.input.onReadable();
+    }
+
+    void onWritable() {
+        this.output.onWritable();
+    }
+
+    /**
+     * 非阻塞输入流, 数据先读入缓冲区
+     * 缓冲区从BufferPool中取, 数据读完后立即还回, 空闲连接不持有缓冲区
+     */
+    final class Input extends ServletInputStream {
+        private ByteBuffer buffer; // 读模式, 没有未读数据时为EMPTY
+        private ReadListener listener;
+        private boolean eof = false;
+        private boolean allDataRead = false;
+
+        Input(byte[] leftover) {
+            this.buffer = leftover.length == 0 ? EMPTY : ByteBuffer.wrap(leftover);
+        }
+
+        @Override
+        public synchronized boolean isFinished() {
+            return this.eof && !this.buffer.hasRemaining();
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            if (this.buffer.hasRemaining()) {
+                return true;
+            }
+            if (this.eof || closed) {
+                return false;
+            }
+            try {
+                if (fill() > 0) {
+                    return true;
+                }
+            } catch (IOException e) {
+                this.eof = true;
+                return false;
+            }
+            if (!this.eof) {
+                processor.interest(UpgradedConnection.this, SelectionKey.OP_READ);
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized void setReadListener(ReadListener readListener) {
+            if (this.listener != null) {
+                throw new IllegalStateException("ReadListener已经设置");
+            }
+            this.listener = readListener;
+            if (this.buffer.hasRemaining()) {
+                processor.dispatch(this::onReadable);
+            } else {
+                processor.interest(UpgradedConnection.this, SelectionKey.OP_READ);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == 1 ? one[0] & 0xff : -1;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!this.buffer.hasRemaining()) {
+                if (this.eof) {
+                    return -1;
+                }
+                if (closed) {
+                    throw new IOException("连接已关闭");
+                }
+                if (fill() > 0) {
+                    break;
+                }
+                if (this.eof) {
+                    return -1;
+                }
+                if (this.listener != null) {
+                    throw new IllegalStateException("数据未就绪, 应先调用isReady()");
+                }
+                // 阻塞模式: 等待Selector通知可读
+                processor.interest(UpgradedConnection.this, SelectionKey.OP_READ);
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            int n = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, n);
+            if (!this.buffer.hasRemaining()) {
+                releaseBuffer();
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized int available() {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public void close() {
+            UpgradedConnection.this.close();
+        }
+
+        /**
+         * 从socket读数据到缓冲区, 只在缓冲区为空时调用, 没有读到数据时不持有缓冲区
+         */
+        private int fill() throws IOException {
+            releaseBuffer();
+            ByteBuffer buffer = ByteBuffer.wrap(BufferPool.acquire());
+            int n;
+            try {
+                n = channel.read(buffer);
+            } catch (IOException e) {
+                BufferPool.release(buffer.array());
+                throw e;
+            }
+            if (n <= 0) {
+                BufferPool.release(buffer.array());
+                if (n < 0) {
+                    this.eof = true;
+                }
+                return 0;
+            }
+            this.buffer = buffer.flip();
+            return n;
+        }
+
+        private void releaseBuffer() {
+            if (this.buffer != EMPTY) {
+                BufferPool.release(this.buffer.array());
+                this.buffer = EMPTY;
+            }
+        }
+
+        void onReadable() {
+            ReadListener listener;
+            synchronized (this) {
+                listener = this.listener;
+                if (listener == null) {
+                    notifyAll();
+                    return;
+                }
+            }
+            try {
+                if (isReady()) {
+                    listener.onDataAvailable();
+                }
+                boolean finished;
+                synchronized (this) {
+                    finished = isFinished() && !this.allDataRead;
+                    if (finished) {
+                        this.allDataRead = true;
+                    }
+                }
+                if (finished) {
+                    listener.onAllDataRead();
+                }
+            } catch (IOException | RuntimeException e) {
+                listener.onError(e);
+                UpgradedConnection.this.close();
+            }
+        }
+    }
+
+    /**
+     * 非阻塞输出流, 写不完的数据排队, 可写时用gathering write一次写出
+     */
+    final class Output extends ServletOutputStream {
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        private WriteListener listener;
+        private boolean closeWhenDrained = false;
+
+        /**
+         * 标记写完后关闭, 返回是否已经写完可以立即关闭
+         */
+        synchronized boolean closeWhenDrained() {
+            this.closeWhenDrained = true;
+            return this.pending.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            if (this.pending.isEmpty()) {
+                return true;
+            }
+            processor.interest(UpgradedConnection.this, SelectionKey.OP_WRITE);
+            return false;
+        }
+
+        @Override
+        public synchronized void setWriteListener(WriteListener writeListener) {
+            if (this.listener != null) {
+                throw new IllegalStateException("WriteListener已经设置");
+            }
+            this.listener = writeListener;
+            processor.dispatch(this::onWritable);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        /**
+         * 写出数据. 设置了WriteListener时不阻塞, 写不完的部分排队, isReady()返回false;
+         * 没有设置时阻塞到全部写出
+         */
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("连接已关闭");
+            }
+            ByteBuffer data = ByteBuffer.wrap(b, off, len);
+            if (this.pending.isEmpty()) {
+                channel.write(data);
+                if (!data.hasRemaining()) {
+                    return;
+                }
+            }
+            // 调用方可能复用数组, 剩余部分复制一份
+            ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+            copy.put(data).flip();
+            this.pending.add(copy);
+            processor.interest(UpgradedConnection.this, SelectionKey.OP_WRITE);
+            if (this.listener == null) {
+                awaitDrained();
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (this.listener == null) {
+                awaitDrained();
+            }
+        }
+
+        @Override
+        public void close() {
+            UpgradedConnection.this.close();
+        }
+
+        private void awaitDrained() throws IOException {
+            while (!this.pending.isEmpty()) {
+                if (closed) {
+                    throw new IOException("连接已关闭");
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        void onWritable() {
+            WriteListener listener;
+            boolean closeNow;
+            synchronized (this) {
+                try {
+                    if (!this.pending.isEmpty()) {
+                        channel.write(this.pending.toArray(new ByteBuffer[0]));
+                        while (!this.pending.isEmpty() && !this.pending.peek().hasRemaining()) {
+                            this.pending.poll();
+                        }
+                    }
+                } catch (IOException e) {
+                    this.pending.clear();
+                    notifyAll();
+                    if (this.listener != null) {
+                        this.listener.onError(e);
+                    }
+                    UpgradedConnection.this.close();
+                    return;
+                }
+                if (!this.pending.isEmpty()) {
+                    processor.interest(UpgradedConnection.this, SelectionKey.OP_WRITE);
+                    return;
+                }
+                notifyAll();
+                listener = this.listener;
+                closeNow = this.closeWhenDrained;
+            }
+            if (closeNow) {
+                UpgradedConnection.this.close();
+                return;
+            }
+            if (listener != null) {
+                try {
+                    listener.onWritePossible();
+                } catch (IOException | RuntimeException e) {
+                    listener.onError(e);
+                    UpgradedConnection.this.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.hdh.connector;
+
+import com.hdh.engine.ContextMapper;
+import com.hdh.engine.ServletContextImpl;
+import com.hdh.engine.WebappClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Web应用部署器, 部署appBase目录中的WAR和展开目录
+ * foo.war或foo/部署到/foo, ROOT部署到根路径, 名称中的#表示/(例如shop#v2.war部署到/shop/v2).
+ * 应用先复制(WAR先解压)到临时工作目录再加载, 部署后源文件可以继续修改; 类路径为WEB-INF/classes和WEB-INF/lib/*.jar.
+ * 定时检查appBase, 文件变化且连续两次检查都不再变化(已经复制完成)时重新部署:
+ * 在后台创建并初始化新的应用, 原子替换映射, 新请求进入新应用, 旧应用等正在处理的请求结束后销毁并关闭类加载器.
+ */
+class WebAppDeployer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebAppDeployer.class);
+
+    private final HttpConnector connector;
+    private final ContextMapper contexts;
+    private final Path appBase;
+    private final long drainTimeoutMillis;
+    private final int scanIntervalSeconds;
+    private final ScheduledExecutorService scheduler;
+    // 以下只在部署线程访问(启动时的首次部署除外)
+    private final Map<String, DeployedApp> deployed = new HashMap<>(); // 应用名称 -> 已部署的应用
+    private final Map<String, String> changed = new HashMap<>(); // 应用名称 -> 上次检查到的新指纹, 等待稳定
+
+    record DeployedApp(ServletContextImpl context, String fingerprint, Path workDir) {
+    }
+
+    /**
+     * @param contexts 部署到的应用集合(虚拟主机)
+     * @param appBase 应用目录
+     */
+    WebAppDeployer(HttpConnector connector, ContextMapper contexts, Path appBase, ConnectorConfig config) {
+        this.connector = connector;
+        this.contexts = contexts;
+        this.appBase = appBase;
+        this.drainTimeoutMillis = config.getDrainTimeoutSeconds() * 1000L;
+        this.scanIntervalSeconds = config.getDeployScanIntervalSeconds();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tomdog-deployer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 部署appBase中的所有应用, 然后开始定时检查变化
+     */
+    void start() {
+        for (var entry : listApps().entrySet()) {
+            deploy(entry.getKey(), entry.getValue());
+        }
+        if (this.scanIntervalSeconds > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::check, this.scanIntervalSeconds, this.scanIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 检查appBase的变化, 部署新应用, 重新部署修改过的应用, 卸载已删除的应用
+     */
+    void check() {
+        try {
+            Map<String, Path> apps = listApps();
+            for (var entry : apps.entrySet()) {
+                String name = entry.getKey();
+                String fingerprint = fingerprint(entry.getValue());
+                DeployedApp app = this.deployed.get(name);
+                if (app != null && app.fingerprint.equals(fingerprint)) {
+                    this.changed.remove(name);
+                    continue;
+                }
+                // 等到两次检查之间没有变化再部署, 避免部署复制了一半的文件
+                if (fingerprint.equals(this.changed.put(name, fingerprint))) {
+                    this.changed.remove(name);
+                    deploy(name, entry.getValue());
+                }
+            }
+            for (String name : new ArrayList<>(this.deployed.keySet())) {
+                if (!apps.containsKey(name)) {
+                    undeploy(name);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("检查应用目录 {} 失败", this.appBase, e);
+        }
+    }
+
+    /**
+     * 部署或者重新部署一个应用, 失败时保留原来的应用
+     */
+    void deploy(String name, Path source) {
+        String contextPath = contextPath(name);
+        long start = System.nanoTime();
+        Path workDir = null;
+        ServletContextImpl context;
+        String fingerprint;
+        try {
+            fingerprint = fingerprint(source);
+            workDir = Files.createTempDirectory("tomdog-" + name.replace('#', '-') + "-");
+            if (Files.isDirectory(source)) {
+                copy(source.resolve("WEB-INF"), workDir.resolve("WEB-INF"));
+            } else {
+                unzip(source, workDir);
+            }
+            context = this.connector.deployContext(this.contexts.getHostName(), contextPath, classPath(workDir));
+        } catch (Exception e) {
+            logger.error("部署应用 {} 失败, 保留原来的版本", source, e);
+            delete(workDir);
+            return;
+        }
+        // 新应用已经初始化完成, 原子替换, 之后的请求进入新应用
+        ServletContextImpl old = this.contexts.add(context);
+        DeployedApp previous = this.deployed.put(name, new DeployedApp(context, fingerprint, workDir));
+        logger.info("{}应用 {} -> {}{}, 耗时 {} ms", old == null ? "部署" : "重新部署", source.getFileName(), this.contexts.getHostName(),
+                contextPath.isEmpty() ? "/" : contextPath, (System.nanoTime() - start) / 1_000_000);
+        if (old != null) {
+            release(old, previous == null ? null : previous.workDir);
+        }
+    }
+
+    void undeploy(String name) {
+        DeployedApp app = this.deployed.remove(name);
+        if (app == null) {
+            return;
+        }
+        if (this.contexts.get(app.context.getContextPath()) == app.context) {
+            this.contexts.remove(app.context.getContextPath());
+        }
+        logger.info("卸载应用 {}", contextPath(name));
+        release(app.context, app.workDir);
+    }
+
+    /**
+     * 等待旧应用的请求结束, 然后销毁应用, 关闭类加载器, 删除工作目录
+     */
+    private void release(ServletContextImpl context, Path workDir) {
+        try {
+            if (!context.drain(this.drainTimeoutMillis)) {
+                logger.warn("应用 {} 还有 {} 个请求未结束, 强制销毁", context.getContextPath(), context.getActiveRequests());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        context.destroy();
+        if (context.getClassLoader() instanceof WebappClassLoader loader) {
+            try {
+                loader.close();
+            } catch (IOException e) {
+                logger.debug("关闭类加载器失败", e);
+            }
+        }
+        delete(workDir);
+    }
+
+    /**
+     * 停止定时检查, 等待正在进行的部署结束
+     */
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+        try {
+            this.scheduler.awaitTermination(this.drainTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 删除已部署应用的工作目录, 停止服务并销毁应用之后调用
+     */
+    void deleteWorkDirs() {
+        for (DeployedApp app : this.deployed.values()) {
+            delete(app.workDir());
+        }
+        this.deployed.clear();
+    }
+
+    /**
+     * appBase中的应用, 名称 -> WAR文件或者展开目录, 同名时使用WAR
+     */
+    private Map<String, Path> listApps() {
+        Map<String, Path> apps = new TreeMap<>();
+        try (Stream<Path> files = Files.list(this.appBase)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(".")) {
+                    continue;
+                }
+                if (fileName.endsWith(".war") && Files.isRegularFile(file)) {
+                    apps.put(fileName.substring(0, fileName.length() - 4), file);
+                } else if (Files.isDirectory(file.resolve("WEB-INF"))) {
+                    apps.putIfAbsent(fileName, file);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("读取应用目录 {} 失败", this.appBase, e);
+        }
+        return apps;
+    }
+
+    static String contextPath(String name) {
+        return name.equals("ROOT") ? "" : "/" + name.replace('#', '/');
+    }
+
+    /**
+     * WAR使用大小和修改时间; 展开目录使用WEB-INF下的文件数, 总大小和最新修改时间
+     */
+    static String fingerprint(Path source) throws IOException {
+        if (!Files.isDirectory(source)) {
+            return Files.size(source) + "@" + Files.getLastModifiedTime(source).toMillis();
+        }
+        long[] stat = new long[3];
+        Files.walkFileTree(source.resolve("WEB-INF"), new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                stat[0]++;
+                stat[1] += attrs.size();
+                stat[2] = Math.max(stat[2], attrs.lastModifiedTime().toMillis());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return stat[0] + "/" + stat[1] + "@" + stat[2];
+    }
+
+    static List<Path> classPath(Path workDir) throws IOException {
+        List<Path> classPath = new ArrayList<>();
+        Path classes = workDir.resolve("WEB-INF/classes");
+        if (Files.isDirectory(classes)) {
+            classPath.add(classes);
+        }
+        Path lib = workDir.resolve("WEB-INF/lib");
+        if (Files.isDirectory(lib)) {
+            try (Stream<Path> jars = Files.list(lib)) {
+                jars.filter(jar -> jar.toString().endsWith(".jar")).sorted().forEach(classPath::add);
+            }
+        }
+        return classPath;
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void unzip(Path war, Path target) throws IOException {
+        try (ZipFile zip = new ZipFile(war.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                Path file = target.resolve(entry.getName()).normalize();
+                if (!file.startsWith(target)) {
+                    throw new IOException("WAR中的路径不合法: " + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    Files.createDirectories(file);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    try (InputStream input = zip.getInputStream(entry)) {
+                        Files.copy(input, file);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void delete(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.debug("删除工作目录 {} 失败", dir, e);
+        }
+    }
+}
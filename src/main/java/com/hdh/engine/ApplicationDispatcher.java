@@ -0,0 +1,97 @@
+package com.hdh.engine;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+/**
+ * RequestDispatcher 实现, 在同一个应用内转发或包含
+ * 目标Servlet在获取时已经匹配好, 转发/包含时只创建请求包装对象和Filter链
+ */
+public class ApplicationDispatcher implements RequestDispatcher {
+
+    final ServletContextImpl servletContext;
+    final ServletRegistrationImpl registration; // 目标Servlet
+    final String path; // 应用内路径, 按名称获取时为null
+    final String queryString; // 路径中的查询参数, 没有时为null
+
+    ApplicationDispatcher(ServletContextImpl servletContext, ServletRegistrationImpl registration, String path, String queryString) {
+        this.servletContext = servletContext;
+        this.registration = registration;
+        this.path = path;
+        this.queryString = queryString;
+    }
+
+    /**
+     * 转发: 清空未提交的响应体, 由目标Servlet重新生成响应, 返回后结束响应
+     */
+    @Override
+    public void forward(ServletRequest request, ServletResponse response) throws ServletException, IOException {
+        if (response.isCommitted()) {
+            throw new IllegalStateException("响应已经提交, 无法转发");
+        }
+        response.resetBuffer();
+        DispatchedRequest forwarded = new DispatchedRequest((HttpServletRequest) request, DispatcherType.FORWARD, this);
+        invoke(forwarded, response, DispatcherType.FORWARD);
+        // 转发返回后不能再写入响应, 异步请求由AsyncContext结束
+        if (!request.isAsyncStarted()) {
+            finish(response);
+        }
+    }
+
+    /**
+     * 包含: 目标Servlet的输出直接写入当前响应的缓冲区, 不能修改状态码和响应头
+     */
+    @Override
+    public void include(ServletRequest request, ServletResponse response) throws ServletException, IOException {
+        DispatchedRequest included = new DispatchedRequest((HttpServletRequest) request, DispatcherType.INCLUDE, this);
+        invoke(included, new IncludedResponse((HttpServletResponse) response), DispatcherType.INCLUDE);
+    }
+
+    /**
+     * 分派到错误页: 路径改为错误页路径, 错误信息通过jakarta.servlet.error.*属性传给错误页
+     * @param exception 未捕获的异常, 调用sendError()时为null
+     * @param servletName 出错的Servlet名称, 可以为null
+     */
+    void error(HttpServletRequest request, HttpServletResponse response, int status, String message, Throwable exception,
+               String servletName) throws ServletException, IOException {
+        DispatchedRequest errorRequest = new DispatchedRequest(request, DispatcherType.ERROR, this);
+        errorRequest.setError(status, message, exception, servletName);
+        invoke(errorRequest, response, DispatcherType.ERROR);
+        finish(response);
+    }
+
+    /**
+     * 执行目标Servlet和对应分派类型的Filter
+     */
+    void invoke(ServletRequest request, ServletResponse response, DispatcherType type) throws ServletException, IOException {
+        ServletRegistrationImpl registration = this.registration;
+        if (!registration.initialized) {
+            registration.ensureInitialized();
+        }
+        FilterChain chain = this.servletContext.createFilterChain(this.path, type, registration.servlet);
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (registration.metrics != null) {
+                registration.metrics.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 关闭响应的Writer或OutputStream, 写出缓冲区并提交
+     * 目标Servlet调用了sendError()时不提交, 由容器分派到错误页
+     */
+    static void finish(ServletResponse response) throws IOException {
+        while (response instanceof ServletResponseWrapper wrapper) {
+            response = wrapper.getResponse();
+        }
+        if (response instanceof HttpServletResponseImpl impl && !impl.isError()) {
+            impl.cleanup();
+        }
+    }
+}
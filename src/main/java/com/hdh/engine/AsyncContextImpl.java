@@ -0,0 +1,274 @@
+package com.hdh.engine;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * AsyncContext 实现
+ * 开始异步处理时连接器尽量让连接脱离HttpServer(见HttpExchangeResponse.detach), 之后响应通过非阻塞连接写出,
+ * ServletOutputStream.isReady()/setWriteListener()反映连接的真实状态; 不能脱离时退回阻塞写出.
+ * 开始异步处理的那次分派(Filter和Servlet)返回之前, complete()、超时和客户端断开都推迟到分派返回后处理,
+ * 避免在Servlet还在写响应时结束响应和清理请求. 不支持dispatch().
+ */
+public class AsyncContextImpl implements AsyncContext {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncContextImpl.class);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "tomdog-async-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    final HttpServletRequestImpl request;
+    final HttpServletResponseImpl response;
+    final ServletRequest servletRequest;
+    final ServletResponse servletResponse;
+    final ServletContextImpl servletContext; // 开始异步处理时的应用, 结束时通知应用请求已完成
+    final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    long timeout = 30000; // 超时时间, 0表示不超时
+    volatile boolean detached = false; // 连接是否已经脱离HttpServer
+    private ScheduledFuture<?> timeoutTask;
+    private boolean completed = false;
+    private boolean dispatching = true; // 开始异步处理的那次分派还没有返回
+    private boolean completeRequested = false; // 分派期间调用了complete()
+    private Runnable deferred; // 分派期间发生的超时或者客户端断开
+    Runnable onEnd; // 响应结束后、清理请求前执行, 由ServletContextImpl.process()设置, 用于结束请求指标和写访问日志
+
+    AsyncContextImpl(HttpServletRequestImpl request, HttpServletResponseImpl response, ServletRequest servletRequest, ServletResponse servletResponse) {
+        this.request = request;
+        this.response = response;
+        this.servletRequest = servletRequest;
+        this.servletResponse = servletResponse;
+        this.servletContext = request.servletContext;
+    }
+
+    @Override
+    public ServletRequest getRequest() {
+        return this.servletRequest;
+    }
+
+    @Override
+    public ServletResponse getResponse() {
+        return this.servletResponse;
+    }
+
+    @Override
+    public boolean hasOriginalRequestAndResponse() {
+        return this.servletRequest == this.request && this.servletResponse == this.response;
+    }
+
+    @Override
+    public void dispatch() {
+        throw new IllegalStateException("不支持异步dispatch");
+    }
+
+    @Override
+    public void dispatch(String path) {
+        throw new IllegalStateException("不支持异步dispatch");
+    }
+
+    @Override
+    public void dispatch(ServletContext context, String path) {
+        throw new IllegalStateException("不支持异步dispatch");
+    }
+
+    /**
+     * 结束异步处理: 结束响应, 清理请求, 然后通知AsyncListener
+     * 分派还没有返回时只做标记, 分派返回后再结束
+     */
+    @Override
+    public void complete() {
+        synchronized (this) {
+            if (this.completed) {
+                return;
+            }
+            if (this.timeoutTask != null) {
+                this.timeoutTask.cancel(false);
+            }
+            if (this.dispatching) {
+                this.completeRequested = true;
+                return;
+            }
+            this.completed = true;
+        }
+        this.request.servletContext.invokeServletRequestDestroyed(this.request);
+        try {
+            this.response.cleanup();
+        } catch (IOException e) {
+            logger.debug("结束异步响应失败", e);
+        }
+        if (this.onEnd != null) {
+            try {
+                this.onEnd.run();
+            } catch (RuntimeException e) {
+                logger.error("结束异步请求失败", e);
+            }
+        }
+        try {
+            this.request.cleanup();
+        } catch (IOException e) {
+            logger.debug("清理异步请求失败", e);
+        }
+        for (Listener listener : this.listeners) {
+            try {
+                listener.listener.onComplete(listener.event(this, null));
+            } catch (IOException | RuntimeException e) {
+                logger.error("AsyncListener处理失败", e);
+            }
+        }
+        this.servletContext.asyncCompleted(this);
+        this.servletContext.exit();
+    }
+
+    /**
+     * 中止异步处理: 不等排队的数据写出, 直接关闭连接后结束, 用于丢弃接收过慢的客户端
+     * 连接没有脱离HttpServer时与complete()相同
+     */
+    public void abort() {
+        if (isCompleted()) {
+            return;
+        }
+        this.response.abort();
+        complete();
+    }
+
+    @Override
+    public void start(Runnable run) {
+        ForkJoinPool.commonPool().execute(run);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener) {
+        addListener(listener, this.servletRequest, this.servletResponse);
+    }
+
+    @Override
+    public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+        this.listeners.add(new Listener(listener, servletRequest, servletResponse));
+    }
+
+    @Override
+    public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+        return this.request.servletContext.createInstance(clazz);
+    }
+
+    @Override
+    public synchronized void setTimeout(long timeout) {
+        this.timeout = timeout;
+        scheduleTimeout();
+    }
+
+    @Override
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    synchronized boolean isCompleted() {
+        return this.completed || this.completeRequested;
+    }
+
+    /**
+     * 开始异步处理的那次分派已经返回, 处理分派期间调用的complete()或者发生的超时、断开
+     */
+    void dispatchReturned() {
+        Runnable action;
+        synchronized (this) {
+            if (!this.dispatching) {
+                return;
+            }
+            this.dispatching = false;
+            action = this.completeRequested ? this::complete : this.deferred;
+            this.deferred = null;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * 分派期间发生的事件推迟到分派返回后处理, 返回true表示已经推迟或者不需要处理
+     */
+    private synchronized boolean defer(Runnable action) {
+        if (this.completed || this.completeRequested) {
+            return true;
+        }
+        if (!this.dispatching) {
+            return false;
+        }
+        if (this.deferred == null) {
+            this.deferred = action;
+        }
+        return true;
+    }
+
+    synchronized void scheduleTimeout() {
+        if (this.timeoutTask != null) {
+            this.timeoutTask.cancel(false);
+            this.timeoutTask = null;
+        }
+        if (this.timeout > 0 && !this.completed && !this.completeRequested) {
+            this.timeoutTask = timer.schedule(this::onTimeout, this.timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 超时: 先通知AsyncListener, 没有监听器结束异步处理时按规范以500错误结束,
+     * 有对应的错误页时分派到错误页
+     */
+    void onTimeout() {
+        if (defer(this::onTimeout)) {
+            return;
+        }
+        for (Listener listener : this.listeners) {
+            try {
+                listener.listener.onTimeout(listener.event(this, null));
+            } catch (IOException | RuntimeException e) {
+                logger.error("AsyncListener处理失败", e);
+            }
+        }
+        if (isCompleted()) {
+            return;
+        }
+        if (!this.response.isCommitted()) {
+            try {
+                this.response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                this.servletContext.handleError(this.request, this.response, null, null);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("写出异步超时错误页失败", e);
+            }
+        }
+        complete();
+    }
+
+    /**
+     * 脱离HttpServer的连接被关闭(通常是客户端断开)
+     */
+    void onDisconnect() {
+        if (defer(this::onDisconnect)) {
+            return;
+        }
+        IOException error = new IOException("客户端断开连接");
+        for (Listener listener : this.listeners) {
+            try {
+                listener.listener.onError(listener.event(this, error));
+            } catch (IOException | RuntimeException e) {
+                logger.error("AsyncListener处理失败", e);
+            }
+        }
+        complete();
+    }
+
+    record Listener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+        AsyncEvent event(AsyncContext context, Throwable error) {
+            return new AsyncEvent(context, this.servletRequest, this.servletResponse, error);
+        }
+    }
+}
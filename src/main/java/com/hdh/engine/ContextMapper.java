@@ -0,0 +1,78 @@
+package com.hdh.engine;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按contextPath把请求路径映射到Web应用
+ * 最长前缀匹配: 从完整路径开始逐段去掉最后一段查找, 每段一次哈希查找, 与应用数量无关.
+ * 修改时复制生成新的Map, 查找时不加锁.
+ */
+public class ContextMapper {
+
+    private final String hostName; // 所属虚拟主机的名称
+    private volatile Map<String, ServletContextImpl> contexts = Map.of();
+
+    public ContextMapper() {
+        this("localhost");
+    }
+
+    public ContextMapper(String hostName) {
+        this.hostName = hostName;
+    }
+
+    public String getHostName() {
+        return this.hostName;
+    }
+
+    /**
+     * 添加应用, 已有相同contextPath的应用时替换, 返回被替换的应用
+     */
+    public synchronized ServletContextImpl add(ServletContextImpl context) {
+        Map<String, ServletContextImpl> copy = new HashMap<>(this.contexts);
+        ServletContextImpl old = copy.put(context.getContextPath(), context);
+        this.contexts = Map.copyOf(copy);
+        context.mapper = this;
+        return old;
+    }
+
+    public synchronized ServletContextImpl remove(String contextPath) {
+        Map<String, ServletContextImpl> copy = new HashMap<>(this.contexts);
+        ServletContextImpl old = copy.remove(contextPath);
+        this.contexts = Map.copyOf(copy);
+        return old;
+    }
+
+    /**
+     * 查找处理请求路径的应用
+     * @param path 请求路径, 以/开头
+     * @return 没有匹配的应用(也没有根应用)时返回null
+     */
+    public ServletContextImpl map(String path) {
+        Map<String, ServletContextImpl> contexts = this.contexts;
+        if (contexts.size() == 1 && contexts.containsKey("")) {
+            return contexts.get("");
+        }
+        String prefix = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        for (;;) {
+            ServletContextImpl context = contexts.get(prefix);
+            if (context != null) {
+                return context;
+            }
+            int n = prefix.lastIndexOf('/');
+            if (n < 0) {
+                return null;
+            }
+            prefix = prefix.substring(0, n);
+        }
+    }
+
+    public ServletContextImpl get(String contextPath) {
+        return this.contexts.get(contextPath);
+    }
+
+    public Collection<ServletContextImpl> getContexts() {
+        return this.contexts.values();
+    }
+}
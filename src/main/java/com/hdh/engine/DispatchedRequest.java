@@ -0,0 +1,224 @@
+package com.hdh.engine;
+
+import com.hdh.engine.utils.HttpUtils;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.RequestDispatcher;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 转发/包含时传给目标Servlet的请求
+ * 转发和错误页分派时路径改为目标路径; 包含时路径不变
+ * jakarta.servlet.forward.*、jakarta.servlet.include.*、jakarta.servlet.error.* 属性在读取时计算, 不写入请求属性
+ */
+class DispatchedRequest extends HttpServletRequestWrapper {
+
+    private static final String[] FORWARD_ATTRIBUTES = {
+            RequestDispatcher.FORWARD_REQUEST_URI, RequestDispatcher.FORWARD_CONTEXT_PATH, RequestDispatcher.FORWARD_SERVLET_PATH,
+            RequestDispatcher.FORWARD_PATH_INFO, RequestDispatcher.FORWARD_QUERY_STRING};
+    private static final String[] INCLUDE_ATTRIBUTES = {
+            RequestDispatcher.INCLUDE_REQUEST_URI, RequestDispatcher.INCLUDE_CONTEXT_PATH, RequestDispatcher.INCLUDE_SERVLET_PATH,
+            RequestDispatcher.INCLUDE_PATH_INFO, RequestDispatcher.INCLUDE_QUERY_STRING};
+    private static final String[] ERROR_ATTRIBUTES = {
+            RequestDispatcher.ERROR_STATUS_CODE, RequestDispatcher.ERROR_MESSAGE, RequestDispatcher.ERROR_EXCEPTION,
+            RequestDispatcher.ERROR_EXCEPTION_TYPE, RequestDispatcher.ERROR_REQUEST_URI, RequestDispatcher.ERROR_SERVLET_NAME};
+
+    private final DispatcherType type;
+    private final String contextPath;
+    private final String path; // 目标路径, 按名称分派时为null
+    private final String queryString; // 目标路径中的查询参数
+    private Map<String, String[]> parameters; // 合并后的参数, 有查询参数时第一次读取参数时创建
+
+    // 错误页分派时的错误信息
+    private int errorStatus;
+    private String errorMessage;
+    private Throwable errorException;
+    private String errorServletName;
+
+    DispatchedRequest(HttpServletRequest request, DispatcherType type, ApplicationDispatcher dispatcher) {
+        super(request);
+        this.type = type;
+        this.contextPath = dispatcher.servletContext.getContextPath();
+        this.path = dispatcher.path;
+        this.queryString = dispatcher.queryString;
+    }
+
+    void setError(int status, String message, Throwable exception, String servletName) {
+        this.errorStatus = status;
+        this.errorMessage = message;
+        this.errorException = exception;
+        this.errorServletName = servletName;
+    }
+
+    /**
+     * 是否使用目标路径作为请求路径
+     */
+    private boolean isForward() {
+        return this.path != null && (this.type == DispatcherType.FORWARD || this.type == DispatcherType.ERROR);
+    }
+
+    @Override
+    public DispatcherType getDispatcherType() {
+        return this.type;
+    }
+
+    @Override
+    public String getRequestURI() {
+        return isForward() ? this.contextPath + this.path : super.getRequestURI();
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        StringBuffer url = super.getRequestURL();
+        if (isForward()) {
+            url.setLength(url.length() - super.getRequestURI().length());
+            url.append(this.contextPath).append(this.path);
+        }
+        return url;
+    }
+
+    @Override
+    public String getServletPath() {
+        return isForward() ? this.path : super.getServletPath();
+    }
+
+    @Override
+    public String getPathInfo() {
+        return isForward() ? null : super.getPathInfo();
+    }
+
+    @Override
+    public String getQueryString() {
+        return isForward() && this.queryString != null ? this.queryString : super.getQueryString();
+    }
+
+    /**
+     * 相对路径相对于转发后的Servlet路径
+     */
+    @Override
+    public RequestDispatcher getRequestDispatcher(String path) {
+        if (path == null) {
+            return null;
+        }
+        return super.getRequestDispatcher(HttpUtils.resolvePath(this.getServletPath(), path));
+    }
+
+    // =================== 分派属性 ===================
+
+    @Override
+    public Object getAttribute(String name) {
+        if (this.path == null || !name.startsWith("jakarta.servlet.")) {
+            return super.getAttribute(name);
+        }
+        if (this.type == DispatcherType.FORWARD) {
+            // 多次转发时保留最初的请求信息
+            if (super.getAttribute(RequestDispatcher.FORWARD_REQUEST_URI) != null) {
+                return super.getAttribute(name);
+            }
+            return switch (name) {
+                case RequestDispatcher.FORWARD_REQUEST_URI -> super.getRequestURI();
+                case RequestDispatcher.FORWARD_CONTEXT_PATH -> super.getContextPath();
+                case RequestDispatcher.FORWARD_SERVLET_PATH -> super.getServletPath();
+                case RequestDispatcher.FORWARD_PATH_INFO -> super.getPathInfo();
+                case RequestDispatcher.FORWARD_QUERY_STRING -> super.getQueryString();
+                default -> super.getAttribute(name);
+            };
+        }
+        if (this.type == DispatcherType.ERROR) {
+            return switch (name) {
+                case RequestDispatcher.ERROR_STATUS_CODE -> this.errorStatus;
+                case RequestDispatcher.ERROR_MESSAGE -> this.errorMessage;
+                case RequestDispatcher.ERROR_EXCEPTION -> this.errorException;
+                case RequestDispatcher.ERROR_EXCEPTION_TYPE -> this.errorException == null ? null : this.errorException.getClass();
+                case RequestDispatcher.ERROR_REQUEST_URI -> super.getRequestURI();
+                case RequestDispatcher.ERROR_SERVLET_NAME -> this.errorServletName;
+                default -> super.getAttribute(name);
+            };
+        }
+        if (this.type == DispatcherType.INCLUDE) {
+            return switch (name) {
+                case RequestDispatcher.INCLUDE_REQUEST_URI -> this.contextPath + this.path;
+                case RequestDispatcher.INCLUDE_CONTEXT_PATH -> this.contextPath;
+                case RequestDispatcher.INCLUDE_SERVLET_PATH -> this.path;
+                case RequestDispatcher.INCLUDE_PATH_INFO -> null;
+                case RequestDispatcher.INCLUDE_QUERY_STRING -> this.queryString;
+                default -> super.getAttribute(name);
+            };
+        }
+        return super.getAttribute(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        if (this.path == null) {
+            return super.getAttributeNames();
+        }
+        List<String> names = Collections.list(super.getAttributeNames());
+        String[] dispatchAttributes = switch (this.type) {
+            case FORWARD -> FORWARD_ATTRIBUTES;
+            case INCLUDE -> INCLUDE_ATTRIBUTES;
+            case ERROR -> ERROR_ATTRIBUTES;
+            default -> new String[0];
+        };
+        for (String name : dispatchAttributes) {
+            if (!names.contains(name) && getAttribute(name) != null) {
+                names.add(name);
+            }
+        }
+        return Collections.enumeration(names);
+    }
+
+    // =================== 参数 ===================
+
+    /**
+     * 目标路径中的查询参数优先, 同名参数的原有值排在后面
+     */
+    private Map<String, String[]> parameters() {
+        if (this.queryString == null) {
+            return null;
+        }
+        if (this.parameters == null) {
+            Map<String, String[]> merged = new LinkedHashMap<>(HttpUtils.parseQuery(this.queryString, StandardCharsets.UTF_8));
+            for (var entry : super.getParameterMap().entrySet()) {
+                merged.merge(entry.getKey(), entry.getValue(), (a, b) -> {
+                    String[] values = Arrays.copyOf(a, a.length + b.length);
+                    System.arraycopy(b, 0, values, a.length, b.length);
+                    return values;
+                });
+            }
+            this.parameters = Collections.unmodifiableMap(merged);
+        }
+        return this.parameters;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        Map<String, String[]> parameters = parameters();
+        if (parameters == null) {
+            return super.getParameter(name);
+        }
+        String[] values = parameters.get(name);
+        return values == null || values.length == 0 ? null : values[0];
+    }
+
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        Map<String, String[]> parameters = parameters();
+        return parameters == null ? super.getParameterMap() : parameters;
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        Map<String, String[]> parameters = parameters();
+        return parameters == null ? super.getParameterNames() : Collections.enumeration(parameters.keySet());
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        Map<String, String[]> parameters = parameters();
+        return parameters == null ? super.getParameterValues(name) : parameters.get(name);
+    }
+}
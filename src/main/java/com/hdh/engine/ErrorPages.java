@@ -0,0 +1,77 @@
+package com.hdh.engine;
+
+import jakarta.servlet.ServletException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 错误页映射: 按状态码或异常类型找到应用内的错误页路径
+ * 状态码用数组直接索引; 异常类型按类名保存, 查找时沿父类向上匹配, 不需要提前加载异常类
+ */
+public class ErrorPages {
+
+    private final String[] statusPages = new String[600];
+    private volatile Map<String, String> exceptionPages = Map.of(); // 异常类名 -> 错误页, 添加时复制
+    private volatile boolean empty = true;
+
+    /**
+     * 添加状态码对应的错误页
+     * @param location 应用内路径, 以/开头
+     */
+    public void add(int status, String location) {
+        if (status < 400 || status >= this.statusPages.length) {
+            throw new IllegalArgumentException("错误页状态码不合法: " + status);
+        }
+        this.statusPages[status] = checkLocation(location);
+        this.empty = false;
+    }
+
+    /**
+     * 添加异常类型对应的错误页, 异常的子类也使用这个错误页
+     * @param exceptionType 异常类的全限定名
+     * @param location 应用内路径, 以/开头
+     */
+    public synchronized void add(String exceptionType, String location) {
+        Map<String, String> pages = new HashMap<>(this.exceptionPages);
+        pages.put(exceptionType, checkLocation(location));
+        this.exceptionPages = Map.copyOf(pages);
+        this.empty = false;
+    }
+
+    private static String checkLocation(String location) {
+        if (location == null || !location.startsWith("/")) {
+            throw new IllegalArgumentException("错误页路径必须以/开头: " + location);
+        }
+        return location;
+    }
+
+    /**
+     * 查找状态码对应的错误页
+     * @return 没有时返回null
+     */
+    public String find(int status) {
+        if (this.empty || status < 0 || status >= this.statusPages.length) {
+            return null;
+        }
+        return this.statusPages[status];
+    }
+
+    /**
+     * 查找异常对应的错误页, 先按异常类及其父类匹配, 再按ServletException的根原因匹配
+     * @return 没有时返回null
+     */
+    public String find(Throwable exception) {
+        Map<String, String> pages = this.exceptionPages;
+        while (exception != null && !pages.isEmpty()) {
+            for (Class<?> c = exception.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+                String location = pages.get(c.getName());
+                if (location != null) {
+                    return location;
+                }
+            }
+            exception = exception instanceof ServletException se ? se.getRootCause() : null;
+        }
+        return null;
+    }
+}
@@ -1,17 +1,27 @@
 package com.hdh.engine;
 
+import com.hdh.engine.jfr.FilterEvent;
+import com.hdh.engine.metrics.LatencyMetrics;
 import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
 
 public class FilterChainImpl implements FilterChain {
     Filter[] filters;
+    LatencyMetrics[] metrics; // 与filters一一对应, 为null时不统计
     Servlet servlet;
     int total;
     int index = 0;
+    long downstreamNanos = 0; // 已经返回的doFilter()调用(后续Filter和Servlet)的累计耗时, 用于计算Filter自身耗时
 
     public FilterChainImpl(Filter[] filters, Servlet servlet) {
+        this(filters, null, servlet);
+    }
+
+    public FilterChainImpl(Filter[] filters, LatencyMetrics[] metrics, Servlet servlet) {
         this.filters = filters;
+        this.metrics = metrics;
         this.servlet = servlet;
         this.total = filters.length;
     }
@@ -19,11 +29,38 @@ public class FilterChainImpl implements FilterChain {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
         if (index < total) {
-            Filter filter = filters[index++];
-            filter.doFilter(request, response, this);
+            int i = index++;
+            Filter filter = filters[i];
+            FilterEvent event = new FilterEvent();
+            event.begin();
+            // 统计Filter自身耗时: 总耗时减去这个Filter调用chain.doFilter()进入后续Filter和Servlet的耗时
+            long start = System.nanoTime();
+            long downstreamBefore = downstreamNanos;
+            try {
+                filter.doFilter(request, response, this);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                long downstream = downstreamNanos - downstreamBefore;
+                // 对上一个Filter来说, 这次调用的全部耗时都属于后续调用链
+                downstreamNanos = downstreamBefore + elapsed;
+                if (metrics != null) {
+                    metrics[i].record(elapsed - downstream);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.filterName = metrics != null ? metrics[i].getName() : filter.getClass().getName();
+                    event.path = request instanceof HttpServletRequest req ? req.getRequestURI() : null;
+                    event.commit();
+                }
+            }
         } else {
             // 最后一个Filter执行完毕后，执行Servlet
-            servlet.service(request, response);
+            long start = System.nanoTime();
+            try {
+                servlet.service(request, response);
+            } finally {
+                downstreamNanos += System.nanoTime() - start;
+            }
         }
     }
 }
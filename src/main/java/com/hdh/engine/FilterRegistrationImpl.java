@@ -1,5 +1,6 @@
 package com.hdh.engine;
 
+import com.hdh.engine.metrics.LatencyMetrics;
 import com.hdh.engine.support.InitParameters;
 import jakarta.servlet.*;
 
@@ -13,7 +14,9 @@ public class FilterRegistrationImpl implements FilterRegistration.Dynamic {
 
     final InitParameters initParameters = new InitParameters();
     final List<String> urlPatterns = new ArrayList<>(4);
+    final EnumSet<DispatcherType> dispatcherTypes = EnumSet.noneOf(DispatcherType.class); // 生效的请求分派类型
 
+    LatencyMetrics metrics; // 延迟指标, 初始化时创建
     boolean initialized = false;
 
     public FilterRegistrationImpl(ServletContext servletContext, String name, Filter filter) {
@@ -60,13 +63,21 @@ public class FilterRegistrationImpl implements FilterRegistration.Dynamic {
     @Override
     public void addMappingForUrlPatterns(EnumSet<DispatcherType> dispatcherTypes, boolean isMatchAfter, String... urlPatterns) {
         checkNotInitialized("addMappingForUrlPatterns");
-        if(!dispatcherTypes.contains(DispatcherType.REQUEST) || dispatcherTypes.size() != 1) {
-            throw new IllegalArgumentException("只支持REQUEST类型的DispatcherType.");
+        if(dispatcherTypes == null || dispatcherTypes.isEmpty()) {
+            dispatcherTypes = EnumSet.of(DispatcherType.REQUEST);
         }
         if(urlPatterns == null || urlPatterns.length == 0) {
             throw new IllegalArgumentException("urlPatterns不能为空.");
         }
         this.urlPatterns.addAll(Arrays.asList(urlPatterns));
+        this.dispatcherTypes.addAll(dispatcherTypes);
+    }
+
+    /**
+     * 获取生效的请求分派类型
+     */
+    public Set<DispatcherType> getDispatcherTypes() {
+        return this.dispatcherTypes;
     }
 
     @Override
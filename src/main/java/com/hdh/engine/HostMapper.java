@@ -0,0 +1,89 @@
+package com.hdh.engine;
+
+import com.hdh.engine.utils.HttpUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 虚拟主机: 按Host请求头选择应用集合(ContextMapper)
+ * 主机名在添加时转为小写, 查找时Host只转换一次小写, 然后做一次哈希查找;
+ * 没有精确匹配时依次去掉最左边的一段查找通配主机(*.example.com), 都没有时使用默认主机.
+ * 修改时复制生成新的Map, 查找时不加锁.
+ */
+public class HostMapper {
+
+    private final ContextMapper defaultHost;
+    private volatile Map<String, ContextMapper> hosts = Map.of(); // 主机名 -> 应用集合
+    private volatile Map<String, ContextMapper> wildcards = Map.of(); // *.example.com 去掉"*."后的后缀 -> 应用集合
+
+    public HostMapper(ContextMapper defaultHost) {
+        this.defaultHost = defaultHost;
+    }
+
+    /**
+     * 添加虚拟主机
+     * @param name 主机名, 以"*."开头时匹配所有子域名
+     */
+    public synchronized void add(String name, ContextMapper contexts) {
+        name = name.strip().toLowerCase(Locale.ROOT);
+        if (name.startsWith("*.")) {
+            Map<String, ContextMapper> copy = new HashMap<>(this.wildcards);
+            copy.put(name.substring(2), contexts);
+            this.wildcards = Map.copyOf(copy);
+        } else {
+            Map<String, ContextMapper> copy = new HashMap<>(this.hosts);
+            copy.put(name, contexts);
+            this.hosts = Map.copyOf(copy);
+        }
+    }
+
+    /**
+     * 查找Host请求头对应的应用集合, 不会返回null
+     * @param host Host请求头, 可以带端口
+     */
+    public ContextMapper map(String host) {
+        Map<String, ContextMapper> hosts = this.hosts;
+        Map<String, ContextMapper> wildcards = this.wildcards;
+        if (hosts.isEmpty() && wildcards.isEmpty()) {
+            return this.defaultHost;
+        }
+        String name = HttpUtils.parseHostName(host);
+        if (name == null) {
+            return this.defaultHost;
+        }
+        ContextMapper contexts = hosts.get(name);
+        if (contexts != null) {
+            return contexts;
+        }
+        if (!wildcards.isEmpty()) {
+            int n = name.indexOf('.');
+            while (n >= 0) {
+                contexts = wildcards.get(name.substring(n + 1));
+                if (contexts != null) {
+                    return contexts;
+                }
+                n = name.indexOf('.', n + 1);
+            }
+        }
+        return this.defaultHost;
+    }
+
+    /**
+     * 获取所有虚拟主机的应用集合, 包括默认主机
+     */
+    public List<ContextMapper> getHosts() {
+        List<ContextMapper> result = new ArrayList<>();
+        result.add(this.defaultHost);
+        result.addAll(this.hosts.values());
+        result.addAll(this.wildcards.values());
+        return result;
+    }
+
+    public ContextMapper getDefaultHost() {
+        return this.defaultHost;
+    }
+}
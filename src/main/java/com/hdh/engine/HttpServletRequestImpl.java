@@ -3,10 +3,13 @@ package com.hdh.engine;
 import com.hdh.connector.HttpExchangeRequest;
 import com.hdh.engine.support.Attributes;
 import com.hdh.engine.support.HttpHeaders;
+import com.hdh.engine.support.MultipartParser;
 import com.hdh.engine.support.Parameters;
 import com.hdh.engine.utils.HttpUtils;
 import jakarta.servlet.*;
 import jakarta.servlet.http.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.InetSocketAddress;
@@ -20,34 +23,88 @@ import java.util.*;
  * HttpServletRequest 接口实现类
  */
 public class HttpServletRequestImpl implements HttpServletRequest {
-    final ServletContextImpl servletContext;
+    private static final Logger logger = LoggerFactory.getLogger(HttpServletRequestImpl.class);
+
+    ServletContextImpl servletContext; // 处理请求的应用, 复用请求对象时可能改变
     final HttpExchangeRequest exchangeRequest;
     final HttpServletResponse response;
 
-    final String method; // 请求方法
+    String method; // 请求方法
     final HttpHeaders headers; // 请求头
     final Parameters parameters; // 请求参数
 
     String characterEncoding = "UTF-8"; // 字符编码
-    int contentLength = 0; // 请求体长度
+    long contentLength = 0; // 请求体长度, 可能超过int范围
 
     String requestId; // 请求ID
-    Attributes attributes = new Attributes(); // 请求属性
+    final Attributes attributes; // 请求属性, 复用时沿用上一个请求对象的
 
     Boolean inputCalled = null; // 是否调用过getInputStream()方法
 
+    MultipartConfigElement multipartConfig; // 匹配Servlet的multipart配置
+    List<Part> parts; // 解析后的分块
+    HttpUpgradeHandler upgradeHandler; // 调用upgrade()后创建的协议处理器, Servlet返回后由连接器接管连接
+    AsyncContextImpl asyncContext; // 调用startAsync()后创建
+
+    boolean recycled = false; // 是否已回收
 
     public HttpServletRequestImpl(ServletContextImpl servletContext, HttpExchangeRequest exchangeRequest, HttpServletResponse response) {
+        this(servletContext, exchangeRequest, response, new Parameters(exchangeRequest, "UTF-8"), new Attributes());
+    }
+
+    /**
+     * 复用已回收请求对象的参数表和属性表创建新的请求对象
+     * 每次请求都是新的对象, 旧对象一直处于回收状态, 业务代码保留的旧引用不会读到之后请求的数据
+     * @param previous 已回收的请求对象, 必须使用同一个适配器
+     */
+    public HttpServletRequestImpl(ServletContextImpl servletContext, HttpExchangeRequest exchangeRequest, HttpServletResponse response, HttpServletRequestImpl previous) {
+        this(servletContext, exchangeRequest, response, reuseParameters(previous, exchangeRequest), previous.attributes);
+    }
+
+    private HttpServletRequestImpl(ServletContextImpl servletContext, HttpExchangeRequest exchangeRequest, HttpServletResponse response,
+                                   Parameters parameters, Attributes attributes) {
         this.exchangeRequest = exchangeRequest;
         this.servletContext = servletContext;
         this.response = response;
 
         this.method = exchangeRequest.getRequestMethod();
         this.headers = new HttpHeaders(exchangeRequest.getRequestHeaders());
-        this.parameters = new Parameters(exchangeRequest, this.characterEncoding);
+        this.parameters = parameters;
+        this.attributes = attributes;
 
         if (List.of("GET", "POST", "PUT", "DELETE").contains(this.method)) {
-            this.contentLength = this.getIntHeader("Content-Length");
+            this.contentLength = this.headers.getContentLength();
+        }
+    }
+
+    private static Parameters reuseParameters(HttpServletRequestImpl previous, HttpExchangeRequest exchangeRequest) {
+        if (!previous.recycled || previous.exchangeRequest != exchangeRequest) {
+            throw new IllegalArgumentException("只能复用同一个适配器上已回收的请求对象");
+        }
+        previous.parameters.reset("UTF-8");
+        return previous.parameters;
+    }
+
+    /**
+     * 回收请求对象, 之后这个对象的所有访问都抛出异常
+     */
+    public void recycle() {
+        this.recycled = true;
+        this.headers.reset(null);
+        this.attributes.clearAttributes();
+        this.parts = null;
+        this.multipartConfig = null;
+        this.upgradeHandler = null;
+        this.asyncContext = null;
+        this.servletContext = null; // 不再引用应用, 卸载的应用可以被回收
+    }
+
+    /**
+     * 检查请求对象是否已回收
+     */
+    void checkNotRecycled() {
+        if (this.recycled) {
+            throw new IllegalStateException("请求已经回收");
         }
     }
 
@@ -57,11 +114,13 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getParameter(String s) {
+        checkNotRecycled();
         return this.parameters.getParameter(s);
     }
 
     @Override
     public String getAuthType() {
+        checkNotRecycled();
         return null;
     }
 
@@ -71,6 +130,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Cookie[] getCookies() {
+        checkNotRecycled();
         String cookieValue = this.getHeader("Cookie");
         return HttpUtils.parseCookies(cookieValue);
     }
@@ -84,6 +144,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public long getDateHeader(String s) {
+        checkNotRecycled();
         return this.headers.getDateHeader(s);
     }
 
@@ -94,6 +155,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getHeader(String s) {
+        checkNotRecycled();
         return this.headers.getHeader(s);
     }
 
@@ -104,6 +166,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Enumeration<String> getHeaders(String s) {
+        checkNotRecycled();
         List<String> hs = this.headers.getHeaders(s);
         if (hs != null) {
             return Collections.enumeration(hs);
@@ -117,6 +180,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Enumeration<String> getHeaderNames() {
+        checkNotRecycled();
         return Collections.enumeration(this.headers.getHeaderNames());
     }
 
@@ -127,6 +191,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public int getIntHeader(String s) {
+        checkNotRecycled();
         return this.headers.getIntHeader(s);
     }
 
@@ -135,11 +200,13 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getMethod() {
+        checkNotRecycled();
         return this.exchangeRequest.getRequestMethod();
     }
 
     @Override
     public String getPathInfo() {
+        checkNotRecycled();
         return null;
     }
 
@@ -148,12 +215,14 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getPathTranslated() {
+        checkNotRecycled();
         return this.servletContext.getRealPath(this.getRequestURI());
     }
 
     @Override
     public String getContextPath() {
-        return "";
+        checkNotRecycled();
+        return this.servletContext.getContextPath();
     }
 
     /**
@@ -161,26 +230,31 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getQueryString() {
+        checkNotRecycled();
         return this.exchangeRequest.getRequestURI().getRawQuery();
     }
 
     @Override
     public String getRemoteUser() {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
     @Override
     public boolean isUserInRole(String s) {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
     @Override
     public Principal getUserPrincipal() {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
     @Override
     public String getRequestedSessionId() {
+        checkNotRecycled();
         return null;
     }
 
@@ -189,6 +263,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getRequestURI() {
+        checkNotRecycled();
         return this.exchangeRequest.getRequestURI().getPath();
     }
 
@@ -197,19 +272,25 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public StringBuffer getRequestURL() {
+        checkNotRecycled();
         StringBuffer url = new StringBuffer();
-        url.append(this.getScheme())
+        String scheme = this.getScheme();
+        int port = this.getServerPort();
+        url.append(scheme)
                 .append("://")
-                .append(this.getServerName())
-                .append(":")
-                .append(this.getServerPort())
-                .append(this.getRequestURI());
+                .append(this.getServerName());
+        // 默认端口省略
+        if (port != (this.isSecure() ? 443 : 80)) {
+            url.append(":").append(port);
+        }
+        url.append(this.getRequestURI());
         return url;
     }
 
     @Override
     public String getServletPath() {
-        return this.getRequestURI();
+        checkNotRecycled();
+        return this.getRequestURI().substring(this.servletContext.getContextPath().length());
     }
 
     /**
@@ -218,6 +299,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public HttpSession getSession(boolean create) {
+        checkNotRecycled();
         // 从Cookie中获取SessionId
         String sessionId = null;
         Cookie[] cookies = this.getCookies();
@@ -238,7 +320,8 @@ public class HttpServletRequestImpl implements HttpServletRequest {
             }
             sessionId = UUID.randomUUID().toString();
             // 设置SessionId到Cookie
-            String cookieValue = String.format("JSESSIONID=%s; Path=/;", sessionId);
+            String contextPath = this.servletContext.getContextPath();
+            String cookieValue = String.format("JSESSIONID=%s; Path=%s;", sessionId, contextPath.isEmpty() ? "/" : contextPath);
             this.response.addHeader("Set-Cookie", cookieValue);
         }
         return this.servletContext.sessionManager.getSession(sessionId);
@@ -246,57 +329,135 @@ public class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public HttpSession getSession() {
+        checkNotRecycled();
         return this.getSession(true);
     }
 
     @Override
     public String changeSessionId() {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持修改SessionId");
     }
 
     @Override
     public boolean isRequestedSessionIdValid() {
+        checkNotRecycled();
         return false;
     }
 
     @Override
     public boolean isRequestedSessionIdFromCookie() {
+        checkNotRecycled();
         return true;
     }
 
     @Override
     public boolean isRequestedSessionIdFromURL() {
+        checkNotRecycled();
         return false;
     }
 
     @Override
     public boolean authenticate(HttpServletResponse httpServletResponse) throws IOException, ServletException {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
     @Override
     public void login(String s, String s1) throws ServletException {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
     @Override
     public void logout() throws ServletException {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持认证");
     }
 
+    /**
+     * 获取multipart/form-data请求的全部分块, 第一次调用时流式解析请求体
+     * @return 分块集合
+     */
     @Override
     public Collection<Part> getParts() throws IOException, ServletException {
-        throw new UnsupportedOperationException("不支持获取分块数据");
+        checkNotRecycled();
+        if (this.parts == null) {
+            String contentType = this.getContentType();
+            if (contentType == null || !contentType.startsWith("multipart/form-data")) {
+                throw new ServletException("请求不是multipart/form-data类型");
+            }
+            if (this.multipartConfig == null) {
+                throw new IllegalStateException("Servlet未配置MultipartConfig");
+            }
+            String boundary = MultipartParser.getBoundary(contentType);
+            if (boundary == null || boundary.isEmpty()) {
+                throw new ServletException("multipart请求缺少boundary");
+            }
+            if (this.inputCalled != null) {
+                throw new IllegalStateException("请求体已经被读取");
+            }
+            long maxRequestSize = this.multipartConfig.getMaxRequestSize();
+            if (maxRequestSize > 0 && this.contentLength > maxRequestSize) {
+                // 声明的长度已经超过上限, 不读取请求体
+                throw new IllegalStateException("请求大小超过上限: " + maxRequestSize);
+            }
+            this.inputCalled = true;
+            String location = this.multipartConfig.getLocation();
+            File dir = location == null || location.isEmpty() ? new File(System.getProperty("java.io.tmpdir")) : new File(location);
+            MultipartParser parser = new MultipartParser(this.exchangeRequest.getRequestBodyStream(), boundary, this.multipartConfig, dir);
+            this.parts = parser.parse();
+        }
+        return this.parts;
     }
 
+    /**
+     * 根据名称获取分块
+     * @param s 分块名称
+     * @return 分块, 不存在时返回null
+     */
     @Override
     public Part getPart(String s) throws IOException, ServletException {
-        throw new UnsupportedOperationException("不支持获取分块数据");
+        checkNotRecycled();
+        for (Part part : this.getParts()) {
+            if (s.equals(part.getName())) {
+                return part;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 请求处理结束后清理资源, 删除分块临时文件
+     */
+    public void cleanup() throws IOException {
+        if (this.parts != null) {
+            for (Part part : this.parts) {
+                ((PartImpl) part).cleanup();
+            }
+        }
     }
 
     @Override
     public <T extends HttpUpgradeHandler> T upgrade(Class<T> aClass) throws IOException, ServletException {
-        throw new UnsupportedOperationException("不支持升级协议(websocket)");
+        checkNotRecycled();
+        if (this.upgradeHandler != null) {
+            throw new IllegalStateException("请求已经升级");
+        }
+        if (this.exchangeRequest.isSecure()) {
+            throw new ServletException("HTTPS连接不支持升级协议");
+        }
+        T handler = this.servletContext.createInstance(aClass);
+        this.response.setStatus(HttpServletResponse.SC_SWITCHING_PROTOCOLS);
+        this.upgradeHandler = handler;
+        return handler;
+    }
+
+    /**
+     * 获取升级协议处理器, 没有调用upgrade()时返回null
+     */
+    public HttpUpgradeHandler getUpgradeHandler() {
+        return this.upgradeHandler;
     }
 
     /**
@@ -306,6 +467,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Object getAttribute(String name) {
+        checkNotRecycled();
         return this.attributes.getAttribute(name);
     }
 
@@ -315,6 +477,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Enumeration<String> getAttributeNames() {
+        checkNotRecycled();
         return this.attributes.getAttributeNames();
     }
 
@@ -323,6 +486,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getCharacterEncoding() {
+        checkNotRecycled();
         return this.characterEncoding;
     }
 
@@ -331,15 +495,17 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public void setCharacterEncoding(String s) throws UnsupportedEncodingException {
+        checkNotRecycled();
         this.characterEncoding = s;
     }
 
     /**
-     * 获取ContentLength
+     * 获取ContentLength, 超过int范围时返回-1, 这时使用getContentLengthLong()
      */
     @Override
     public int getContentLength() {
-        return this.contentLength;
+        checkNotRecycled();
+        return this.contentLength > Integer.MAX_VALUE ? -1 : (int) this.contentLength;
     }
 
     /**
@@ -347,6 +513,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public long getContentLengthLong() {
+        checkNotRecycled();
         return this.contentLength;
     }
 
@@ -355,6 +522,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getContentType() {
+        checkNotRecycled();
         return this.getHeader("Content-Type");
     }
 
@@ -364,6 +532,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public ServletInputStream getInputStream() throws IOException {
+        checkNotRecycled();
         if(this.inputCalled == null){
             this.inputCalled = true;
             return new ServletInputStreamImpl(this.exchangeRequest.getRequestBody());
@@ -377,6 +546,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Enumeration<String> getParameterNames() {
+        checkNotRecycled();
         return this.parameters.getParameterNames();
     }
 
@@ -387,6 +557,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String[] getParameterValues(String s) {
+        checkNotRecycled();
         return this.parameters.getParameterValues(s);
     }
 
@@ -396,6 +567,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Map<String, String[]> getParameterMap() {
+        checkNotRecycled();
         return this.parameters.getParameterMap();
     }
 
@@ -404,7 +576,8 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getProtocol() {
-        return "HTTP/1.1";
+        checkNotRecycled();
+        return this.exchangeRequest.getProtocol();
     }
 
     /**
@@ -412,7 +585,8 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getScheme() {
-        return "http";
+        checkNotRecycled();
+        return this.exchangeRequest.isSecure() ? "https" : "http";
     }
 
     /**
@@ -420,7 +594,9 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getServerName() {
-        return "localhost";
+        checkNotRecycled();
+        String name = HttpUtils.parseHostName(this.getHeader("Host"));
+        return name != null ? name : this.getLocalName();
     }
 
     /**
@@ -428,8 +604,17 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public int getServerPort() {
-        InetSocketAddress address = this.exchangeRequest.getLocalAddress();
-        return address.getPort();
+        checkNotRecycled();
+        String host = this.getHeader("Host");
+        if (host == null || host.isEmpty()) {
+            return this.getLocalPort();
+        }
+        int port = HttpUtils.parseHostPort(host);
+        if (port > 0) {
+            return port;
+        }
+        // Host中没有端口时是协议的默认端口
+        return this.isSecure() ? 443 : 80;
     }
 
     /**
@@ -438,6 +623,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public BufferedReader getReader() throws IOException {
+        checkNotRecycled();
         if (this.inputCalled == null) {
             this.inputCalled = false;
             ByteArrayInputStream bis = new ByteArrayInputStream(this.exchangeRequest.getRequestBody());
@@ -451,6 +637,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getRemoteAddr() {
+        checkNotRecycled();
         InetSocketAddress address = this.exchangeRequest.getRemoteAddress();
         return address.getHostString();
     }
@@ -460,6 +647,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getRemoteHost() {
+        checkNotRecycled();
         return this.getRemoteAddr();
     }
 
@@ -470,6 +658,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public void setAttribute(String name, Object value) {
+        checkNotRecycled();
         if (value == null) {
             removeAttribute(name);
         } else {
@@ -488,6 +677,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public void removeAttribute(String name) {
+        checkNotRecycled();
         Object oldValue = this.attributes.removeAttribute(name);
         this.servletContext.invokeServletRequestAttributeRemoved(this, name, oldValue);
     }
@@ -497,22 +687,32 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public Locale getLocale() {
+        checkNotRecycled();
         return Locale.CHINA;
     }
 
     @Override
     public Enumeration<Locale> getLocales() {
+        checkNotRecycled();
         return Collections.enumeration(List.of(Locale.CHINA, Locale.US));
     }
 
     @Override
     public boolean isSecure() {
-        return false;
+        checkNotRecycled();
+        return this.exchangeRequest.isSecure();
     }
 
+    /**
+     * 获取RequestDispatcher, 相对路径相对于当前Servlet路径所在的目录
+     */
     @Override
     public RequestDispatcher getRequestDispatcher(String s) {
-        throw new UnsupportedOperationException("不支持getRequestDispatcher");
+        checkNotRecycled();
+        if (s == null) {
+            return null;
+        }
+        return this.servletContext.getRequestDispatcher(HttpUtils.resolvePath(this.getServletPath(), s));
     }
 
     /**
@@ -520,6 +720,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public int getRemotePort() {
+        checkNotRecycled();
         InetSocketAddress address = this.exchangeRequest.getRemoteAddress();
         return address.getPort();
     }
@@ -529,6 +730,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getLocalName() {
+        checkNotRecycled();
         return this.getLocalAddr();
     }
 
@@ -537,6 +739,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getLocalAddr() {
+        checkNotRecycled();
         InetSocketAddress address = this.exchangeRequest.getLocalAddress();
         return address.getHostString();
     }
@@ -546,42 +749,89 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public int getLocalPort() {
+        checkNotRecycled();
         InetSocketAddress address = this.exchangeRequest.getLocalAddress();
         return address.getPort();
     }
 
     @Override
-    public ServletContext getServletContext() {
+    public ServletContextImpl getServletContext() {
+        checkNotRecycled();
         return this.servletContext;
     }
 
     @Override
     public AsyncContext startAsync() throws IllegalStateException {
-        throw new IllegalStateException("不支持异步请求");
+        checkNotRecycled();
+        return startAsync(this, this.response);
     }
 
+    /**
+     * 开始异步处理, Servlet返回后响应不结束, 直到调用AsyncContext.complete()
+     */
     @Override
     public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) throws IllegalStateException {
-        throw new IllegalStateException("不支持异步请求");
+        checkNotRecycled();
+        if (this.asyncContext != null) {
+            throw new IllegalStateException("已经开始异步处理");
+        }
+        if (!(this.response instanceof HttpServletResponseImpl impl)) {
+            throw new IllegalStateException("不支持异步请求");
+        }
+        AsyncContextImpl context = new AsyncContextImpl(this, impl, servletRequest, servletResponse);
+        try {
+            context.detached = impl.detach(context::onDisconnect);
+        } catch (IOException e) {
+            // 不能接管连接时继续使用HttpServer阻塞写出
+            logger.debug("异步请求无法脱离HttpServer: {}", e.getMessage());
+        }
+        this.asyncContext = context;
+        this.servletContext.asyncStarted(context);
+        context.scheduleTimeout();
+        return context;
     }
 
     @Override
     public boolean isAsyncStarted() {
-        throw new IllegalStateException("不支持异步请求");
+        checkNotRecycled();
+        return this.asyncContext != null && !this.asyncContext.isCompleted();
+    }
+
+    /**
+     * 容器的分派已经返回, 由连接器在Servlet返回后调用
+     * 开始过异步处理时执行分派期间调用的complete()或者发生的超时
+     */
+    public void asyncDispatchReturned() {
+        if (this.asyncContext != null) {
+            this.asyncContext.dispatchReturned();
+        }
+    }
+
+    /**
+     * 本次请求是否开始过异步处理, 开始过时由AsyncContext负责结束响应和清理请求
+     */
+    public boolean wasAsyncStarted() {
+        return this.asyncContext != null;
     }
 
     @Override
     public boolean isAsyncSupported() {
-        return false;
+        checkNotRecycled();
+        return true;
     }
 
     @Override
     public AsyncContext getAsyncContext() {
-        throw new IllegalStateException("不支持异步请求");
+        checkNotRecycled();
+        if (this.asyncContext == null) {
+            throw new IllegalStateException("没有开始异步处理");
+        }
+        return this.asyncContext;
     }
 
     @Override
     public DispatcherType getDispatcherType() {
+        checkNotRecycled();
         return DispatcherType.REQUEST;
     }
 
@@ -590,6 +840,7 @@ public class HttpServletRequestImpl implements HttpServletRequest {
      */
     @Override
     public String getRequestId() {
+        checkNotRecycled();
         if (this.requestId == null) {
             this.requestId = UUID.randomUUID().toString();
         }
@@ -598,11 +849,13 @@ public class HttpServletRequestImpl implements HttpServletRequest {
 
     @Override
     public String getProtocolRequestId() {
+        checkNotRecycled();
         return "";
     }
 
     @Override
     public ServletConnection getServletConnection() {
+        checkNotRecycled();
         throw new UnsupportedOperationException("不支持获取ServletConnection");
     }
 }
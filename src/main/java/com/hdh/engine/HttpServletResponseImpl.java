@@ -1,6 +1,8 @@
 package com.hdh.engine;
 
 import com.hdh.connector.HttpExchangeResponse;
+import com.hdh.engine.jfr.ResponseEvent;
+import com.hdh.engine.support.ErrorResponses;
 import com.hdh.engine.support.HttpHeaders;
 import com.sun.net.httpserver.Headers;
 import jakarta.servlet.ServletOutputStream;
@@ -18,14 +20,21 @@ public class HttpServletResponseImpl implements HttpServletResponse {
     int status = 200;
     String contentType;
 
-    int bufferSize = 1024;
+    int bufferSize = 8192;
     Boolean callOutput = null; // 是否调用了getOutputStream()方法
     ServletOutputStream output;
     PrintWriter writer;
+    ServletOutputStreamImpl body; // 响应体输出流, Writer和OutputStream都通过它写入, 用于统计字节数
+    ResponseOutputBuffer outputBuffer; // 响应体缓冲区, 提交前的数据暂存在这里
+    byte[] buffer; // 缓冲区数组, 复用响应对象时一起复用
 
     long contentLength = 0;
     List<Cookie> cookies = null;
     boolean committed = false;
+    boolean error = false; // 调用了sendError(), 请求结束时由容器写出错误页, 之前的输出被丢弃
+    String errorMessage; // sendError()的消息
+    long errorBytes = 0; // 默认错误页的字节数
+    boolean recycled = false; // 是否已回收
 
     private final HttpExchangeResponse exchangeResponse;
     final HttpHeaders headers;
@@ -36,6 +45,31 @@ public class HttpServletResponseImpl implements HttpServletResponse {
         this.setContentType("text/html; charset=UTF-8");
     }
 
+    /**
+     * 复用已回收响应对象的缓冲区创建新的响应对象, 旧对象一直处于回收状态
+     * @param previous 已回收的响应对象, 必须使用同一个适配器
+     */
+    public HttpServletResponseImpl(HttpExchangeResponse exchangeResponse, HttpServletResponseImpl previous) {
+        this(exchangeResponse);
+        if (!previous.recycled || previous.exchangeResponse != exchangeResponse) {
+            throw new IllegalArgumentException("只能复用同一个适配器上已回收的响应对象");
+        }
+        this.buffer = previous.buffer;
+    }
+
+    /**
+     * 回收响应对象, 之后这个对象的所有访问都抛出异常
+     */
+    public void recycle() {
+        this.recycled = true;
+        this.headers.reset(null);
+        this.output = null;
+        this.writer = null;
+        this.body = null;
+        this.outputBuffer = null;
+        this.cookies = null;
+    }
+
     /**
      * 设置响应头
      * @param name 响应头名称
@@ -53,28 +87,95 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void setContentType(String s) {
+        checkNotRecycled();
         this.contentType = s;
         this.setHeader("Content-Type", s);
     }
 
     /**
-     * 提交响应头
+     * 提交响应头, Date头由HttpServer写入(脱离HttpServer的响应由ResponseHead写入)
      */
     void commitHeaders(long length) throws IOException {
+        ResponseEvent event = new ResponseEvent();
+        event.begin();
         this.exchangeResponse.sendResponseHeaders(this.status, length);
         this.committed = true;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "commit";
+            event.status = this.status;
+            event.commit();
+        }
+    }
+
+    HttpExchangeResponse getExchangeResponse() {
+        return this.exchangeResponse;
     }
 
     /**
-     * 关闭 Writer 或 OutputStream
+     * 结束响应: 关闭 Writer 或 OutputStream, 写出缓冲区中剩余的数据; 没有响应体时只提交响应头
+     * 调用了sendError()但容器没有处理时(例如异步请求)写出默认错误页
      */
     public void cleanup() throws IOException {
+        if (this.recycled) {
+            return;
+        }
+        if (isError()) {
+            sendErrorBody(ErrorResponses.body(this.status), false);
+        }
         if (this.callOutput != null) {
             if (this.callOutput) {
                 this.output.close();
             } else {
                 this.writer.close();
             }
+        } else if (!this.committed) {
+            commitHeaders(-1);
+        }
+    }
+
+    /**
+     * 让连接脱离HttpServer, 用于异步请求, 已经提交时返回false
+     */
+    boolean detach(Runnable onClose) throws IOException {
+        if (this.committed || this.recycled) {
+            return false;
+        }
+        return this.exchangeResponse.detach(onClose);
+    }
+
+    /**
+     * 中止脱离HttpServer的响应, 直接关闭连接, 没有脱离时返回false
+     */
+    boolean abort() {
+        return this.exchangeResponse.abort();
+    }
+
+    /**
+     * 创建带缓冲区的响应体输出流, 获取Writer或OutputStream时调用, 此时不提交响应头
+     */
+    ServletOutputStreamImpl createBody() {
+        if (this.buffer == null || this.buffer.length != this.bufferSize) {
+            this.buffer = new byte[this.bufferSize];
+        }
+        this.outputBuffer = new ResponseOutputBuffer(this, this.buffer);
+        this.body = new ServletOutputStreamImpl(this.outputBuffer);
+        return this.body;
+    }
+
+    /**
+     * 获取已写入的响应体字节数
+     */
+    public long getBytesWritten() {
+        return (this.body == null ? 0 : this.body.getBytesWritten()) + this.errorBytes;
+    }
+
+    /**
+     * 检查响应对象是否已回收
+     */
+    void checkNotRecycled() {
+        if (this.recycled) {
+            throw new IllegalStateException("响应已经回收");
         }
     }
 
@@ -82,6 +183,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      * 检查是否已提交响应
      */
     void checkNotCommitted() {
+        checkNotRecycled();
         if (this.committed) {
             throw new IllegalStateException("响应已经提交");
         }
@@ -94,9 +196,18 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public PrintWriter getWriter() throws IOException {
+        checkNotRecycled();
         if (callOutput == null){
-            commitHeaders(0);
-            this.writer = new PrintWriter(exchangeResponse.getResponseBody(), true, StandardCharsets.UTF_8);
+            ServletOutputStreamImpl body = createBody();
+            ResponseOutputBuffer outputBuffer = this.outputBuffer;
+            this.writer = new PrintWriter(body, false, StandardCharsets.UTF_8) {
+                @Override
+                public void close() {
+                    // 编码器关闭时会先flush, 不能因此提交为chunked响应
+                    outputBuffer.closing = true;
+                    super.close();
+                }
+            };
             this.callOutput = false;
             return this.writer;
         }
@@ -127,21 +238,24 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public boolean containsHeader(String s) {
+        checkNotRecycled();
         return this.headers.containsHeader(s);
     }
 
     @Override
     public String encodeURL(String s) {
+        checkNotRecycled();
         return null;
     }
 
     @Override
     public String encodeRedirectURL(String s) {
+        checkNotRecycled();
         return null;
     }
 
     /**
-     * 发送错误响应
+     * 发送错误响应: 清空缓冲区, 之后的输出被丢弃; 请求结束时由容器分派到错误页或写出默认错误页
      * @param sc 状态码
      * @param msg 错误消息
      * @throws IOException IO异常
@@ -149,8 +263,55 @@ public class HttpServletResponseImpl implements HttpServletResponse {
     @Override
     public void sendError(int sc, String msg) throws IOException {
         checkNotCommitted();
+        resetBuffer();
         this.status = sc;
-        commitHeaders(-1);
+        this.errorMessage = msg;
+        this.error = true;
+    }
+
+    /**
+     * 是否调用了sendError()且还没有写出错误页
+     */
+    public boolean isError() {
+        return this.error && !this.committed;
+    }
+
+    public String getErrorMessage() {
+        return this.errorMessage;
+    }
+
+    /**
+     * 分派到错误页之前调用: 恢复输出, 错误页可以重新选择Writer或OutputStream
+     */
+    void clearError() {
+        checkNotCommitted();
+        resetBuffer();
+        this.error = false;
+        this.callOutput = null;
+        this.output = null;
+        this.writer = null;
+    }
+
+    /**
+     * 写出预先生成的错误页, 按实际长度提交
+     * @param body 错误页内容, 不会被修改
+     * @param head 是否是HEAD请求, 只写出响应头
+     */
+    public void sendErrorBody(byte[] body, boolean head) throws IOException {
+        checkNotCommitted();
+        this.contentType = "text/html; charset=UTF-8";
+        this.headers.setHeader("Content-Type", this.contentType);
+        if (head) {
+            // HttpServer不允许HEAD请求传入长度, 手动设置Content-Length
+            this.headers.setHeader("Content-Length", Integer.toString(body.length));
+            commitHeaders(-1);
+            return;
+        }
+        commitHeaders(body.length);
+        try (OutputStream output = this.exchangeResponse.getResponseBody()) {
+            output.write(body);
+        }
+        this.errorBytes = body.length;
     }
 
     /**
@@ -160,7 +321,8 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void sendError(int sc) throws IOException {
-        sendError(sc, "Error");
+        checkNotRecycled();
+        sendError(sc, null);
     }
 
     /**
@@ -251,6 +413,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public int getStatus() {
+        checkNotRecycled();
         return this.status;
     }
 
@@ -261,6 +424,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public String getHeader(String s) {
+        checkNotRecycled();
         return this.headers.getHeader(s);
     }
 
@@ -271,6 +435,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public Collection<String> getHeaders(String s) {
+        checkNotRecycled();
         List<String> hs = this.headers.getHeaders(s);
         if (hs == null) {
             return List.of();
@@ -284,11 +449,13 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public Collection<String> getHeaderNames() {
+        checkNotRecycled();
         return Collections.unmodifiableCollection(this.headers.getHeaderNames());
     }
 
     @Override
     public String getCharacterEncoding() {
+        checkNotRecycled();
         return null;
     }
 
@@ -298,6 +465,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public String getContentType() {
+        checkNotRecycled();
         return this.contentType;
     }
 
@@ -308,9 +476,9 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public ServletOutputStream getOutputStream() throws IOException {
+        checkNotRecycled();
         if (callOutput == null){
-            commitHeaders(0);
-            this.output = new ServletOutputStreamImpl(this.exchangeResponse.getResponseBody());
+            this.output = createBody();
             this.callOutput = true;
             return this.output;
         }
@@ -322,7 +490,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
 
     @Override
     public void setCharacterEncoding(String s) {
-
+        checkNotRecycled();
     }
 
     /**
@@ -331,6 +499,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void setContentLength(int i) {
+        checkNotRecycled();
         this.contentLength = i;
     }
 
@@ -339,6 +508,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void setContentLengthLong(long l) {
+        checkNotRecycled();
         this.contentLength = l;
     }
 
@@ -349,6 +519,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void setBufferSize(int size) {
+        checkNotRecycled();
         if (this.callOutput != null) {
             throw new IllegalStateException("已经获取了Writer或OutputStream");
         }
@@ -364,6 +535,7 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public int getBufferSize() {
+        checkNotRecycled();
         return this.bufferSize;
     }
 
@@ -373,14 +545,24 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public void flushBuffer() throws IOException {
+        checkNotRecycled();
         if(this.callOutput == null){
             throw new IllegalStateException("未获取Writer或OutputStream");
         }
+        ResponseEvent event = new ResponseEvent();
+        event.begin();
         if(this.callOutput){
             this.output.flush();
         } else {
             this.writer.flush();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = "flush";
+            event.status = this.status;
+            event.bytes = getBytesWritten();
+            event.commit();
+        }
     }
 
     /**
@@ -389,6 +571,15 @@ public class HttpServletResponseImpl implements HttpServletResponse {
     @Override
     public void resetBuffer() {
         checkNotCommitted();
+        if (this.outputBuffer != null) {
+            if (this.writer != null) {
+                // Writer的编码器中可能还有未写入缓冲区的字符, 先写入缓冲区(不提交)再一起清空
+                this.outputBuffer.closing = true;
+                this.writer.flush();
+                this.outputBuffer.closing = false;
+            }
+            this.outputBuffer.reset();
+        }
     }
 
     /**
@@ -396,7 +587,8 @@ public class HttpServletResponseImpl implements HttpServletResponse {
      */
     @Override
     public boolean isCommitted() {
-        return this.committed;
+        checkNotRecycled();
+        return this.committed || this.error;
     }
 
     /**
@@ -407,15 +599,17 @@ public class HttpServletResponseImpl implements HttpServletResponse {
         checkNotCommitted();
         this.status = 200;
         this.headers.clearHeaders();
+        resetBuffer();
     }
 
     @Override
     public void setLocale(Locale locale) {
-
+        checkNotRecycled();
     }
 
     @Override
     public Locale getLocale() {
+        checkNotRecycled();
         return null;
     }
 }
@@ -0,0 +1,164 @@
+package com.hdh.engine;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * 包含时传给目标Servlet的响应
+ * Writer和OutputStream包装外层响应的, 写入直接转给外层, 进入同一个缓冲区, 不经过中间缓冲;
+ * 包装只忽略close(), 目标Servlet关闭输出时外层响应不会被关闭, 包含返回后调用方还能继续写
+ * 修改状态码、响应头、缓冲区的调用被忽略
+ */
+class IncludedResponse extends HttpServletResponseWrapper {
+
+    private PrintWriter writer;
+    private ServletOutputStream output;
+
+    IncludedResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            this.writer = new PrintWriter(super.getWriter()) {
+                @Override
+                public void close() {
+                }
+            };
+        }
+        return this.writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.output == null) {
+            this.output = new NonClosingOutputStream(super.getOutputStream());
+        }
+        return this.output;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+    }
+
+    @Override
+    public void sendError(int sc) {
+    }
+
+    @Override
+    public void sendError(int sc, String msg) {
+    }
+
+    @Override
+    public void sendRedirect(String location) {
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+    }
+
+    @Override
+    public void setContentType(String type) {
+    }
+
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+    }
+
+    @Override
+    public void setLocale(Locale loc) {
+    }
+
+    @Override
+    public void setBufferSize(int size) {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void resetBuffer() {
+    }
+
+    /**
+     * 转发到外层响应的输出流, close()被忽略
+     */
+    static final class NonClosingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream output;
+
+        NonClosingOutputStream(ServletOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.output.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.output.setWriteListener(writeListener);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.output.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.output.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.output.flush();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
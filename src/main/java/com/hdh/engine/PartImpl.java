@@ -0,0 +1,166 @@
+package com.hdh.engine;
+
+import com.hdh.engine.support.MultipartParser;
+import jakarta.servlet.http.Part;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Part 接口实现类
+ * 数据不超过阈值时保存在内存中, 超过阈值后写入临时文件
+ */
+public class PartImpl implements Part {
+
+    final Map<String, List<String>> headers; // 头部, 名称为小写
+    final String name;
+    final String submittedFileName;
+    final int fileSizeThreshold;
+    final long maxFileSize;
+    final File location;
+
+    byte[] data = new byte[256]; // 内存数据
+    Path file; // 数据文件
+    boolean temporary = false; // file是否为临时文件
+    OutputStream fileOutput;
+    long size = 0;
+
+    public PartImpl(Map<String, List<String>> headers, int fileSizeThreshold, long maxFileSize, File location) {
+        this.headers = headers;
+        String disposition = getHeader("content-disposition");
+        this.name = MultipartParser.getHeaderParameter(disposition, "name");
+        this.submittedFileName = MultipartParser.getHeaderParameter(disposition, "filename");
+        this.fileSizeThreshold = fileSizeThreshold;
+        this.maxFileSize = maxFileSize;
+        this.location = location;
+    }
+
+    /**
+     * 追加数据
+     */
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        this.size += len;
+        if (this.maxFileSize > 0 && this.size > this.maxFileSize) {
+            throw new IllegalStateException("文件大小超过上限: " + this.maxFileSize);
+        }
+        if (this.fileOutput == null && this.file == null && this.size > this.fileSizeThreshold) {
+            // 超过阈值, 将内存数据转存到临时文件
+            this.file = Files.createTempFile(this.location.toPath(), "tomdog-", ".part");
+            this.temporary = true;
+            this.fileOutput = new FileOutputStream(this.file.toFile());
+            this.fileOutput.write(this.data, 0, (int) (this.size - len));
+            this.data = null;
+        }
+        if (this.fileOutput != null) {
+            this.fileOutput.write(b, off, len);
+        } else {
+            if (this.size > this.data.length) {
+                this.data = Arrays.copyOf(this.data, (int) Math.max(this.size, this.data.length * 2L));
+            }
+            System.arraycopy(b, off, this.data, (int) (this.size - len), len);
+        }
+    }
+
+    /**
+     * 数据写入完毕
+     */
+    public void finish() throws IOException {
+        if (this.fileOutput != null) {
+            this.fileOutput.close();
+            this.fileOutput = null;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (this.file != null) {
+            return Files.newInputStream(this.file);
+        }
+        return new ByteArrayInputStream(this.data, 0, (int) this.size);
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("content-type");
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String getSubmittedFileName() {
+        return this.submittedFileName;
+    }
+
+    @Override
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * 保存到文件, 相对路径基于 MultipartConfigElement 的 location
+     * @param fileName 文件名
+     */
+    @Override
+    public void write(String fileName) throws IOException {
+        File target = new File(fileName);
+        if (!target.isAbsolute()) {
+            target = new File(this.location, fileName);
+        }
+        if (this.file != null) {
+            // 临时文件直接移动, 避免复制
+            Files.move(this.file, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.file = target.toPath();
+            this.temporary = false;
+        } else {
+            Files.write(target.toPath(), Arrays.copyOf(this.data, (int) this.size));
+        }
+    }
+
+    @Override
+    public void delete() throws IOException {
+        finish();
+        if (this.file != null) {
+            Files.deleteIfExists(this.file);
+            this.file = null;
+        }
+        this.data = null;
+        this.size = 0;
+    }
+
+    /**
+     * 请求结束时清理临时文件, 已通过 write(String) 保存的文件不删除
+     */
+    void cleanup() throws IOException {
+        finish();
+        if (this.file != null && this.temporary) {
+            Files.deleteIfExists(this.file);
+            this.file = null;
+        }
+    }
+
+    @Override
+    public String getHeader(String name) {
+        List<String> values = this.headers.get(name.toLowerCase(Locale.ROOT));
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public Collection<String> getHeaders(String name) {
+        List<String> values = this.headers.get(name.toLowerCase(Locale.ROOT));
+        return values == null ? List.of() : values;
+    }
+
+    @Override
+    public Collection<String> getHeaderNames() {
+        return Collections.unmodifiableSet(this.headers.keySet());
+    }
+}
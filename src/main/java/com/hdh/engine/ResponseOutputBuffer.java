@@ -0,0 +1,152 @@
+package com.hdh.engine;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 响应体缓冲区
+ * 响应体不超过缓冲区时, 关闭时按实际长度提交响应头, 响应体一次写出, 不使用chunked编码;
+ * 超过缓冲区或者调用flush()时才提交响应头并切换到流式输出.
+ */
+class ResponseOutputBuffer extends OutputStream {
+
+    private final HttpServletResponseImpl response;
+    private final byte[] buffer;
+    private int count = 0;
+    private OutputStream output; // 提交响应头后的响应体流
+    private boolean closed = false;
+    boolean closing = false; // Writer正在关闭, 此时的flush()不提交响应
+    private WriteListener writeListener;
+
+    ResponseOutputBuffer(HttpServletResponseImpl response, byte[] buffer) {
+        this.response = response;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.output == null) {
+            if (discarded()) {
+                return;
+            }
+            if (this.count < this.buffer.length) {
+                this.buffer[this.count++] = (byte) b;
+                return;
+            }
+            commit();
+        }
+        this.output.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.output == null) {
+            if (discarded()) {
+                return;
+            }
+            if (len <= this.buffer.length - this.count) {
+                System.arraycopy(b, off, this.buffer, this.count, len);
+                this.count += len;
+                return;
+            }
+            commit();
+        }
+        this.output.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.output == null) {
+            if (this.closing || discarded()) {
+                return;
+            }
+            commit();
+        }
+        this.output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.output == null) {
+            if (discarded()) {
+                return;
+            }
+            // 响应体全部在缓冲区中, 使用Content-Length一次写出
+            this.response.commitHeaders(this.count == 0 ? -1 : this.count);
+            if (this.count == 0) {
+                return;
+            }
+            this.output = this.response.getExchangeResponse().getResponseBody();
+            this.output.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+        this.output.close();
+    }
+
+    /**
+     * 是否可以写入而不阻塞, 提交前写入缓冲区总是可以
+     */
+    boolean isReady() {
+        return !(this.output instanceof ServletOutputStream stream) || stream.isReady();
+    }
+
+    /**
+     * 设置非阻塞写回调, 提交后转交给响应体流
+     */
+    void setWriteListener(WriteListener listener) {
+        this.writeListener = listener;
+        if (this.output instanceof ServletOutputStream stream) {
+            stream.setWriteListener(listener);
+            return;
+        }
+        try {
+            listener.onWritePossible();
+        } catch (IOException e) {
+            listener.onError(e);
+        }
+    }
+
+    /**
+     * 清空未提交的缓冲区
+     */
+    void reset() {
+        if (this.output != null) {
+            throw new IllegalStateException("响应已经提交");
+        }
+        this.count = 0;
+    }
+
+    /**
+     * 提交响应头并写出缓冲区, 之后的数据直接写入响应体流
+     */
+    private void commit() throws IOException {
+        long length = this.response.contentLength > 0 ? this.response.contentLength : 0;
+        this.response.commitHeaders(length);
+        this.output = this.response.getExchangeResponse().getResponseBody();
+        if (this.writeListener != null && this.output instanceof ServletOutputStream stream) {
+            stream.setWriteListener(this.writeListener);
+        }
+        if (this.count > 0) {
+            this.output.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    /**
+     * 调用了sendError(), 或者响应已经通过sendRedirect()提交, 缓冲区中的数据丢弃
+     */
+    private boolean discarded() {
+        if (this.response.committed || this.response.error) {
+            this.count = 0;
+            return true;
+        }
+        return false;
+    }
+}
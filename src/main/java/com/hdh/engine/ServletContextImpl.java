@@ -1,9 +1,19 @@
 package com.hdh.engine;
 
+import com.hdh.engine.accesslog.AccessLogWriter;
+import com.hdh.engine.jfr.DispatchEvent;
 import com.hdh.engine.mapping.FilterMapping;
+import com.hdh.engine.metrics.LatencyMetrics;
+import com.hdh.engine.metrics.MetricsRegistry;
+import com.hdh.engine.metrics.RequestMetrics;
 import com.hdh.engine.mapping.ServletMapping;
 import com.hdh.engine.support.Attributes;
+import com.hdh.engine.support.ComponentFactory;
+import com.hdh.engine.support.ErrorResponses;
+import com.hdh.engine.support.EventTracer;
+import com.hdh.engine.support.InstanceProvider;
 import com.hdh.engine.utils.AnnoUtils;
+import com.hdh.engine.utils.HttpUtils;
 import jakarta.servlet.*;
 import jakarta.servlet.annotation.WebFilter;
 import jakarta.servlet.annotation.WebServlet;
@@ -14,18 +24,28 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
-import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServletContextImpl implements ServletContext {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String contextPath; // 应用路径, 根应用为""
+    private final ClassLoader classLoader; // 应用的类加载器
+    ContextMapper mapper; // 所在的应用映射, 用于getContext()
+    private final AtomicInteger activeRequests = new AtomicInteger(); // 正在处理的请求数, 包括未结束的异步请求
+    private final Set<AsyncContextImpl> asyncRequests = ConcurrentHashMap.newKeySet(); // 未结束的异步请求
+    private volatile boolean closing = false; // 应用正在卸载, 不再接收新请求
     private Attributes attributes = new Attributes(true); // ServletContext属性
 
-    final SessionManager sessionManager = new SessionManager(this, 600); // 会话管理器 10分钟失效
+    final SessionManager sessionManager; // 会话管理器 10分钟失效, 在设置类加载器之后创建
 
     private Map<String, ServletRegistrationImpl> servletRegistrations = new HashMap<>();
     private Map<String, FilterRegistrationImpl> filterRegistrations = new HashMap<>();
@@ -35,54 +55,451 @@ public class ServletContextImpl implements ServletContext {
 
     private List<ServletMapping> servletMappings = new ArrayList<>();
     private List<FilterMapping> filterMappings = new ArrayList<>();
+    // 按DispatcherType.ordinal()分组的Filter映射, 初始化Filter时生成, 请求和转发/包含时直接遍历
+    private FilterMapping[][] filterMappingsByType = new FilterMapping[DispatcherType.values().length][0];
 
-    // Listener
-    private List<ServletContextListener> servletContextListeners = null; // 监听ServletContext创建和销毁
-    private List<ServletContextAttributeListener> servletContextAttributeListeners = null; // 监听ServletContext属性变化
-    private List<ServletRequestListener> servletRequestListeners = null; // 监听ServletRequest创建和销毁
-    private List<ServletRequestAttributeListener> servletRequestAttributeListeners = null; // 监听ServletRequest属性变化
-    private List<HttpSessionListener> httpSessionListeners = null; // 监听HttpSession创建和销毁
-    private List<HttpSessionAttributeListener> httpSessionAttributeListeners = null; // 监听HttpSession属性变化
+    // Listener, 注册时复制生成新数组, 调用时直接遍历数组, 没有Listener时不创建事件对象
+    private ServletContextListener[] servletContextListeners = new ServletContextListener[0]; // 监听ServletContext创建和销毁
+    private ServletContextAttributeListener[] servletContextAttributeListeners = new ServletContextAttributeListener[0]; // 监听ServletContext属性变化
+    private ServletRequestListener[] servletRequestListeners = new ServletRequestListener[0]; // 监听ServletRequest创建和销毁
+    private ServletRequestAttributeListener[] servletRequestAttributeListeners = new ServletRequestAttributeListener[0]; // 监听ServletRequest属性变化
+    private HttpSessionListener[] httpSessionListeners = new HttpSessionListener[0]; // 监听HttpSession创建和销毁
+    private HttpSessionAttributeListener[] httpSessionAttributeListeners = new HttpSessionAttributeListener[0]; // 监听HttpSession属性变化
+
+    private final EventTracer eventTracer = new EventTracer(); // Listener事件跟踪, 默认关闭
+    private volatile boolean ready = false; // 启动时加载的Servlet是否全部初始化成功
+    private final ComponentFactory componentFactory; // 组件实例工厂
+
+    private final ErrorPages errorPages = new ErrorPages(); // 错误页映射
+    private AccessLogWriter accessLog = null; // 访问日志, 为null时不记录
+    final MetricsRegistry metrics; // 指标
+
+    public ServletContextImpl() {
+        this("", ServletContextImpl.class.getClassLoader());
+    }
+
+    /**
+     * @param contextPath 应用路径, 根应用为"", 其他应用以/开头且不以/结尾
+     * @param classLoader 应用的类加载器
+     */
+    public ServletContextImpl(String contextPath, ClassLoader classLoader) {
+        this("localhost", contextPath, classLoader);
+    }
+
+    /**
+     * @param hostName 应用所属的虚拟主机, 用于区分不同主机中相同路径的应用的指标
+     * @param contextPath 应用路径, 根应用为"", 其他应用以/开头且不以/结尾
+     * @param classLoader 应用的类加载器
+     */
+    public ServletContextImpl(String hostName, String contextPath, ClassLoader classLoader) {
+        if (!contextPath.isEmpty() && (!contextPath.startsWith("/") || contextPath.endsWith("/"))) {
+            throw new IllegalArgumentException("contextPath不合法: " + contextPath);
+        }
+        this.contextPath = contextPath;
+        this.classLoader = classLoader;
+        this.sessionManager = new SessionManager(this, 600);
+        this.componentFactory = ComponentFactory.fromServiceLoader(classLoader);
+        this.metrics = new MetricsRegistry(hostName, contextPath);
+    }
+
+    /**
+     * 请求开始前调用, 应用正在卸载时返回false, 连接器应重新查找应用
+     * 返回true时请求结束后必须调用exit()
+     */
+    public boolean enter() {
+        if (this.closing) {
+            return false;
+        }
+        this.activeRequests.incrementAndGet();
+        if (this.closing) {
+            // 与drain()并发, 以drain()为准
+            this.activeRequests.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 请求结束, 异步请求在AsyncContext.complete()时调用
+     */
+    public void exit() {
+        this.activeRequests.decrementAndGet();
+    }
+
+    public int getActiveRequests() {
+        return this.activeRequests.get();
+    }
+
+    /**
+     * 未结束的异步请求数, 包含在getActiveRequests()中
+     * SSE等长期保持的异步请求不会自己结束, 停止时不能等待它们
+     */
+    public int getAsyncRequests() {
+        return this.asyncRequests.size();
+    }
+
+    void asyncStarted(AsyncContextImpl context) {
+        this.asyncRequests.add(context);
+    }
+
+    void asyncCompleted(AsyncContextImpl context) {
+        this.asyncRequests.remove(context);
+    }
+
+    /**
+     * 结束所有未结束的异步请求: 写完已排队的数据后结束响应, 通知AsyncListener.onComplete
+     * @return 结束的请求数
+     */
+    public int completeAsyncRequests() {
+        int n = 0;
+        for (AsyncContextImpl context : this.asyncRequests) {
+            try {
+                context.complete();
+                n++;
+            } catch (RuntimeException e) {
+                logger.error("结束异步请求失败", e);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 停止接收新请求, 等待正在处理的请求结束
+     * 先等待同步请求, 然后结束异步请求, 再等待它们的响应写完
+     * @return 超时前所有请求是否都已结束
+     */
+    public boolean drain(long timeoutMillis) throws InterruptedException {
+        this.closing = true;
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (this.activeRequests.get() - this.asyncRequests.size() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        completeAsyncRequests();
+        while (this.activeRequests.get() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    /**
+     * 销毁应用: 并行销毁已经初始化的Servlet, 然后销毁Filter, 使所有会话失效, 触发contextDestroyed, 最后注销指标MBean
+     */
+    public void destroy() {
+        this.closing = true;
+        ClassLoader oldLoader = bindClassLoader();
+        try {
+            destroyServlets();
+            for (FilterRegistrationImpl registration : this.filterRegistrations.values()) {
+                if (registration.initialized) {
+                    try {
+                        registration.filter.destroy();
+                    } catch (RuntimeException e) {
+                        logger.error("Filter {} 销毁失败", registration.getName(), e);
+                    }
+                }
+            }
+            this.sessionManager.stop();
+            this.invokeServletContextDestroyed();
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldLoader);
+        }
+        this.metrics.unregisterAll();
+    }
+
+    /**
+     * 把当前线程的上下文类加载器设为应用的类加载器, 调用应用代码前使用
+     * @return 原来的上下文类加载器, 调用结束后恢复
+     */
+    ClassLoader bindClassLoader() {
+        Thread thread = Thread.currentThread();
+        ClassLoader oldLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(this.classLoader);
+        return oldLoader;
+    }
+
+    /**
+     * 并行调用已经初始化的Servlet的destroy(), 等待全部结束
+     */
+    private void destroyServlets() {
+        List<ServletRegistrationImpl> registrations = new ArrayList<>();
+        for (ServletRegistrationImpl registration : this.servletRegistrations.values()) {
+            if (registration.initialized) {
+                registrations.add(registration);
+            }
+        }
+        if (registrations.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = newComponentExecutor("tomdog-servlet-destroy-", registrations.size(), this.classLoader);
+        try {
+            List<Future<?>> futures = new ArrayList<>(registrations.size());
+            for (ServletRegistrationImpl registration : registrations) {
+                futures.add(executor.submit(() -> registration.servlet.destroy()));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.error("Servlet {} 销毁失败", registrations.get(i).name, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 创建并行初始化/销毁Servlet的线程池, 线程数由tomdog.servlet.initThreads指定, 默认不超过4
+     * @param tasks 任务数, 线程数不超过任务数
+     * @param classLoader 线程的上下文类加载器, Servlet的init()和destroy()可以通过它加载应用的资源
+     */
+    private static ExecutorService newComponentExecutor(String namePrefix, int tasks, ClassLoader classLoader) {
+        int threads = Math.max(1, Integer.getInteger("tomdog.servlet.initThreads", Math.min(4, Runtime.getRuntime().availableProcessors())));
+        AtomicInteger ids = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.min(threads, tasks), r -> {
+            Thread thread = new Thread(r, namePrefix + ids.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+    }
 
     /**
      * 将请求url映射到对应的Servlet进行处理
      */
     public void process(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        // 请求路径
-        String path = request.getRequestURI();
-        Servlet servlet = null;
-        for (ServletMapping mapping : servletMappings) {
-            if(mapping.matches(path)){
-                servlet = mapping.servlet;
-                break;
+        long startMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        RequestMetrics requestMetrics = this.metrics.getRequestMetrics();
+        requestMetrics.begin();
+        DispatchEvent event = new DispatchEvent();
+        event.begin();
+        ServletMapping servletMapping = null;
+        ClassLoader oldLoader = bindClassLoader();
+        try {
+            servletMapping = dispatch(request, response);
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldLoader);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = request.getRequestURI();
+                event.servletName = servletMapping == null ? null : servletMapping.registration.getName();
+                event.status = response.getStatus();
+                event.commit();
+            }
+            if (request instanceof HttpServletRequestImpl impl && impl.wasAsyncStarted()) {
+                // 异步请求的状态码、响应字节数和耗时在AsyncContext.complete()时才确定
+                impl.asyncContext.onEnd = () -> requestEnded(request, response, requestMetrics, startMillis, startNanos);
+            } else {
+                requestEnded(request, response, requestMetrics, startMillis, startNanos);
             }
         }
-        if (servlet == null){
-            // 没有匹配到Servlet 404
-            PrintWriter pw = response.getWriter();
-            pw.write("<h1>404 Not Found</h1><p>No mapping for URL: " + path + "</p>");
-            pw.close();
-            return;
+    }
+
+    /**
+     * 请求结束, 记录请求指标和访问日志
+     */
+    private void requestEnded(HttpServletRequest request, HttpServletResponse response, RequestMetrics requestMetrics, long startMillis, long startNanos) {
+        requestMetrics.end(response.getStatus());
+        if (this.accessLog != null) {
+            long bytes = response instanceof HttpServletResponseImpl impl ? impl.getBytesWritten() : 0;
+            this.accessLog.log(request, response.getStatus(), bytes, startMillis, System.nanoTime() - startNanos);
         }
+    }
 
-        // 先执行Filter, 然后执行Servlet
-        List<Filter> enabledFilters = new ArrayList<>();
-        for (FilterMapping mapping : this.filterMappings) {
-            if (mapping.matches(path)){
-                enabledFilters.add(mapping.filter);
+    /**
+     * 匹配Servlet和Filter并执行
+     * @return 匹配到的Servlet映射, 没有匹配时返回null
+     */
+    ServletMapping dispatch(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        // 应用内的请求路径
+        String path = request.getServletPath();
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        ServletMapping servletMapping = findServletMapping(path);
+        if (servletMapping == null){
+            // 没有匹配到Servlet 404
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            handleError(request, response, null, null);
+            return null;
+        }
+        Servlet servlet = servletMapping.servlet;
+        ServletRegistrationImpl registration = servletMapping.registration;
+        if (!registration.initialized) {
+            // loadOnStartup为负数的Servlet在第一次请求时初始化
+            try {
+                registration.ensureInitialized();
+            } catch (ServletException e) {
+                logger.error("Servlet {} 初始化失败", registration.name, e);
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                handleError(request, response, null, registration.name);
+                return servletMapping;
             }
         }
-        Filter[] filters = enabledFilters.toArray(Filter[]::new);
-        FilterChain chain = new FilterChainImpl(filters, servlet);
+        if (request instanceof HttpServletRequestImpl impl) {
+            impl.multipartConfig = servletMapping.registration.multipartConfig;
+        }
 
+        // 先执行Filter, 然后执行Servlet
+        FilterChain chain = createFilterChain(path, DispatcherType.REQUEST, servlet);
+
+        Exception failure = null;
+        long start = System.nanoTime();
         try {
             this.invokeServletRequestInitialized(request);
             chain.doFilter(request, response);
         }catch (Exception e){
-            logger.error("处理请求失败", e);
+            if (HttpUtils.isConnectionClosed(e)) {
+                // 客户端断开或读取超时, 连接已经关闭, 不再写出错误页
+                logger.debug("连接已关闭, 请求中止: {}", request.getRequestURI(), e);
+            } else {
+                logger.error("处理请求失败", e);
+                failure = e;
+            }
         }finally {
-            this.invokeServletRequestDestroyed(request);
+            servletMapping.registration.metrics.record(System.nanoTime() - start);
+        }
+        // 异步请求在AsyncContext.complete()时才结束
+        if (!(request instanceof HttpServletRequestImpl impl && impl.wasAsyncStarted())) {
+            try {
+                handleError(request, response, failure, registration.name);
+            } finally {
+                this.invokeServletRequestDestroyed(request);
+            }
+        }
+        return servletMapping;
+    }
+
+    /**
+     * 处理sendError()和未捕获的异常
+     * 有对应的错误页时以ERROR类型分派到错误页, 否则写出预先生成的默认错误页
+     * @param failure 未捕获的异常, 没有时为null
+     * @param servletName 出错的Servlet名称, 可以为null
+     */
+    void handleError(HttpServletRequest request, HttpServletResponse response, Throwable failure, String servletName) throws IOException {
+        if (!(response instanceof HttpServletResponseImpl impl)) {
+            return;
+        }
+        if (failure != null && !impl.isError()) {
+            if (impl.isCommitted()) {
+                // 已经提交, 只能记录日志
+                return;
+            }
+            impl.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, failure.getMessage());
+        }
+        if (!impl.isError()) {
+            return;
+        }
+        int status = impl.getStatus();
+        String location = failure == null ? null : this.errorPages.find(failure);
+        if (location == null) {
+            location = this.errorPages.find(status);
+        }
+        if (location != null && request.getDispatcherType() != DispatcherType.ERROR) {
+            ServletMapping mapping = findServletMapping(location);
+            if (mapping != null) {
+                String message = impl.getErrorMessage();
+                impl.clearError();
+                try {
+                    new ApplicationDispatcher(this, mapping.registration, location, null)
+                            .error(request, response, status, message, failure, servletName);
+                    return;
+                } catch (ServletException | IOException | RuntimeException e) {
+                    logger.error("错误页 {} 处理失败", location, e);
+                    if (impl.committed) {
+                        return;
+                    }
+                    impl.sendError(status, message);
+                }
+            } else {
+                // 全局配置的错误页在部分应用中可能不存在, 大量错误请求时不逐个告警
+                logger.debug("错误页 {} 没有匹配的Servlet", location);
+            }
+        }
+        impl.sendErrorBody(ErrorResponses.body(status), "HEAD".equals(request.getMethod()));
+    }
+
+    /**
+     * 添加状态码对应的错误页
+     * @param status 状态码, 400-599
+     * @param location 应用内路径, 以/开头
+     */
+    public void addErrorPage(int status, String location) {
+        this.errorPages.add(status, location);
+    }
+
+    /**
+     * 添加异常类型对应的错误页, 异常的子类也使用这个错误页
+     * @param exceptionType 异常类的全限定名
+     * @param location 应用内路径, 以/开头
+     */
+    public void addErrorPage(String exceptionType, String location) {
+        this.errorPages.add(exceptionType, location);
+    }
+
+    /**
+     * 查找处理应用内路径的Servlet映射
+     * @param path 应用内路径, 以/开头
+     * @return 没有匹配时返回null
+     */
+    ServletMapping findServletMapping(String path) {
+        for (ServletMapping mapping : this.servletMappings) {
+            if (mapping.matches(path)) {
+                return mapping;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 创建Filter链, 只包含对该分派类型生效且匹配路径的Filter
+     * @param path 应用内路径, 为null时不匹配任何Filter(按名称分派)
+     */
+    FilterChainImpl createFilterChain(String path, DispatcherType type, Servlet servlet) {
+        FilterMapping[] mappings = path == null ? new FilterMapping[0] : this.filterMappingsByType[type.ordinal()];
+        // 大多数请求只匹配少量Filter, 先计数再创建数组, 不创建中间集合
+        int n = 0;
+        for (FilterMapping mapping : mappings) {
+            if (mapping.matches(path)) {
+                n++;
+            }
+        }
+        Filter[] filters = new Filter[n];
+        LatencyMetrics[] filterMetrics = new LatencyMetrics[n];
+        if (n > 0) {
+            int i = 0;
+            for (FilterMapping mapping : mappings) {
+                if (mapping.matches(path)) {
+                    filters[i] = mapping.filter;
+                    filterMetrics[i] = mapping.registration.metrics;
+                    i++;
+                }
+            }
         }
+        return new FilterChainImpl(filters, filterMetrics, servlet);
+    }
+
+    /**
+     * 设置访问日志
+     */
+    public void setAccessLog(AccessLogWriter accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    /**
+     * 获取指标注册表
+     */
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
     }
 
     /**
@@ -101,22 +518,74 @@ public class ServletContextImpl implements ServletContext {
                 ServletRegistration.Dynamic registration = this.addServlet(AnnoUtils.getServletName(clazz), clazz);
                 registration.addMapping(AnnoUtils.getServletUrlPatterns(clazz));
                 registration.setInitParameters(AnnoUtils.getServletInitParams(clazz));
+                registration.setLoadOnStartup(AnnoUtils.getServletLoadOnStartup(clazz));
+                MultipartConfigElement multipartConfig = AnnoUtils.getServletMultipartConfig(clazz);
+                if (multipartConfig != null) {
+                    registration.setMultipartConfig(multipartConfig);
+                }
             }
         }
-        // 2.初始化Servlet, 添加到Servlet容器servletMappings
+        // 2.添加到Servlet容器servletMappings, 延迟初始化的Servlet也先加入映射
+        TreeMap<Integer, List<ServletRegistrationImpl>> startup = new TreeMap<>();
         for (String name : this.servletRegistrations.keySet()) {
             var registration = this.servletRegistrations.get(name);
-            try {
-                registration.servlet.init(registration.getServletConfig());
-                this.nameToServlets.put(name, registration.servlet);
-                for (String urlPattern : registration.getMappings()) {
-                    this.servletMappings.add(new ServletMapping(urlPattern, registration.servlet));
+            registration.metrics = this.metrics.servlet(name);
+            this.nameToServlets.put(name, registration.servlet);
+            for (String urlPattern : registration.getMappings()) {
+                this.servletMappings.add(new ServletMapping(urlPattern, registration.servlet, registration));
+            }
+            if (registration.loadOnStartup >= 0) {
+                startup.computeIfAbsent(registration.loadOnStartup, k -> new ArrayList<>()).add(registration);
+            }
+        }
+        // 3.按loadOnStartup从小到大初始化, 相同loadOnStartup的Servlet并行初始化, 一组全部完成后再初始化下一组
+        this.ready = initStartupServlets(startup);
+    }
+
+    /**
+     * 初始化启动时加载的Servlet
+     * @return 是否全部初始化成功
+     */
+    private boolean initStartupServlets(TreeMap<Integer, List<ServletRegistrationImpl>> startup) {
+        if (startup.isEmpty()) {
+            return true;
+        }
+        ExecutorService executor = newComponentExecutor("tomdog-servlet-init-", Integer.MAX_VALUE, this.classLoader);
+        boolean success = true;
+        try {
+            for (var group : startup.entrySet()) {
+                List<Future<?>> futures = new ArrayList<>(group.getValue().size());
+                for (ServletRegistrationImpl registration : group.getValue()) {
+                    futures.add(executor.submit(() -> {
+                        long start = System.nanoTime();
+                        registration.ensureInitialized();
+                        logger.info("Servlet {} 初始化完成, loadOnStartup={}, 耗时 {} ms", registration.name, registration.loadOnStartup, (System.nanoTime() - start) / 1_000_000);
+                        return null;
+                    }));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        logger.error("Servlet {} 初始化失败", group.getValue().get(i).name, e.getCause());
+                        success = false;
+                    }
                 }
-                registration.initialized = true;
-            }catch (ServletException e){
-                logger.error("Servlet {} 初始化失败", name, e);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            success = false;
+        } finally {
+            executor.shutdownNow();
         }
+        return success;
+    }
+
+    /**
+     * loadOnStartup不为负数的Servlet是否全部初始化成功, 连接器在就绪之后才开始接收请求
+     */
+    public boolean isReady() {
+        return this.ready;
     }
 
     /**
@@ -133,18 +602,38 @@ public class ServletContextImpl implements ServletContext {
                 Class<? extends Filter> clazz = (Class<? extends Filter>) c;
                 // 这里Filter进行实例化, 但没有初始化
                 FilterRegistration.Dynamic registration = this.addFilter(AnnoUtils.getFilterName(clazz), clazz);
-                registration.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST), true, AnnoUtils.getFilterUrlPatterns(clazz));
+                registration.addMappingForUrlPatterns(AnnoUtils.getFilterDispatcherTypes(clazz), true, AnnoUtils.getFilterUrlPatterns(clazz));
                 registration.setInitParameters(AnnoUtils.getFilterInitParams(clazz));
             }
         }
         // 2.初始化Filter, 添加到Filter容器filterMappings
+        ClassLoader oldLoader = bindClassLoader();
+        try {
+            initRegisteredFilters();
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldLoader);
+        }
+        // 3.按分派类型分组
+        DispatcherType[] types = DispatcherType.values();
+        FilterMapping[][] byType = new FilterMapping[types.length][];
+        for (DispatcherType type : types) {
+            byType[type.ordinal()] = this.filterMappings.stream().filter(m -> m.appliesTo(type)).toArray(FilterMapping[]::new);
+        }
+        this.filterMappingsByType = byType;
+    }
+
+    /**
+     * 初始化已注册的Filter, 成功的添加到filterMappings
+     */
+    private void initRegisteredFilters() {
         for (String name : this.filterRegistrations.keySet()) {
             var registration = this.filterRegistrations.get(name);
             try {
                 registration.filter.init(registration.getFilterConfig());
+                registration.metrics = this.metrics.filter(name);
                 this.nameToFilters.put(name, registration.filter);
                 for (String urlPattern : registration.getUrlPatternMappings()) {
-                    this.filterMappings.add(new FilterMapping(urlPattern, registration.filter));
+                    this.filterMappings.add(new FilterMapping(urlPattern, registration.filter, registration));
                 }
                 registration.initialized = true;
             }catch (ServletException e){
@@ -153,18 +642,24 @@ public class ServletContextImpl implements ServletContext {
         }
     }
 
-
     @Override
     public String getContextPath() {
-        return "";
+        return this.contextPath;
     }
 
+    /**
+     * 获取处理指定路径的应用
+     * @param s 以/开头的路径
+     */
     @Override
     public ServletContext getContext(String s) {
-        if (s.equals("")){
-            return this;
+        if (s == null || !s.startsWith("/")) {
+            return null;
         }
-        return null;
+        if (this.mapper == null) {
+            return s.equals(this.contextPath) || s.startsWith(this.contextPath + "/") ? this : null;
+        }
+        return this.mapper.map(s);
     }
 
     @Override
@@ -214,14 +709,42 @@ public class ServletContextImpl implements ServletContext {
         return null;
     }
 
+    /**
+     * 获取转发/包含指定路径的RequestDispatcher, 与请求使用同一套Servlet映射
+     * @param s 应用内路径, 以/开头, 可以带查询参数
+     * @return 路径不以/开头或没有匹配的Servlet时返回null
+     */
     @Override
     public RequestDispatcher getRequestDispatcher(String s) {
-        return null;
+        if (s == null || !s.startsWith("/")) {
+            return null;
+        }
+        String path = s;
+        String queryString = null;
+        int n = s.indexOf('?');
+        if (n >= 0) {
+            path = s.substring(0, n);
+            queryString = s.substring(n + 1);
+        }
+        ServletMapping mapping = findServletMapping(path);
+        if (mapping == null) {
+            return null;
+        }
+        return new ApplicationDispatcher(this, mapping.registration, path, queryString);
     }
 
+    /**
+     * 按Servlet名称获取RequestDispatcher, 不改变请求路径, 不经过Filter
+     * @param s Servlet名称
+     * @return Servlet不存在时返回null
+     */
     @Override
     public RequestDispatcher getNamedDispatcher(String s) {
-        return null;
+        ServletRegistrationImpl registration = this.servletRegistrations.get(s);
+        if (registration == null) {
+            return null;
+        }
+        return new ApplicationDispatcher(this, registration, null, null);
     }
 
     @Override
@@ -328,7 +851,7 @@ public class ServletContextImpl implements ServletContext {
         Servlet servlet = null;
         try {
             // 根据类名加载Servlet类
-            Class<? extends Servlet> clazz = createInstance(className);
+            Class<? extends Servlet> clazz = loadClass(className, Servlet.class);
             // 创建Servlet实例
             servlet = createInstance(clazz);
         } catch (ServletException e) {
@@ -393,7 +916,7 @@ public class ServletContextImpl implements ServletContext {
         }
         Filter filter = null;
         try {
-            Class<? extends Filter> clazz = createInstance(className);
+            Class<? extends Filter> clazz = loadClass(className, Filter.class);
             filter = createInstance(clazz);
         } catch (ServletException e) {
             throw new RuntimeException(e);
@@ -473,7 +996,7 @@ public class ServletContextImpl implements ServletContext {
         EventListener listener = null;
         try {
             // 根据类名加载Listener类, 并创建Listener实例
-            Class<EventListener> clazz = createInstance(className);
+            Class<? extends EventListener> clazz = loadClass(className, EventListener.class);
             listener = createInstance(clazz);
         } catch (ServletException e) {
             throw new RuntimeException(e);
@@ -488,38 +1011,26 @@ public class ServletContextImpl implements ServletContext {
     @Override
     public <T extends EventListener> void addListener(T t) {
         if(t instanceof ServletContextListener listener){
-            if (this.servletContextListeners == null){
-                this.servletContextListeners = new ArrayList<>();
-            }
-            this.servletContextListeners.add(listener);
+            this.servletContextListeners = append(this.servletContextListeners, listener);
         }else if(t instanceof ServletContextAttributeListener listener){
-            if (this.servletContextAttributeListeners == null){
-                this.servletContextAttributeListeners = new ArrayList<>();
-            }
-            this.servletContextAttributeListeners.add(listener);
+            this.servletContextAttributeListeners = append(this.servletContextAttributeListeners, listener);
         }else if(t instanceof ServletRequestListener listener){
-            if (this.servletRequestListeners == null){
-                this.servletRequestListeners = new ArrayList<>();
-            }
-            this.servletRequestListeners.add(listener);
+            this.servletRequestListeners = append(this.servletRequestListeners, listener);
         }else if(t instanceof ServletRequestAttributeListener listener){
-            if (this.servletRequestAttributeListeners == null){
-                this.servletRequestAttributeListeners = new ArrayList<>();
-            }
-            this.servletRequestAttributeListeners.add(listener);
+            this.servletRequestAttributeListeners = append(this.servletRequestAttributeListeners, listener);
         }else if(t instanceof HttpSessionListener listener){
-            if (this.httpSessionListeners == null){
-                this.httpSessionListeners = new ArrayList<>();
-            }
-            this.httpSessionListeners.add(listener);
+            this.httpSessionListeners = append(this.httpSessionListeners, listener);
         }else if(t instanceof HttpSessionAttributeListener listener){
-            if (this.httpSessionAttributeListeners == null){
-                this.httpSessionAttributeListeners = new ArrayList<>();
-            }
-            this.httpSessionAttributeListeners.add(listener);
+            this.httpSessionAttributeListeners = append(this.httpSessionAttributeListeners, listener);
         }
     }
 
+    private static <T> T[] append(T[] listeners, T listener) {
+        T[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+        copy[listeners.length] = listener;
+        return copy;
+    }
+
     /**
      * 添加Listener, 根据类
      * @param aClass 类
@@ -537,135 +1048,228 @@ public class ServletContextImpl implements ServletContext {
 
     // ================== 调用 Listener ==================
 
-    void invokeServletContextAttributeAdded(String name, Object value) {
-        logger.info("invoke ServletContextAttributeAdded: {} = {}", name, value);
-        if (this.servletContextAttributeListeners != null) {
-            // 创建 Event 事件
-            var event = new ServletContextAttributeEvent(this, name, value);
-            for (var listener : this.servletContextAttributeListeners) {
-                // 调用 Listener 实现的方法
-                listener.attributeAdded(event);
+    /**
+     * 应用启动时调用, 在初始化Servlet和Filter之前
+     */
+    public void invokeServletContextInitialized() {
+        var listeners = this.servletContextListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletContextInitialized", listeners.length, this);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletContextEvent(this);
+        ClassLoader oldLoader = bindClassLoader();
+        try {
+            for (var listener : listeners) {
+                listener.contextInitialized(event);
             }
+        } finally {
+            Thread.currentThread().setContextClassLoader(oldLoader);
         }
     }
 
-    void invokeServletContextAttributeRemoved(String name, Object value) {
-        logger.info("invoke ServletContextAttributeRemoved: {} = {}", name, value);
-        if (this.servletContextAttributeListeners != null) {
-            var event = new ServletContextAttributeEvent(this, name, value);
-            for (var listener : this.servletContextAttributeListeners) {
-                listener.attributeRemoved(event);
+    /**
+     * 应用销毁时调用, 按注册的相反顺序通知
+     */
+    void invokeServletContextDestroyed() {
+        var listeners = this.servletContextListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletContextDestroyed", listeners.length, this);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletContextEvent(this);
+        for (int i = listeners.length - 1; i >= 0; i--) {
+            try {
+                listeners[i].contextDestroyed(event);
+            } catch (RuntimeException e) {
+                logger.error("ServletContextListener {} 执行失败", listeners[i].getClass().getName(), e);
             }
         }
     }
 
+    void invokeServletContextAttributeAdded(String name, Object value) {
+        var listeners = this.servletContextAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletContextAttributeAdded", listeners.length, this, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletContextAttributeEvent(this, name, value);
+        for (var listener : listeners) {
+            listener.attributeAdded(event);
+        }
+    }
+
+    void invokeServletContextAttributeRemoved(String name, Object value) {
+        var listeners = this.servletContextAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletContextAttributeRemoved", listeners.length, this, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletContextAttributeEvent(this, name, value);
+        for (var listener : listeners) {
+            listener.attributeRemoved(event);
+        }
+    }
+
     void invokeServletContextAttributeReplaced(String name, Object value) {
-        logger.info("invoke ServletContextAttributeReplaced: {} = {}", name, value);
-        if (this.servletContextAttributeListeners != null) {
-            var event = new ServletContextAttributeEvent(this, name, value);
-            for (var listener : this.servletContextAttributeListeners) {
-                listener.attributeReplaced(event);
-            }
+        var listeners = this.servletContextAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletContextAttributeReplaced", listeners.length, this, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletContextAttributeEvent(this, name, value);
+        for (var listener : listeners) {
+            listener.attributeReplaced(event);
         }
     }
 
     void invokeServletRequestAttributeAdded(HttpServletRequest request, String name, Object value) {
-        logger.info("invoke ServletRequestAttributeAdded: {} = {}, request = {}", name, value, request);
-        if (this.servletRequestAttributeListeners != null) {
-            var event = new ServletRequestAttributeEvent(this, request, name, value);
-            for (var listener : this.servletRequestAttributeListeners) {
-                listener.attributeAdded(event);
-            }
+        var listeners = this.servletRequestAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletRequestAttributeAdded", listeners.length, request, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletRequestAttributeEvent(this, request, name, value);
+        for (var listener : listeners) {
+            listener.attributeAdded(event);
         }
     }
 
     void invokeServletRequestAttributeRemoved(HttpServletRequest request, String name, Object value) {
-        logger.info("invoke ServletRequestAttributeRemoved: {} = {}, request = {}", name, value, request);
-        if (this.servletRequestAttributeListeners != null) {
-            var event = new ServletRequestAttributeEvent(this, request, name, value);
-            for (var listener : this.servletRequestAttributeListeners) {
-                listener.attributeRemoved(event);
-            }
+        var listeners = this.servletRequestAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletRequestAttributeRemoved", listeners.length, request, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletRequestAttributeEvent(this, request, name, value);
+        for (var listener : listeners) {
+            listener.attributeRemoved(event);
         }
     }
 
     void invokeServletRequestAttributeReplaced(HttpServletRequest request, String name, Object value) {
-        logger.info("invoke ServletRequestAttributeReplaced: {} = {}, request = {}", name, value, request);
-        if (this.servletRequestAttributeListeners != null) {
-            var event = new ServletRequestAttributeEvent(this, request, name, value);
-            for (var listener : this.servletRequestAttributeListeners) {
-                listener.attributeReplaced(event);
-            }
+        var listeners = this.servletRequestAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletRequestAttributeReplaced", listeners.length, request, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletRequestAttributeEvent(this, request, name, value);
+        for (var listener : listeners) {
+            listener.attributeReplaced(event);
         }
     }
 
     void invokeHttpSessionAttributeAdded(HttpSession session, String name, Object value) {
-        logger.info("invoke HttpSessionAttributeAdded: {} = {}, session = {}", name, value, session);
-        if (this.httpSessionAttributeListeners != null) {
-            var event = new HttpSessionBindingEvent(session, name, value);
-            for (var listener : this.httpSessionAttributeListeners) {
-                listener.attributeAdded(event);
-            }
+        var listeners = this.httpSessionAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("HttpSessionAttributeAdded", listeners.length, session, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new HttpSessionBindingEvent(session, name, value);
+        for (var listener : listeners) {
+            listener.attributeAdded(event);
         }
     }
 
     void invokeHttpSessionAttributeRemoved(HttpSession session, String name, Object value) {
-        logger.info("invoke ServletContextAttributeRemoved: {} = {}, session = {}", name, value, session);
-        if (this.httpSessionAttributeListeners != null) {
-            var event = new HttpSessionBindingEvent(session, name, value);
-            for (var listener : this.httpSessionAttributeListeners) {
-                listener.attributeRemoved(event);
-            }
+        var listeners = this.httpSessionAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("HttpSessionAttributeRemoved", listeners.length, session, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new HttpSessionBindingEvent(session, name, value);
+        for (var listener : listeners) {
+            listener.attributeRemoved(event);
         }
     }
 
     void invokeHttpSessionAttributeReplaced(HttpSession session, String name, Object value) {
-        logger.info("invoke ServletContextAttributeReplaced: {} = {}, session = {}", name, value, session);
-        if (this.httpSessionAttributeListeners != null) {
-            var event = new HttpSessionBindingEvent(session, name, value);
-            for (var listener : this.httpSessionAttributeListeners) {
-                listener.attributeReplaced(event);
-            }
+        var listeners = this.httpSessionAttributeListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("HttpSessionAttributeReplaced", listeners.length, session, name);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new HttpSessionBindingEvent(session, name, value);
+        for (var listener : listeners) {
+            listener.attributeReplaced(event);
         }
     }
 
     void invokeServletRequestInitialized(HttpServletRequest request) {
-        logger.info("invoke ServletRequestInitialized: request = {}", request);
-        if (this.servletRequestListeners != null) {
-            var event = new ServletRequestEvent(this, request);
-            for (var listener : this.servletRequestListeners) {
-                listener.requestInitialized(event);
-            }
+        var listeners = this.servletRequestListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletRequestInitialized", listeners.length, request);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletRequestEvent(this, request);
+        for (var listener : listeners) {
+            listener.requestInitialized(event);
         }
     }
 
     void invokeServletRequestDestroyed(HttpServletRequest request) {
-        logger.info("invoke ServletRequestDestroyed: request = {}", request);
-        if (this.servletRequestListeners != null) {
-            var event = new ServletRequestEvent(this, request);
-            for (var listener : this.servletRequestListeners) {
-                listener.requestDestroyed(event);
-            }
+        var listeners = this.servletRequestListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("ServletRequestDestroyed", listeners.length, request);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new ServletRequestEvent(this, request);
+        for (var listener : listeners) {
+            listener.requestDestroyed(event);
         }
     }
 
     void invokeHttpSessionCreated(HttpSession session) {
-        logger.info("invoke HttpSessionCreated: session = {}", session);
-        if (this.httpSessionListeners != null) {
-            var event = new HttpSessionEvent(session);
-            for (var listener : this.httpSessionListeners) {
-                listener.sessionCreated(event);
-            }
+        var listeners = this.httpSessionListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("HttpSessionCreated", listeners.length, session);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new HttpSessionEvent(session);
+        for (var listener : listeners) {
+            listener.sessionCreated(event);
         }
     }
 
     void invokeHttpSessionDestroyed(HttpSession session) {
-        logger.info("invoke HttpSessionDestroyed: session = {}", session);
-        if (this.httpSessionListeners != null) {
-            var event = new HttpSessionEvent(session);
-            for (var listener : this.httpSessionListeners) {
-                listener.sessionDestroyed(event);
-            }
+        var listeners = this.httpSessionListeners;
+        if (this.eventTracer.isSampled()) {
+            this.eventTracer.trace("HttpSessionDestroyed", listeners.length, session);
+        }
+        if (listeners.length == 0) {
+            return;
+        }
+        var event = new HttpSessionEvent(session);
+        for (var listener : listeners) {
+            listener.sessionDestroyed(event);
         }
     }
 
@@ -681,7 +1285,7 @@ public class ServletContextImpl implements ServletContext {
 
     @Override
     public ClassLoader getClassLoader() {
-        return null;
+        return this.classLoader;
     }
 
     @Override
@@ -691,7 +1295,7 @@ public class ServletContextImpl implements ServletContext {
 
     @Override
     public String getVirtualServerName() {
-        return null;
+        return this.mapper == null ? "localhost" : this.mapper.getHostName();
     }
 
     @Override
@@ -724,26 +1328,34 @@ public class ServletContextImpl implements ServletContext {
     }
 
     /**
-     * 创建类实例
+     * 根据类名加载组件类
      * @param className 类名
+     * @param type 组件类型
      */
-    @SuppressWarnings("unchecked")
-    private <T> T createInstance(String className) throws ServletException {
-        Class<T> clazz;
+    private <T> Class<? extends T> loadClass(String className, Class<T> type) {
+        Class<?> clazz;
         try {
-            clazz = (Class<T>) Class.forName(className);
+            clazz = Class.forName(className, true, this.classLoader);
         } catch (ClassNotFoundException e) {
-            throw new IllegalArgumentException("Class not found.", e);
+            throw new IllegalArgumentException("Class not found: " + className, e);
+        }
+        if (!type.isAssignableFrom(clazz)) {
+            throw new IllegalArgumentException(className + " 不是 " + type.getName());
         }
-        return createInstance(clazz);
+        return clazz.asSubclass(type);
     }
 
-    private <T> T createInstance(Class<T> clazz) throws ServletException {
-        try {
-            Constructor<T> constructor = clazz.getConstructor();
-            return constructor.newInstance();
-        } catch (ReflectiveOperationException e) {
-            throw new ServletException("无法实例化类: " + clazz.getName(), e);
-        }
+    /**
+     * 创建类实例, 构造方法查找结果按类缓存, 设置了InstanceProvider时先由它创建
+     */
+    <T> T createInstance(Class<T> clazz) throws ServletException {
+        return this.componentFactory.newInstance(clazz);
+    }
+
+    /**
+     * 设置组件实例提供者, 用于接入依赖注入框架, 之后创建的Servlet/Filter/Listener等由它创建
+     */
+    public void setInstanceProvider(InstanceProvider provider) {
+        this.componentFactory.setProvider(provider);
     }
 }
@@ -11,6 +11,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
 
     private final OutputStream output;
     private WriteListener writeListener = null;
+    private long bytesWritten = 0; // 已写入的字节数
 
     public ServletOutputStreamImpl(OutputStream output) {
         this.output = output;
@@ -18,7 +19,7 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
 
     @Override
     public boolean isReady() {
-        return true;
+        return !(this.output instanceof ResponseOutputBuffer buffer) || buffer.isReady();
     }
 
     @Override
@@ -29,6 +30,10 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
     @Override
     public void setWriteListener(WriteListener writeListener) {
         this.writeListener = writeListener;
+        if (this.output instanceof ResponseOutputBuffer buffer) {
+            buffer.setWriteListener(writeListener);
+            return;
+        }
         try {
             this.writeListener.onWritePossible();
         } catch (IOException e) {
@@ -40,6 +45,20 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
     public void write(int b) throws IOException {
         try {
             this.output.write(b);
+            this.bytesWritten++;
+        } catch (IOException e) {
+            if (this.writeListener != null) {
+                this.writeListener.onError(e);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        try {
+            this.output.write(b, off, len);
+            this.bytesWritten += len;
         } catch (IOException e) {
             if (this.writeListener != null) {
                 this.writeListener.onError(e);
@@ -47,4 +66,16 @@ public class ServletOutputStreamImpl extends ServletOutputStream {
             throw e;
         }
     }
+
+    @Override
+    public void flush() throws IOException {
+        this.output.flush();
+    }
+
+    /**
+     * 获取已写入的字节数
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
 }
@@ -1,5 +1,6 @@
 package com.hdh.engine;
 
+import com.hdh.engine.metrics.LatencyMetrics;
 import jakarta.servlet.*;
 
 import java.util.*;
@@ -14,7 +15,11 @@ public class ServletRegistrationImpl implements ServletRegistration.Dynamic{
     final String name;
     final Servlet servlet;
     final List<String> urlPatterns = new ArrayList<>(4);
-    boolean initialized = false;
+    MultipartConfigElement multipartConfig; // 为null时不支持multipart请求
+    LatencyMetrics metrics; // 延迟指标, 初始化时创建
+    int loadOnStartup = -1; // 启动时初始化的顺序, 小的先初始化; 负数表示第一次请求时初始化
+    volatile boolean initialized = false;
+    private ServletException initFailure; // 初始化失败的原因, 失败后不再重试
 
     public ServletRegistrationImpl(ServletContext servletContext, String name, Servlet servlet) {
         this.servletContext = servletContext;
@@ -46,9 +51,34 @@ public class ServletRegistrationImpl implements ServletRegistration.Dynamic{
         };
     }
 
+    /**
+     * 初始化Servlet, 多个线程同时调用时只初始化一次
+     * @throws ServletException 初始化失败, 之后每次调用都抛出同一个异常
+     */
+    void ensureInitialized() throws ServletException {
+        if (this.initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (this.initialized) {
+                return;
+            }
+            if (this.initFailure != null) {
+                throw this.initFailure;
+            }
+            try {
+                this.servlet.init(getServletConfig());
+            } catch (ServletException | RuntimeException e) {
+                this.initFailure = e instanceof ServletException se ? se : new ServletException(e);
+                throw this.initFailure;
+            }
+            this.initialized = true;
+        }
+    }
+
     @Override
     public void setLoadOnStartup(int loadOnStartup) {
-
+        this.loadOnStartup = loadOnStartup;
     }
 
     @Override
@@ -58,7 +88,10 @@ public class ServletRegistrationImpl implements ServletRegistration.Dynamic{
 
     @Override
     public void setMultipartConfig(MultipartConfigElement multipartConfig) {
-
+        if (multipartConfig == null) {
+            throw new IllegalArgumentException("multipartConfig is null.");
+        }
+        this.multipartConfig = multipartConfig;
     }
 
     @Override
@@ -14,15 +14,37 @@ public class SessionManager implements Runnable{
     final ServletContextImpl servletContext;
     final Map<String, HttpSessionImpl> sessions = new ConcurrentHashMap<>();
     final int inactiveInterval; // 会话失效间隔
+    private final Thread thread;
 
     public SessionManager(ServletContextImpl servletContext, int interval) {
         this.servletContext = servletContext;
         this.inactiveInterval = interval;
 
         // 启动会话管理器线程
-        Thread thread = new Thread(this, "SessionManager");
-        thread.setDaemon(true);
-        thread.start();
+        this.thread = new Thread(this, "SessionManager");
+        this.thread.setDaemon(true);
+        // 过期失效时触发的会话Listener运行在这个线程
+        this.thread.setContextClassLoader(servletContext.getClassLoader());
+        this.thread.start();
+    }
+
+    /**
+     * 停止会话管理器线程并使所有会话失效, 应用卸载时调用
+     */
+    public void stop() {
+        this.thread.interrupt();
+        try {
+            this.thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (HttpSessionImpl session : this.sessions.values()) {
+            try {
+                session.invalidate();
+            } catch (IllegalStateException e) {
+                // 已经被其他线程失效
+            }
+        }
     }
 
     public HttpSession getSession(String sessionId) {
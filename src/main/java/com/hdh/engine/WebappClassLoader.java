@@ -0,0 +1,58 @@
+package com.hdh.engine;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Web应用类加载器, 每个应用一个
+ * 应用自己的类优先从应用的类路径加载, 这样不同应用可以使用同一个库的不同版本;
+ * JDK, Servlet API, 日志接口和Tomdog自身的类总是交给父加载器, 保证容器和应用看到的是同一份类.
+ */
+public class WebappClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private static final String[] PARENT_FIRST = {"java.", "javax.", "jakarta.", "jdk.", "sun.", "org.slf4j.", "ch.qos.logback.", "com.hdh."};
+
+    public WebappClassLoader(String name, URL[] urls, ClassLoader parent) {
+        super(name, urls, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (parentFirst(name)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    clazz = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    clazz = getParent().loadClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : super.getResource(name);
+    }
+
+    private static boolean parentFirst(String name) {
+        for (String prefix : PARENT_FIRST) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
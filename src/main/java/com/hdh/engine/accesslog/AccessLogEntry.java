@@ -0,0 +1,29 @@
+package com.hdh.engine.accesslog;
+
+/**
+ * 访问日志记录
+ * 作为环形缓冲区的槽位预先分配并重复使用, 请求线程只填充字段, 格式化在写日志线程中完成
+ */
+public class AccessLogEntry {
+    long timestamp; // 请求开始时间, 毫秒
+    long durationMicros; // 处理耗时, 微秒
+    String remoteAddr;
+    String method;
+    String uri;
+    String query;
+    String protocol;
+    int status;
+    long bytes;
+    String referer;
+    String userAgent;
+
+    void clear() {
+        this.remoteAddr = null;
+        this.method = null;
+        this.uri = null;
+        this.query = null;
+        this.protocol = null;
+        this.referer = null;
+        this.userAgent = null;
+    }
+}
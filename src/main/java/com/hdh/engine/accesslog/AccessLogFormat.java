@@ -0,0 +1,118 @@
+package com.hdh.engine.accesslog;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * 访问日志格式
+ */
+public enum AccessLogFormat {
+
+    /**
+     * Common Log Format: 127.0.0.1 - - [19/Oct/2026:06:57:51 +0000] "GET / HTTP/1.1" 200 123
+     */
+    COMMON,
+
+    /**
+     * Combined Log Format: 在COMMON基础上增加 "Referer" "User-Agent"
+     */
+    COMBINED,
+
+    /**
+     * 每行一个JSON对象
+     */
+    JSON;
+
+    static final DateTimeFormatter CLF_TIME = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US).withZone(ZoneOffset.UTC);
+
+    /**
+     * 格式化一条记录, 追加到sb中, 末尾包含换行
+     * @param clfTime CLF格式的时间, 由调用者按秒缓存
+     */
+    void format(AccessLogEntry e, String clfTime, StringBuilder sb) {
+        if (this == JSON) {
+            sb.append("{\"time\":\"").append(Instant.ofEpochMilli(e.timestamp))
+                    .append("\",\"remote\":");
+            appendJson(sb, e.remoteAddr);
+            sb.append(",\"method\":");
+            appendJson(sb, e.method);
+            sb.append(",\"uri\":");
+            appendJson(sb, e.query == null ? e.uri : e.uri + "?" + e.query);
+            sb.append(",\"protocol\":");
+            appendJson(sb, e.protocol);
+            sb.append(",\"status\":").append(e.status)
+                    .append(",\"bytes\":").append(e.bytes)
+                    .append(",\"duration_us\":").append(e.durationMicros)
+                    .append(",\"referer\":");
+            appendJson(sb, e.referer);
+            sb.append(",\"user_agent\":");
+            appendJson(sb, e.userAgent);
+            sb.append("}\n");
+            return;
+        }
+        sb.append(e.remoteAddr).append(" - - [").append(clfTime).append("] \"")
+                .append(e.method).append(' ').append(e.uri);
+        if (e.query != null) {
+            sb.append('?').append(e.query);
+        }
+        sb.append(' ').append(e.protocol).append("\" ").append(e.status).append(' ');
+        if (e.bytes > 0) {
+            sb.append(e.bytes);
+        } else {
+            sb.append('-');
+        }
+        if (this == COMBINED) {
+            sb.append(" \"");
+            appendQuoted(sb, e.referer);
+            sb.append("\" \"");
+            appendQuoted(sb, e.userAgent);
+            sb.append('"');
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * 追加双引号内的字段, 转义其中的双引号和反斜杠
+     */
+    static void appendQuoted(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append('-');
+            return;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\');
+            }
+            sb.append(ch);
+        }
+    }
+
+    static void appendJson(StringBuilder sb, String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) ch));
+                    } else {
+                        sb.append(ch);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
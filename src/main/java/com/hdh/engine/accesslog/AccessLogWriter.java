@@ -0,0 +1,304 @@
+package com.hdh.engine.accesslog;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步访问日志
+ * 请求线程通过无锁的多生产者单消费者环形缓冲区提交记录, 由单个写日志线程批量格式化后用FileChannel写入文件.
+ * 缓冲区满时直接丢弃并计数, 不会阻塞请求线程. 日志文件按大小和时间滚动.
+ */
+public class AccessLogWriter implements Runnable, AutoCloseable {
+
+    static final DateTimeFormatter ROTATE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+    static final int BATCH_SIZE = 256; // 每批最多处理的记录数
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // 缓冲区为空时的等待时间
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final Path file;
+    final AccessLogFormat format;
+    final long maxFileSize; // 单个文件最大字节数, <=0 表示不按大小滚动
+    final long rotateIntervalMillis; // 滚动间隔, <=0 表示不按时间滚动
+
+    // 环形缓冲区
+    final AccessLogEntry[] entries;
+    final AtomicLongArray sequences; // 每个槽位的序号, 等于写入位置表示可写, 等于写入位置+1表示可读
+    final int mask;
+    final AtomicLong tail = new AtomicLong(); // 生产者写入位置
+    long head = 0; // 消费者读取位置, 只由写日志线程访问
+
+    final LongAdder dropped = new LongAdder(); // 丢弃的记录数
+    final LongAdder written = new LongAdder(); // 写入的记录数
+
+    // 以下字段只由写日志线程访问
+    FileChannel channel;
+    long fileSize;
+    long fileOpenedAt;
+    final StringBuilder sb = new StringBuilder(512);
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    long clfSecond = Long.MIN_VALUE;
+    String clfTime;
+
+    final Thread thread;
+    volatile boolean running = true;
+
+    /**
+     * @param file 日志文件
+     * @param format 日志格式
+     * @param capacity 环形缓冲区大小, 会向上取整为2的幂
+     * @param maxFileSize 单个文件最大字节数, <=0 表示不按大小滚动
+     * @param rotateIntervalMillis 滚动间隔, <=0 表示不按时间滚动
+     */
+    public AccessLogWriter(Path file, AccessLogFormat format, int capacity, long maxFileSize, long rotateIntervalMillis) throws IOException {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity必须大于1");
+        }
+        this.file = file;
+        this.format = format;
+        this.maxFileSize = maxFileSize;
+        this.rotateIntervalMillis = rotateIntervalMillis;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.entries = new AccessLogEntry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.entries[i] = new AccessLogEntry();
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        openFile();
+        this.thread = new Thread(this, "AccessLogWriter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 根据系统属性创建访问日志, 未开启时返回null
+     * -Dtomdog.accessLog=logs/access.log 开启访问日志
+     * -Dtomdog.accessLog.format=common|combined|json
+     * -Dtomdog.accessLog.capacity=8192
+     * -Dtomdog.accessLog.maxFileSize=104857600
+     * -Dtomdog.accessLog.rotateIntervalMillis=86400000
+     */
+    public static AccessLogWriter fromSystemProperties() throws IOException {
+        String file = System.getProperty("tomdog.accessLog");
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        AccessLogFormat format = AccessLogFormat.valueOf(System.getProperty("tomdog.accessLog.format", "combined").toUpperCase());
+        int capacity = Integer.getInteger("tomdog.accessLog.capacity", 8192);
+        long maxFileSize = Long.getLong("tomdog.accessLog.maxFileSize", 100 * 1024 * 1024L);
+        long rotateInterval = Long.getLong("tomdog.accessLog.rotateIntervalMillis", TimeUnit.DAYS.toMillis(1));
+        return new AccessLogWriter(Path.of(file), format, capacity, maxFileSize, rotateInterval);
+    }
+
+    /**
+     * 提交一条访问日志, 缓冲区满时丢弃
+     * @param request 请求
+     * @param status 响应状态码
+     * @param bytes 响应体字节数
+     * @param startMillis 请求开始时间, 毫秒
+     * @param durationNanos 处理耗时, 纳秒
+     * @return 是否提交成功
+     */
+    public boolean log(HttpServletRequest request, int status, long bytes, long startMillis, long durationNanos) {
+        long t;
+        int index;
+        for (;;) {
+            t = this.tail.get();
+            index = (int) (t & this.mask);
+            long diff = this.sequences.get(index) - t;
+            if (diff == 0) {
+                if (this.tail.compareAndSet(t, t + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // 缓冲区已满
+                this.dropped.increment();
+                return false;
+            }
+        }
+        AccessLogEntry e = this.entries[index];
+        e.timestamp = startMillis;
+        e.durationMicros = durationNanos / 1000;
+        e.remoteAddr = request.getRemoteAddr();
+        e.method = request.getMethod();
+        e.uri = request.getRequestURI();
+        e.query = request.getQueryString();
+        e.protocol = request.getProtocol();
+        e.status = status;
+        e.bytes = bytes;
+        if (this.format != AccessLogFormat.COMMON) {
+            e.referer = request.getHeader("Referer");
+            e.userAgent = request.getHeader("User-Agent");
+        }
+        // 发布: 序号设为 t+1 后消费者可读
+        this.sequences.lazySet(index, t + 1);
+        return true;
+    }
+
+    /**
+     * 丢弃的记录数
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * 写入的记录数
+     */
+    public long getWritten() {
+        return this.written.sum();
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                if (drain() == 0) {
+                    flush();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                logger.error("写入访问日志失败", e);
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+        try {
+            // 关闭前写完剩余记录
+            while (drain() > 0) {
+                // continue
+            }
+            flush();
+            this.channel.close();
+        } catch (IOException e) {
+            logger.error("关闭访问日志失败", e);
+        }
+    }
+
+    /**
+     * 从环形缓冲区取出一批记录并格式化到写缓冲区
+     * @return 处理的记录数
+     */
+    int drain() throws IOException {
+        int count = 0;
+        while (count < BATCH_SIZE) {
+            int index = (int) (this.head & this.mask);
+            if (this.sequences.get(index) != this.head + 1) {
+                break;
+            }
+            AccessLogEntry e = this.entries[index];
+            this.sb.setLength(0);
+            this.format.format(e, clfTime(e.timestamp), this.sb);
+            e.clear();
+            // 释放槽位, 序号设为下一轮的写入位置
+            this.sequences.lazySet(index, this.head + this.entries.length);
+            this.head++;
+            append(this.sb.toString().getBytes(StandardCharsets.UTF_8));
+            count++;
+        }
+        this.written.add(count);
+        return count;
+    }
+
+    void append(byte[] line) throws IOException {
+        if (line.length > this.buffer.remaining()) {
+            flush();
+            if (line.length > this.buffer.capacity()) {
+                this.buffer = ByteBuffer.allocate(line.length);
+            }
+        }
+        this.buffer.put(line);
+    }
+
+    void flush() throws IOException {
+        if (this.buffer.position() == 0) {
+            checkRotate(0);
+            return;
+        }
+        checkRotate(this.buffer.position());
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.fileSize += this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    /**
+     * 检查是否需要滚动日志文件
+     * @param pending 即将写入的字节数
+     */
+    void checkRotate(int pending) throws IOException {
+        long now = System.currentTimeMillis();
+        boolean bySize = this.maxFileSize > 0 && this.fileSize > 0 && this.fileSize + pending > this.maxFileSize;
+        boolean byTime = this.rotateIntervalMillis > 0 && this.fileSize > 0 && now - this.fileOpenedAt >= this.rotateIntervalMillis;
+        if (bySize || byTime) {
+            this.channel.close();
+            try {
+                Path rotated = this.file.resolveSibling(this.file.getFileName() + "." + ROTATE_SUFFIX.format(Instant.ofEpochMilli(now)));
+                int n = 1;
+                while (Files.exists(rotated)) {
+                    rotated = this.file.resolveSibling(this.file.getFileName() + "." + ROTATE_SUFFIX.format(Instant.ofEpochMilli(now)) + "." + n++);
+                }
+                Files.move(this.file, rotated);
+            } catch (IOException e) {
+                // 移动失败时继续写原来的文件, 下次检查时再滚动
+                logger.warn("滚动访问日志失败: {}", this.file, e);
+            } finally {
+                openFile();
+            }
+        }
+    }
+
+    void openFile() throws IOException {
+        Path parent = this.file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.fileSize = this.channel.size();
+        this.fileOpenedAt = System.currentTimeMillis();
+    }
+
+    String clfTime(long millis) {
+        long second = millis / 1000;
+        if (second != this.clfSecond) {
+            this.clfSecond = second;
+            this.clfTime = AccessLogFormat.CLF_TIME.format(Instant.ofEpochMilli(millis));
+        }
+        return this.clfTime;
+    }
+
+    /**
+     * 停止写日志线程, 写完剩余记录后关闭文件
+     * 等待时被中断则不再等待, 恢复中断标记后返回
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+        try {
+            this.thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("访问日志已关闭, 写入 {} 条, 丢弃 {} 条", getWritten(), getDropped());
+    }
+}
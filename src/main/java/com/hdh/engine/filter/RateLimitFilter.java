@@ -0,0 +1,194 @@
+package com.hdh.engine.filter;
+
+import jakarta.servlet.*;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.annotation.WebInitParam;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶限流Filter
+ * 每个key的令牌桶只保存一个"理论到达时间"(GCRA算法, 与令牌桶等价), 请求时按当前时间惰性补充令牌, 一次CAS完成判断和扣减,
+ * 不需要每个key的定时器. key表按哈希分片, 插入新key时按分片清理长时间空闲的key, 另有一个后台线程定期清理全部分片,
+ * 没有新key时空闲key也会被释放.
+ *
+ * 默认关闭, 请求直接放行: 通过 -Dtomdog.rateLimit.enabled=true 或初始化参数 enabled=true 开启
+ *
+ * 初始化参数:
+ * enabled: 是否开启, 默认取系统属性 tomdog.rateLimit.enabled
+ * keyBy: remoteAddr(默认) | session | header
+ * header: keyBy为header时使用的请求头名称
+ * rate: 每秒补充的令牌数
+ * burst: 桶容量, 即允许的突发请求数
+ * shards: 分片数, 向上取整为2的幂
+ * idleTimeoutSeconds: key空闲多久后清除
+ */
+@WebFilter(urlPatterns = "/*", initParams = {
+        @WebInitParam(name = "keyBy", value = "remoteAddr"),
+        @WebInitParam(name = "rate", value = "1000"),
+        @WebInitParam(name = "burst", value = "2000"),
+        @WebInitParam(name = "shards", value = "64"),
+        @WebInitParam(name = "idleTimeoutSeconds", value = "300")
+})
+public class RateLimitFilter implements Filter {
+
+    static final int SWEEP_INTERVAL = 1024; // 每个分片插入多少个新key后清理一次
+
+    boolean enabled;
+    String keyBy;
+    String headerName;
+    long intervalNanos; // 每个令牌的间隔
+    long burstNanos; // 桶容量对应的时间
+    long idleTimeoutNanos;
+
+    Shard[] shards;
+    int mask;
+    ScheduledExecutorService sweeper; // 定期清理空闲key
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        this.enabled = Boolean.parseBoolean(getParam(filterConfig, "enabled", System.getProperty("tomdog.rateLimit.enabled", "false")));
+        if (!this.enabled) {
+            return;
+        }
+        this.keyBy = getParam(filterConfig, "keyBy", "remoteAddr");
+        this.headerName = getParam(filterConfig, "header", null);
+        if ("header".equals(this.keyBy) && this.headerName == null) {
+            throw new ServletException("keyBy为header时必须配置header参数");
+        }
+        double rate = Double.parseDouble(getParam(filterConfig, "rate", "1000"));
+        long burst = Long.parseLong(getParam(filterConfig, "burst", "2000"));
+        int shardCount = Integer.parseInt(getParam(filterConfig, "shards", "64"));
+        long idleTimeout = Long.parseLong(getParam(filterConfig, "idleTimeoutSeconds", "300"));
+        if (rate <= 0 || burst < 1 || shardCount < 1) {
+            throw new ServletException("限流参数错误");
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.burstNanos = this.intervalNanos * burst;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeout);
+        int n = Integer.highestOneBit(Math.max(1, shardCount - 1)) << 1;
+        this.shards = new Shard[n];
+        for (int i = 0; i < n; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.mask = n - 1;
+        // 每过半个空闲超时清理一次, 空闲key最多保留1.5倍超时时间
+        long period = Math.max(1, idleTimeout / 2);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tomdog-ratelimit-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (this.sweeper != null) {
+            this.sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * 清理所有分片中的空闲key
+     */
+    void sweep() {
+        long threshold = System.nanoTime() - this.idleTimeoutNanos;
+        for (Shard shard : this.shards) {
+            shard.sweep(threshold);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!this.enabled) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = (HttpServletRequest) request;
+        long wait = tryAcquire(resolveKey(req), System.nanoTime());
+        if (wait > 0) {
+            HttpServletResponse resp = (HttpServletResponse) response;
+            resp.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999))));
+            resp.sendError(429);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * 尝试获取一个令牌
+     * @param key 限流key
+     * @param now 当前时间, 纳秒
+     * @return 0表示允许, 大于0表示需要等待的纳秒数
+     */
+    long tryAcquire(String key, long now) {
+        int h = key.hashCode();
+        Shard shard = this.shards[(h ^ (h >>> 16)) & this.mask];
+        AtomicLong bucket = shard.buckets.get(key);
+        if (bucket == null) {
+            bucket = shard.buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            if (shard.inserts.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                shard.sweep(now - this.idleTimeoutNanos);
+            }
+        }
+        for (;;) {
+            long tat = bucket.get();
+            // 理论到达时间早于当前时间说明桶已满
+            long base = tat - now < 0 ? now : tat;
+            long next = base + this.intervalNanos;
+            long over = next - now - this.burstNanos;
+            if (over > 0) {
+                return over;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    String resolveKey(HttpServletRequest req) {
+        if ("session".equals(this.keyBy)) {
+            Cookie[] cookies = req.getCookies();
+            if (cookies != null) {
+                for (Cookie cookie : cookies) {
+                    if (cookie.getName().equals("JSESSIONID")) {
+                        return cookie.getValue();
+                    }
+                }
+            }
+        } else if ("header".equals(this.keyBy)) {
+            String value = req.getHeader(this.headerName);
+            if (value != null) {
+                return value;
+            }
+        }
+        return req.getRemoteAddr();
+    }
+
+    static String getParam(FilterConfig config, String name, String defaultValue) {
+        String value = config.getInitParameter(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    static final class Shard {
+        final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        final AtomicLong inserts = new AtomicLong();
+
+        /**
+         * 清除理论到达时间早于threshold的key, 这些key的桶早已补满
+         */
+        void sweep(long threshold) {
+            this.buckets.values().removeIf(bucket -> bucket.get() - threshold < 0);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.hdh.engine.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * ServletContext处理请求的耗时, 包含Servlet匹配, Listener, Filter和Servlet
+ */
+@Name("com.hdh.tomdog.Dispatch")
+@Label("Dispatch")
+@Category({ "Tomdog", "Engine" })
+@Description("ServletContext分派请求到Servlet的耗时")
+@StackTrace(false)
+public class DispatchEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Servlet")
+    public String servletName;
+
+    @Label("Status")
+    public int status;
+}
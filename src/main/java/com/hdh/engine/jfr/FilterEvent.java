@@ -0,0 +1,20 @@
+package com.hdh.engine.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 单个Filter的耗时, 包含后续的Filter和Servlet
+ */
+@Name("com.hdh.tomdog.Filter")
+@Label("Filter")
+@Category({ "Tomdog", "Engine" })
+@Description("Filter.doFilter的耗时, 包含后续调用链")
+@StackTrace(false)
+public class FilterEvent extends Event {
+
+    @Label("Filter")
+    public String filterName;
+
+    @Label("Path")
+    public String path;
+}
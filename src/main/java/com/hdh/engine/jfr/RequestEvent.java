@@ -0,0 +1,27 @@
+package com.hdh.engine.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 连接器处理一个请求的完整耗时, 包含创建请求/响应对象和容器处理
+ */
+@Name("com.hdh.tomdog.Request")
+@Label("Request")
+@Category({ "Tomdog", "Connector" })
+@Description("连接器处理一个HTTP请求的耗时")
+@StackTrace(false)
+public class RequestEvent extends Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
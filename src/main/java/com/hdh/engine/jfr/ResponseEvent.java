@@ -0,0 +1,26 @@
+package com.hdh.engine.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * 响应提交(发送状态行和响应头)或刷新缓冲区的耗时
+ */
+@Name("com.hdh.tomdog.Response")
+@Label("Response Commit/Flush")
+@Category({ "Tomdog", "Engine" })
+@Description("响应头提交或刷新响应缓冲区的耗时")
+@StackTrace(false)
+public class ResponseEvent extends Event {
+
+    @Label("Phase")
+    @Description("commit 或 flush")
+    public String phase;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Bytes")
+    @Description("到当前为止写出的响应体字节数")
+    @DataAmount
+    public long bytes;
+}
@@ -1,13 +1,24 @@
 package com.hdh.engine.mapping;
 
+import com.hdh.engine.FilterRegistrationImpl;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
 
 public class FilterMapping extends AbstractMapping{
 
     public final Filter filter;
+    public final FilterRegistrationImpl registration;
 
-    public FilterMapping(String urlPattern, Filter filter) {
+    public FilterMapping(String urlPattern, Filter filter, FilterRegistrationImpl registration) {
         super(urlPattern);
         this.filter = filter;
+        this.registration = registration;
+    }
+
+    /**
+     * 是否对指定的请求分派类型生效
+     */
+    public boolean appliesTo(DispatcherType type) {
+        return this.registration.getDispatcherTypes().contains(type);
     }
 }
@@ -1,18 +1,19 @@
 package com.hdh.engine.mapping;
 
+import com.hdh.engine.ServletRegistrationImpl;
 import jakarta.servlet.Servlet;
 
-import java.util.regex.Pattern;
-
 /**
  * ServletMapping
  * 保存servlet的映射关系
  */
 public class ServletMapping extends AbstractMapping{
     public final Servlet servlet;
+    public final ServletRegistrationImpl registration;
 
-    public ServletMapping(String pattern, Servlet servlet) {
+    public ServletMapping(String pattern, Servlet servlet, ServletRegistrationImpl registration) {
         super(pattern);
         this.servlet = servlet;
+        this.registration = registration;
     }
 }
@@ -0,0 +1,90 @@
+package com.hdh.engine.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR风格的延迟直方图, 单位微秒
+ * 小于32微秒的值每1微秒一个桶, 之后每个2的幂区间分为16个桶, 相对误差约6%, 最大记录约2^40微秒
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BITS = 5;
+    static final int SUB_COUNT = 1 << SUB_BITS; // 32
+    static final int HALF_COUNT = SUB_COUNT >> 1; // 16
+    static final int MAX_GROUP = 40 - SUB_BITS + 1;
+    static final int BUCKET_COUNT = SUB_COUNT + MAX_GROUP * HALF_COUNT;
+
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    final LongAdder count = new LongAdder();
+    final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * 记录一次耗时
+     * @param micros 微秒
+     */
+    public void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        this.buckets.incrementAndGet(index(micros));
+        this.count.increment();
+        this.sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSumMicros() {
+        return this.sumMicros.sum();
+    }
+
+    /**
+     * 计算分位数, 返回所在桶的上界
+     * @param quantile 0~1之间
+     * @return 微秒, 没有数据时返回0
+     */
+    public long getValueAtQuantile(double quantile) {
+        // 先复制快照, 保证计数和遍历一致
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = this.buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKET_COUNT - 1);
+    }
+
+    static int index(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int group = exponent - SUB_BITS + 1;
+        if (group > MAX_GROUP) {
+            return BUCKET_COUNT - 1;
+        }
+        return SUB_COUNT + (group - 1) * HALF_COUNT + (int) ((v >> group) - HALF_COUNT);
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int group = (index - SUB_COUNT) / HALF_COUNT + 1;
+        int offset = (index - SUB_COUNT) % HALF_COUNT;
+        return ((long) (HALF_COUNT + offset + 1) << group) - 1;
+    }
+}
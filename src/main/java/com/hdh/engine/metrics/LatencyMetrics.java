@@ -0,0 +1,57 @@
+package com.hdh.engine.metrics;
+
+/**
+ * 单个Servlet或Filter的延迟指标
+ */
+public class LatencyMetrics implements LatencyMetricsMXBean {
+
+    final String name;
+    final LatencyHistogram histogram = new LatencyHistogram();
+
+    public LatencyMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒
+     */
+    public void record(long nanos) {
+        this.histogram.record(nanos / 1000);
+    }
+
+    public LatencyHistogram getHistogram() {
+        return this.histogram;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getCount() {
+        return this.histogram.getCount();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = this.histogram.getCount();
+        return count == 0 ? 0 : this.histogram.getSumMicros() / 1000.0 / count;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return this.histogram.getValueAtQuantile(0.5) / 1000.0;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return this.histogram.getValueAtQuantile(0.9) / 1000.0;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return this.histogram.getValueAtQuantile(0.99) / 1000.0;
+    }
+}
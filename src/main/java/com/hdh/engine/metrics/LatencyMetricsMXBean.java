@@ -0,0 +1,13 @@
+package com.hdh.engine.metrics;
+
+/**
+ * Servlet/Filter 延迟指标的JMX接口
+ */
+public interface LatencyMetricsMXBean {
+    String getName();
+    long getCount();
+    double getMeanMillis();
+    double getP50Millis();
+    double getP90Millis();
+    double getP99Millis();
+}
@@ -0,0 +1,164 @@
+package com.hdh.engine.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 指标注册表
+ * 保存请求总体指标以及每个Servlet和Filter的延迟指标, 支持导出Prometheus文本格式, 并注册为JMX MBean
+ * 每个应用一个注册表, MBean名称带host和context键, 例如 com.hdh.tomdog:type=Servlet,host=localhost,context=/shop,name="cart"
+ */
+public class MetricsRegistry {
+
+    static final String DOMAIN = "com.hdh.tomdog";
+    static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+    // MBean名称当前属于哪个注册表. 重新部署时新应用先注册同名MBean, 旧应用销毁时不能把新应用的注销掉
+    static final Map<ObjectName, MetricsRegistry> owners = new ConcurrentHashMap<>();
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final RequestMetrics requestMetrics = new RequestMetrics();
+    final Map<String, LatencyMetrics> servletMetrics = new ConcurrentHashMap<>();
+    final Map<String, LatencyMetrics> filterMetrics = new ConcurrentHashMap<>();
+    final String scope; // MBean名称中的host和context键
+    final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param hostName 应用所属的虚拟主机
+     * @param contextPath 应用路径, 根应用为""
+     */
+    public MetricsRegistry(String hostName, String contextPath) {
+        this.scope = "host=" + value(hostName) + ",context=" + value(contextPath.isEmpty() ? "/" : contextPath);
+        registerMBean("type=Requests", this.requestMetrics);
+    }
+
+    public RequestMetrics getRequestMetrics() {
+        return this.requestMetrics;
+    }
+
+    /**
+     * 获取或创建Servlet的延迟指标
+     * @param name Servlet名称
+     */
+    public LatencyMetrics servlet(String name) {
+        return this.servletMetrics.computeIfAbsent(name, n -> {
+            LatencyMetrics metrics = new LatencyMetrics(n);
+            registerMBean("type=Servlet,name=" + ObjectName.quote(n), metrics);
+            return metrics;
+        });
+    }
+
+    /**
+     * 获取或创建Filter的延迟指标
+     * @param name Filter名称
+     */
+    public LatencyMetrics filter(String name) {
+        return this.filterMetrics.computeIfAbsent(name, n -> {
+            LatencyMetrics metrics = new LatencyMetrics(n);
+            registerMBean("type=Filter,name=" + ObjectName.quote(n), metrics);
+            return metrics;
+        });
+    }
+
+    /**
+     * 导出Prometheus文本格式
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("# HELP tomdog_requests_total Total number of requests.\n");
+        sb.append("# TYPE tomdog_requests_total counter\n");
+        sb.append("tomdog_requests_total ").append(this.requestMetrics.getRequestCount()).append('\n');
+        sb.append("# HELP tomdog_requests_in_flight Number of requests being processed.\n");
+        sb.append("# TYPE tomdog_requests_in_flight gauge\n");
+        sb.append("tomdog_requests_in_flight ").append(this.requestMetrics.getInFlight()).append('\n');
+        sb.append("# HELP tomdog_responses_total Number of responses by status class.\n");
+        sb.append("# TYPE tomdog_responses_total counter\n");
+        for (int i = 1; i <= 5; i++) {
+            sb.append("tomdog_responses_total{status=\"").append(i).append("xx\"} ")
+                    .append(this.requestMetrics.getStatusClass(i)).append('\n');
+        }
+        appendSummary(sb, "tomdog_servlet_latency_seconds", "servlet", "Servlet processing latency.", this.servletMetrics);
+        appendSummary(sb, "tomdog_filter_latency_seconds", "filter", "Filter self latency excluding downstream filters and servlet.", this.filterMetrics);
+        return sb.toString();
+    }
+
+    static void appendSummary(StringBuilder sb, String metric, String label, String help, Map<String, LatencyMetrics> metrics) {
+        sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(metric).append(" summary\n");
+        for (LatencyMetrics m : metrics.values()) {
+            String name = m.getName().replace("\\", "\\\\").replace("\"", "\\\"");
+            for (double q : QUANTILES) {
+                sb.append(metric).append('{').append(label).append("=\"").append(name).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(m.getHistogram().getValueAtQuantile(q) / 1_000_000.0).append('\n');
+            }
+            sb.append(metric).append("_sum{").append(label).append("=\"").append(name).append("\"} ")
+                    .append(m.getHistogram().getSumMicros() / 1_000_000.0).append('\n');
+            sb.append(metric).append("_count{").append(label).append("=\"").append(name).append("\"} ")
+                    .append(m.getHistogram().getCount()).append('\n');
+        }
+    }
+
+    /**
+     * 注册MBean, 同名的MBean(重新部署前的旧应用)被替换
+     * @param properties type和name键, host和context键自动加上
+     */
+    void registerMBean(String properties, Object mbean) {
+        int n = properties.indexOf(',');
+        String keys = n < 0 ? properties + "," + this.scope : properties.substring(0, n) + "," + this.scope + properties.substring(n);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + keys);
+            synchronized (owners) {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(mbean, name);
+                owners.put(name, this);
+            }
+            this.registered.add(name);
+        } catch (Exception e) {
+            logger.warn("注册MBean失败: {}", keys, e);
+        }
+    }
+
+    /**
+     * 注销这个注册表注册的MBean, 应用销毁时调用. 已经被其他注册表替换的不注销
+     */
+    public void unregisterAll() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (owners) {
+            for (ObjectName name : this.registered) {
+                if (!owners.remove(name, this)) {
+                    continue;
+                }
+                try {
+                    server.unregisterMBean(name);
+                } catch (Exception e) {
+                    logger.debug("注销MBean失败: {}", name, e);
+                }
+            }
+        }
+        this.registered.clear();
+    }
+
+    /**
+     * ObjectName键值, 含有特殊字符时加引号
+     */
+    static String value(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\\' || c == '\n') {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+}
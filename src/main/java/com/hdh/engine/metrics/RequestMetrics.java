@@ -0,0 +1,78 @@
+package com.hdh.engine.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求总体指标: 请求数, 处理中的请求数, 按状态码分类的响应数
+ */
+public class RequestMetrics implements RequestMetricsMXBean {
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder inFlight = new LongAdder();
+    final LongAdder[] statusClasses = new LongAdder[5]; // 1xx ~ 5xx
+
+    public RequestMetrics() {
+        for (int i = 0; i < this.statusClasses.length; i++) {
+            this.statusClasses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 请求开始
+     */
+    public void begin() {
+        this.requests.increment();
+        this.inFlight.increment();
+    }
+
+    /**
+     * 请求结束
+     * @param status 响应状态码
+     */
+    public void end(int status) {
+        this.inFlight.decrement();
+        int n = status / 100 - 1;
+        if (n >= 0 && n < this.statusClasses.length) {
+            this.statusClasses[n].increment();
+        }
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.requests.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return this.inFlight.sum();
+    }
+
+    public long getStatusClass(int n) {
+        return this.statusClasses[n - 1].sum();
+    }
+
+    @Override
+    public long getStatus1xx() {
+        return getStatusClass(1);
+    }
+
+    @Override
+    public long getStatus2xx() {
+        return getStatusClass(2);
+    }
+
+    @Override
+    public long getStatus3xx() {
+        return getStatusClass(3);
+    }
+
+    @Override
+    public long getStatus4xx() {
+        return getStatusClass(4);
+    }
+
+    @Override
+    public long getStatus5xx() {
+        return getStatusClass(5);
+    }
+}
@@ -0,0 +1,14 @@
+package com.hdh.engine.metrics;
+
+/**
+ * 请求总体指标的JMX接口
+ */
+public interface RequestMetricsMXBean {
+    long getRequestCount();
+    long getInFlight();
+    long getStatus1xx();
+    long getStatus2xx();
+    long getStatus3xx();
+    long getStatus4xx();
+    long getStatus5xx();
+}
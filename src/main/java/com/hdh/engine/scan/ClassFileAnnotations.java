@@ -0,0 +1,144 @@
+package com.hdh.engine.scan;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 直接解析class文件的类注解, 不加载类也不触发类初始化
+ * 只读取常量池和类属性中的RuntimeVisibleAnnotations, 字段和方法只跳过.
+ */
+class ClassFileAnnotations {
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SERVLET = descriptor(ComponentIndex.WEB_SERVLET);
+    private static final byte[] FILTER = descriptor(ComponentIndex.WEB_FILTER);
+    private static final byte[] LISTENER = descriptor(ComponentIndex.WEB_LISTENER);
+
+    private ClassFileAnnotations() {
+    }
+
+    /**
+     * 返回class文件对应的组件类型, 不是组件或者格式错误时返回null
+     */
+    static String componentKind(byte[] classFile) {
+        try {
+            return parse(ByteBuffer.wrap(classFile));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String parse(ByteBuffer buf) {
+        if (buf.getInt() != 0xCAFEBABE) {
+            return null;
+        }
+        buf.position(8);
+        int count = buf.getShort() & 0xffff;
+        int[] utf8 = new int[count]; // Utf8常量在文件中的偏移(长度字段的位置)
+        for (int i = 1; i < count; i++) {
+            int tag = buf.get();
+            switch (tag) {
+                case 1 -> {
+                    utf8[i] = buf.position();
+                    int length = buf.getShort() & 0xffff;
+                    buf.position(buf.position() + length);
+                }
+                case 7, 8, 16, 19, 20 -> buf.position(buf.position() + 2);
+                case 15 -> buf.position(buf.position() + 3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> buf.position(buf.position() + 4);
+                case 5, 6 -> {
+                    buf.position(buf.position() + 8);
+                    i++;
+                }
+                default -> throw new IllegalArgumentException("未知的常量类型: " + tag);
+            }
+        }
+        buf.position(buf.position() + 6); // access_flags, this_class, super_class
+        int interfaces = buf.getShort() & 0xffff;
+        buf.position(buf.position() + interfaces * 2);
+        skipMembers(buf); // fields
+        skipMembers(buf); // methods
+        int attributes = buf.getShort() & 0xffff;
+        for (int i = 0; i < attributes; i++) {
+            int name = buf.getShort() & 0xffff;
+            int length = buf.getInt();
+            int end = buf.position() + length;
+            if (equals(buf, utf8[name], RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = buf.getShort() & 0xffff;
+                for (int j = 0; j < annotations; j++) {
+                    int type = buf.getShort() & 0xffff;
+                    if (equals(buf, utf8[type], SERVLET)) {
+                        return ComponentIndex.SERVLET;
+                    } else if (equals(buf, utf8[type], FILTER)) {
+                        return ComponentIndex.FILTER;
+                    } else if (equals(buf, utf8[type], LISTENER)) {
+                        return ComponentIndex.LISTENER;
+                    }
+                    skipElementValuePairs(buf);
+                }
+                return null;
+            }
+            buf.position(end);
+        }
+        return null;
+    }
+
+    private static void skipMembers(ByteBuffer buf) {
+        int count = buf.getShort() & 0xffff;
+        for (int i = 0; i < count; i++) {
+            buf.position(buf.position() + 6); // access_flags, name_index, descriptor_index
+            int attributes = buf.getShort() & 0xffff;
+            for (int j = 0; j < attributes; j++) {
+                buf.position(buf.position() + 2);
+                int length = buf.getInt();
+                buf.position(buf.position() + length);
+            }
+        }
+    }
+
+    private static void skipElementValuePairs(ByteBuffer buf) {
+        int pairs = buf.getShort() & 0xffff;
+        for (int i = 0; i < pairs; i++) {
+            buf.position(buf.position() + 2);
+            skipElementValue(buf);
+        }
+    }
+
+    private static void skipElementValue(ByteBuffer buf) {
+        int tag = buf.get();
+        switch (tag) {
+            case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> buf.position(buf.position() + 2);
+            case 'e' -> buf.position(buf.position() + 4);
+            case '@' -> {
+                buf.position(buf.position() + 2);
+                skipElementValuePairs(buf);
+            }
+            case '[' -> {
+                int count = buf.getShort() & 0xffff;
+                for (int i = 0; i < count; i++) {
+                    skipElementValue(buf);
+                }
+            }
+            default -> throw new IllegalArgumentException("未知的注解元素类型: " + tag);
+        }
+    }
+
+    /**
+     * 比较Utf8常量和ASCII字节, offset为0表示不是Utf8常量
+     */
+    private static boolean equals(ByteBuffer buf, int offset, byte[] expected) {
+        if (offset == 0 || (buf.getShort(offset) & 0xffff) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (buf.get(offset + 2 + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] descriptor(String className) {
+        return ("L" + className.replace('.', '/') + ";").getBytes(StandardCharsets.US_ASCII);
+    }
+}
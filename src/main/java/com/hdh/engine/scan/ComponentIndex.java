@@ -0,0 +1,95 @@
+package com.hdh.engine.scan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * 扫描得到的组件类名, 按类型分组
+ * 索引文件每行一个组件: "<servlet|filter|listener> <类名>", #开头的行是注释.
+ */
+public class ComponentIndex {
+
+    public static final String LOCATION = "META-INF/tomdog/components";
+
+    static final String WEB_SERVLET = "jakarta.servlet.annotation.WebServlet";
+    static final String WEB_FILTER = "jakarta.servlet.annotation.WebFilter";
+    static final String WEB_LISTENER = "jakarta.servlet.annotation.WebListener";
+
+    static final String SERVLET = "servlet";
+    static final String FILTER = "filter";
+    static final String LISTENER = "listener";
+
+    final List<String> servlets = new ArrayList<>();
+    final List<String> filters = new ArrayList<>();
+    final List<String> listeners = new ArrayList<>();
+    private final Set<String> classNames = new HashSet<>(); // 同一个类出现在多个类路径条目中时只取第一个
+
+    public List<String> getServlets() {
+        return this.servlets;
+    }
+
+    public List<String> getFilters() {
+        return this.filters;
+    }
+
+    public List<String> getListeners() {
+        return this.listeners;
+    }
+
+    public int size() {
+        return this.servlets.size() + this.filters.size() + this.listeners.size();
+    }
+
+    void add(String kind, String className) {
+        if (!this.classNames.add(className)) {
+            return;
+        }
+        switch (kind) {
+            case SERVLET -> this.servlets.add(className);
+            case FILTER -> this.filters.add(className);
+            case LISTENER -> this.listeners.add(className);
+            default -> throw new IllegalArgumentException("未知的组件类型: " + kind);
+        }
+    }
+
+    /**
+     * 按类名排序, 让Filter等的注册顺序与扫描顺序无关
+     */
+    void sort() {
+        this.servlets.sort(null);
+        this.filters.sort(null);
+        this.listeners.sort(null);
+    }
+
+    /**
+     * 注解类名对应的组件类型
+     */
+    static String kindOf(String annotation) {
+        return switch (annotation) {
+            case WEB_SERVLET -> SERVLET;
+            case WEB_FILTER -> FILTER;
+            case WEB_LISTENER -> LISTENER;
+            default -> throw new IllegalArgumentException("不是组件注解: " + annotation);
+        };
+    }
+
+    static void read(BufferedReader reader, BiConsumer<String, String> consumer) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int n = line.indexOf(' ');
+            if (n < 0) {
+                throw new IOException("组件索引格式错误: " + line);
+            }
+            consumer.accept(line.substring(0, n), line.substring(n + 1).strip());
+        }
+    }
+}
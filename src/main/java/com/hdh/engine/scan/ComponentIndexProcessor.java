@@ -0,0 +1,70 @@
+package com.hdh.engine.scan;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 编译期生成组件索引 META-INF/tomdog/components
+ * 记录带@WebServlet/@WebFilter/@WebListener注解的类, 启动时直接读取索引, 不需要扫描class文件.
+ * 增量编译时合并已有的索引; 已经删除的类留在索引中, 加载时会被跳过.
+ */
+@SupportedAnnotationTypes({ComponentIndex.WEB_SERVLET, ComponentIndex.WEB_FILTER, ComponentIndex.WEB_LISTENER})
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    private final Map<String, String> components = new TreeMap<>(); // 类名 -> 组件类型
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            String kind = ComponentIndex.kindOf(annotation.getQualifiedName().toString());
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element instanceof TypeElement type) {
+                    this.components.put(this.processingEnv.getElementUtils().getBinaryName(type).toString(), kind);
+                }
+            }
+        }
+        if (roundEnv.processingOver() && !this.components.isEmpty()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void writeIndex() {
+        Filer filer = this.processingEnv.getFiler();
+        Map<String, String> merged = new TreeMap<>();
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", ComponentIndex.LOCATION);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                ComponentIndex.read(reader, (kind, className) -> merged.put(className, kind));
+            }
+        } catch (IOException e) {
+            // 没有已有的索引
+        }
+        merged.putAll(this.components);
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", ComponentIndex.LOCATION);
+            try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (var entry : merged.entrySet()) {
+                    writer.write(entry.getValue() + " " + entry.getKey() + "\n");
+                }
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "写入组件索引失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.hdh.engine.scan;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * 扫描类路径, 找出带@WebServlet/@WebFilter/@WebListener注解的组件
+ * 每个类路径条目(目录或者jar)如果带有编译期生成的组件索引(见ComponentIndexProcessor)就直接读取索引,
+ * 否则解析其中的class文件查找注解, 扫描过程不加载类.
+ * tomdog.scan.skip 指定跳过的jar文件名前缀, 逗号分隔, 默认跳过Servlet API和日志库.
+ */
+public class ComponentScanner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComponentScanner.class);
+
+    final List<String> skipJars;
+
+    public ComponentScanner(List<String> skipJars) {
+        this.skipJars = skipJars;
+    }
+
+    public static ComponentScanner fromSystemProperties() {
+        String skip = System.getProperty("tomdog.scan.skip", "jakarta.,logback-,slf4j-");
+        return new ComponentScanner(Arrays.stream(skip.split(",")).map(String::strip).filter(s -> !s.isEmpty()).toList());
+    }
+
+    /**
+     * 扫描java.class.path中的所有条目
+     */
+    public ComponentIndex scan() {
+        String classPath = System.getProperty("java.class.path", "");
+        List<Path> roots = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                roots.add(Path.of(entry));
+            }
+        }
+        return scan(roots);
+    }
+
+    public ComponentIndex scan(List<Path> roots) {
+        long start = System.nanoTime();
+        ComponentIndex index = new ComponentIndex();
+        int indexed = 0;
+        int scanned = 0;
+        for (Path root : roots) {
+            try {
+                if (Files.isDirectory(root)) {
+                    if (scanDirectory(root, index)) {
+                        indexed++;
+                    } else {
+                        scanned++;
+                    }
+                } else if (Files.isRegularFile(root) && root.toString().endsWith(".jar") && !skipped(root)) {
+                    if (scanJar(root, index)) {
+                        indexed++;
+                    } else {
+                        scanned++;
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("扫描 {} 失败", root, e);
+            }
+        }
+        index.sort();
+        logger.info("扫描到 {} 个组件, 使用索引 {} 个, 解析class {} 个类路径条目, 耗时 {} ms",
+                index.size(), indexed, scanned, (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * 按类名加载组件类, 不初始化; 找不到的类(例如索引中已经删除的类)跳过
+     */
+    public static List<Class<?>> loadClasses(List<String> classNames, ClassLoader loader) {
+        List<Class<?>> classes = new ArrayList<>(classNames.size());
+        for (String className : classNames) {
+            try {
+                classes.add(Class.forName(className, false, loader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.warn("加载组件 {} 失败: {}", className, e.toString());
+            }
+        }
+        return classes;
+    }
+
+    private boolean skipped(Path jar) {
+        String name = jar.getFileName().toString();
+        for (String prefix : this.skipJars) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扫描目录, 返回是否使用了索引
+     */
+    private boolean scanDirectory(Path root, ComponentIndex index) throws IOException {
+        Path indexFile = root.resolve(ComponentIndex.LOCATION);
+        if (Files.isRegularFile(indexFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+                ComponentIndex.read(reader, index::add);
+            }
+            return true;
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".class") && !name.equals("module-info.class") && Files.isRegularFile(file)) {
+                    String kind = ClassFileAnnotations.componentKind(Files.readAllBytes(file));
+                    if (kind != null) {
+                        index.add(kind, className(root.relativize(file).toString().replace(File.separatorChar, '/')));
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 扫描jar, 返回是否使用了索引
+     */
+    private boolean scanJar(Path jar, ComponentIndex index) throws IOException {
+        try (JarFile file = new JarFile(jar.toFile())) {
+            JarEntry indexEntry = file.getJarEntry(ComponentIndex.LOCATION);
+            if (indexEntry != null) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(indexEntry), StandardCharsets.UTF_8))) {
+                    ComponentIndex.read(reader, index::add);
+                }
+                return true;
+            }
+            Enumeration<JarEntry> entries = file.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class")) {
+                    try (InputStream input = file.getInputStream(entry)) {
+                        String kind = ClassFileAnnotations.componentKind(input.readAllBytes());
+                        if (kind != null) {
+                            index.add(kind, className(name));
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    private static String className(String path) {
+        return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+    }
+}
@@ -0,0 +1,45 @@
+package com.hdh.engine.servlet;
+
+import com.hdh.engine.sse.SseBroadcaster;
+import com.hdh.engine.sse.SseEmitter;
+import com.hdh.engine.sse.SseEvent;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSE示例, 每秒向所有订阅者推送当前时间
+ */
+@WebServlet(urlPatterns = "/events/clock")
+public class ClockEventsServlet extends HttpServlet {
+
+    final SseBroadcaster broadcaster = new SseBroadcaster();
+    final AtomicLong ids = new AtomicLong();
+
+    @Override
+    public void init() {
+        this.broadcaster.schedule(() -> {
+            if (this.broadcaster.getSubscriberCount() > 0) {
+                this.broadcaster.broadcast(SseEvent.of(Instant.now().toString()).id(Long.toString(this.ids.incrementAndGet())).name("tick"));
+            }
+        }, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        SseEmitter emitter = SseEmitter.start(req, resp);
+        emitter.send(SseEvent.of("connected").retry(3000));
+        this.broadcaster.subscribe(emitter);
+    }
+
+    @Override
+    public void destroy() {
+        this.broadcaster.close();
+    }
+}
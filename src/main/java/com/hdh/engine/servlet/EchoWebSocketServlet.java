@@ -0,0 +1,48 @@
+package com.hdh.engine.servlet;
+
+import com.hdh.engine.websocket.WebSocketEndpoint;
+import com.hdh.engine.websocket.WebSocketHandshake;
+import com.hdh.engine.websocket.WebSocketSession;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * WebSocket回显示例
+ */
+@WebServlet(urlPatterns = "/ws/echo")
+public class EchoWebSocketServlet extends HttpServlet {
+
+    final Logger logger = LoggerFactory.getLogger(getClass());
+
+    final WebSocketEndpoint endpoint = new WebSocketEndpoint() {
+        @Override
+        public void onText(WebSocketSession session, String text) {
+            try {
+                session.sendText(text);
+            } catch (IOException e) {
+                logger.debug("回显失败", e);
+            }
+        }
+
+        @Override
+        public void onBinary(WebSocketSession session, byte[] data) {
+            try {
+                session.sendBinary(data);
+            } catch (IOException e) {
+                logger.debug("回显失败", e);
+            }
+        }
+    };
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        WebSocketHandshake.upgrade(req, resp, this.endpoint);
+    }
+}
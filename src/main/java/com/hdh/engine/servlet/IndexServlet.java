@@ -10,7 +10,7 @@ import jakarta.servlet.http.HttpSession;
 import java.io.IOException;
 import java.io.PrintWriter;
 
-@WebServlet(urlPatterns = "/")
+@WebServlet(urlPatterns = "/", loadOnStartup = 1)
 public class IndexServlet extends HttpServlet {
 
     @Override
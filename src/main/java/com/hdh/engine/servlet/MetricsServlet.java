@@ -0,0 +1,50 @@
+package com.hdh.engine.servlet;
+
+import com.hdh.engine.ServletContextImpl;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+
+/**
+ * 管理端点, 以Prometheus文本格式输出指标
+ * 指标中包含Servlet和Filter名称、请求数和延迟, 默认只允许本机访问, 其他地址返回404
+ * 允许远程访问: -Dtomdog.metrics.allowRemote=true
+ */
+@WebServlet(urlPatterns = "/metrics", loadOnStartup = 1)
+public class MetricsServlet extends HttpServlet {
+
+    final boolean allowRemote = Boolean.getBoolean("tomdog.metrics.allowRemote");
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!this.allowRemote && !isLoopback(req.getRemoteAddr())) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ServletContextImpl context = (ServletContextImpl) req.getServletContext();
+        resp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter pw = resp.getWriter();
+        pw.write(context.getMetrics().toPrometheus());
+        pw.close();
+    }
+
+    /**
+     * 是否本机地址, 参数是IP字面量, 不会进行DNS查询
+     */
+    static boolean isLoopback(String address) {
+        if (address == null || address.isEmpty()) {
+            return false;
+        }
+        try {
+            return InetAddress.getByName(address).isLoopbackAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
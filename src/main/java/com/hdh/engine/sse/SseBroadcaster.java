@@ -0,0 +1,82 @@
+package com.hdh.engine.sse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * SSE广播: 一个事件只编码一次, 编码后的字节数组由所有订阅者共享
+ * 定时发送心跳注释, 防止中间代理因为空闲断开连接; 已关闭的连接自动取消订阅.
+ */
+public class SseBroadcaster implements AutoCloseable {
+
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    public SseBroadcaster() {
+        this(15);
+    }
+
+    /**
+     * @param heartbeatSeconds 心跳间隔, 0表示不发送心跳
+     */
+    public SseBroadcaster(long heartbeatSeconds) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "tomdog-sse");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatSeconds > 0) {
+            this.scheduler.scheduleAtFixedRate(() -> broadcastEncoded(HEARTBEAT), heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 添加订阅者, 连接关闭时自动取消订阅; 已经关闭的连接立即取消
+     */
+    public void subscribe(SseEmitter emitter) {
+        this.subscribers.add(emitter);
+        emitter.onClose(() -> this.subscribers.remove(emitter));
+    }
+
+    public void broadcast(SseEvent event) {
+        broadcastEncoded(event.encode());
+    }
+
+    /**
+     * 返回成功发送(写出或者排队)的订阅者数量
+     */
+    public int broadcastEncoded(byte[] data) {
+        int sent = 0;
+        for (SseEmitter emitter : this.subscribers) {
+            if (emitter.sendEncoded(data)) {
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * 在广播线程上定时执行任务, 例如定时推送数据
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long period, TimeUnit unit) {
+        return this.scheduler.scheduleAtFixedRate(task, period, period, unit);
+    }
+
+    public int getSubscriberCount() {
+        return this.subscribers.size();
+    }
+
+    /**
+     * 停止心跳并关闭所有订阅者
+     */
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+        for (SseEmitter emitter : this.subscribers) {
+            emitter.close();
+        }
+    }
+}
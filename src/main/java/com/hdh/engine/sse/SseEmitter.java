@@ -0,0 +1,255 @@
+package com.hdh.engine.sse;
+
+import com.hdh.engine.AsyncContextImpl;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * SSE连接, 基于异步请求, 事件通过非阻塞响应体写出
+ * 连接暂时不可写时事件在连接中排队, 排队的字节数超过maxPendingBytes时按SlowConsumerPolicy丢弃事件或者断开连接.
+ */
+public class SseEmitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseEmitter.class);
+
+    /**
+     * 客户端接收过慢时的处理方式
+     */
+    public enum SlowConsumerPolicy {
+        DROP, // 丢弃新的事件, 连接保留
+        DISCONNECT // 断开连接
+    }
+
+    private final AsyncContext asyncContext;
+    private final ServletOutputStream output;
+    private final long maxPendingBytes;
+    private final SlowConsumerPolicy policy;
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+    // 发送状态, 通过this加锁
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private long dropped = 0;
+    private boolean closed = false;
+
+    private SseEmitter(AsyncContext asyncContext, ServletOutputStream output, long maxPendingBytes, SlowConsumerPolicy policy) {
+        this.asyncContext = asyncContext;
+        this.output = output;
+        this.maxPendingBytes = maxPendingBytes;
+        this.policy = policy;
+    }
+
+    public static SseEmitter start(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        return start(req, resp, 256 * 1024, SlowConsumerPolicy.DISCONNECT);
+    }
+
+    /**
+     * 开始SSE响应: 设置响应头, 开始异步处理并立即提交响应头
+     */
+    public static SseEmitter start(HttpServletRequest req, HttpServletResponse resp, long maxPendingBytes, SlowConsumerPolicy policy) throws IOException {
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("text/event-stream;charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setHeader("X-Accel-Buffering", "no");
+        AsyncContext context = req.startAsync();
+        context.setTimeout(0);
+        SseEmitter emitter = new SseEmitter(context, resp.getOutputStream(), maxPendingBytes, policy);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                emitter.closed();
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        emitter.output.flush();
+        emitter.output.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() {
+                emitter.drain();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                logger.debug("SSE连接写出失败", t);
+                emitter.abort();
+            }
+        });
+        return emitter;
+    }
+
+    public void send(SseEvent event) {
+        sendEncoded(event.encode());
+    }
+
+    public void send(String data) {
+        sendEncoded(SseEvent.of(data).encode());
+    }
+
+    /**
+     * 发送注释行, 用于心跳
+     */
+    public void comment(String text) {
+        sendEncoded((": " + text.replace('\n', ' ').replace('\r', ' ') + "\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 发送已经编码好的事件, 数组不会被修改, 可以在多个连接之间共享
+     * 返回false表示连接已经关闭, 或者因为客户端接收过慢事件被丢弃
+     */
+    public boolean sendEncoded(byte[] data) {
+        boolean disconnect = false;
+        synchronized (this) {
+            if (this.closed) {
+                return false;
+            }
+            if (this.queue.isEmpty() && this.output.isReady()) {
+                try {
+                    this.output.write(data);
+                    this.output.flush();
+                    return true;
+                } catch (IOException e) {
+                    logger.debug("SSE连接写出失败", e);
+                    disconnect = true;
+                }
+            } else if (this.queuedBytes + data.length > this.maxPendingBytes) {
+                if (this.policy == SlowConsumerPolicy.DROP) {
+                    this.dropped++;
+                    return false;
+                }
+                logger.debug("SSE客户端接收过慢, 断开连接");
+                disconnect = true;
+            } else {
+                this.queue.add(data);
+                this.queuedBytes += data.length;
+                return true;
+            }
+        }
+        if (disconnect) {
+            abort();
+        }
+        return false;
+    }
+
+    /**
+     * 连接可写时依次写出排队的事件
+     */
+    private void drain() {
+        boolean failed = false;
+        synchronized (this) {
+            try {
+                while (!this.closed && !this.queue.isEmpty() && this.output.isReady()) {
+                    byte[] data = this.queue.poll();
+                    this.queuedBytes -= data.length;
+                    this.output.write(data);
+                }
+                if (!this.closed && this.output.isReady()) {
+                    this.output.flush();
+                }
+            } catch (IOException e) {
+                logger.debug("SSE连接写出失败", e);
+                failed = true;
+            }
+        }
+        if (failed) {
+            abort();
+        }
+    }
+
+    /**
+     * 结束响应并关闭连接
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+        }
+        this.asyncContext.complete();
+    }
+
+    /**
+     * 直接关闭连接, 排队的事件丢弃. 用于客户端接收过慢或者写出失败,
+     * 这时排队的数据写不完, close()等待写完再关闭会让连接一直挂着
+     */
+    private void abort() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+        }
+        if (this.asyncContext instanceof AsyncContextImpl impl) {
+            impl.abort();
+        } else {
+            this.asyncContext.complete();
+        }
+    }
+
+    /**
+     * 添加连接关闭时的回调, 客户端断开和服务端关闭都会调用
+     * 连接已经关闭时立即在当前线程调用
+     */
+    public void onClose(Runnable listener) {
+        synchronized (this) {
+            if (!this.closed) {
+                this.closeListeners.add(listener);
+                return;
+            }
+        }
+        runCloseListener(listener);
+    }
+
+    public synchronized boolean isOpen() {
+        return !this.closed;
+    }
+
+    /**
+     * 因为客户端接收过慢而丢弃的事件数
+     */
+    public synchronized long getDropped() {
+        return this.dropped;
+    }
+
+    private void closed() {
+        synchronized (this) {
+            this.closed = true;
+            this.queue.clear();
+            this.queuedBytes = 0;
+        }
+        // closed设置后onClose不再添加回调, 这里看到的是全部回调, 每个只调用一次
+        for (Runnable listener : this.closeListeners) {
+            runCloseListener(listener);
+        }
+    }
+
+    private static void runCloseListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            logger.error("SSE关闭回调失败", e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.hdh.engine.sse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Server-Sent Event
+ * 编码结果会缓存, 广播时同一个事件只编码一次, 所有订阅者共享同一个字节数组.
+ */
+public final class SseEvent {
+
+    private final String data;
+    private String id;
+    private String name;
+    private long retry = -1;
+    private byte[] encoded;
+
+    private SseEvent(String data) {
+        this.data = data;
+    }
+
+    public static SseEvent of(String data) {
+        if (data == null) {
+            throw new IllegalArgumentException("data不能为null");
+        }
+        return new SseEvent(data);
+    }
+
+    public SseEvent id(String id) {
+        checkLine(id, "id");
+        this.id = id;
+        this.encoded = null;
+        return this;
+    }
+
+    public SseEvent name(String name) {
+        checkLine(name, "event");
+        this.name = name;
+        this.encoded = null;
+        return this;
+    }
+
+    /**
+     * 客户端断开后重连的等待时间(毫秒)
+     */
+    public SseEvent retry(long retry) {
+        if (retry < 0) {
+            throw new IllegalArgumentException("retry不能为负数");
+        }
+        this.retry = retry;
+        this.encoded = null;
+        return this;
+    }
+
+    /**
+     * 按text/event-stream格式编码, data中的每一行各占一个data字段
+     */
+    public byte[] encode() {
+        byte[] result = this.encoded;
+        if (result != null) {
+            return result;
+        }
+        StringBuilder sb = new StringBuilder(this.data.length() + 32);
+        if (this.id != null) {
+            sb.append("id: ").append(this.id).append('\n');
+        }
+        if (this.name != null) {
+            sb.append("event: ").append(this.name).append('\n');
+        }
+        if (this.retry >= 0) {
+            sb.append("retry: ").append(this.retry).append('\n');
+        }
+        int start = 0;
+        int length = this.data.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? this.data.charAt(i) : '\n';
+            if (c == '\r' || c == '\n') {
+                sb.append("data: ").append(this.data, start, i).append('\n');
+                if (c == '\r' && i + 1 < length && this.data.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        sb.append('\n');
+        result = sb.toString().getBytes(StandardCharsets.UTF_8);
+        this.encoded = result;
+        return result;
+    }
+
+    private static void checkLine(String value, String field) {
+        if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+            throw new IllegalArgumentException(field + "不能包含换行");
+        }
+    }
+}
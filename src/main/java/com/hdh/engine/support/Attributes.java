@@ -33,6 +33,10 @@ public class Attributes extends LazyMap<Object> {
         return super.remove(name);
     }
 
+    public void clearAttributes() {
+        super.clear();
+    }
+
     public Map<String, Object> getAttributes() {
         return super.map();
     }
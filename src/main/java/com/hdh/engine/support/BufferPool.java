@@ -0,0 +1,35 @@
+package com.hdh.engine.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 读缓冲区池, 用于升级连接和WebSocket会话
+ * 连接只在有未处理的数据时持有缓冲区, 读完后还回池中, 大量空闲连接不占用缓冲区.
+ * 池中最多保留tomdog.bufferPool.maxBuffers个缓冲区, 超过的交给GC回收.
+ */
+public final class BufferPool {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(Math.max(1, Integer.getInteger("tomdog.bufferPool.maxBuffers", 1024)));
+
+    private BufferPool() {
+    }
+
+    /**
+     * 取一个BUFFER_SIZE大小的缓冲区, 内容不确定
+     */
+    public static byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * 还回缓冲区, 之后调用方不能再使用; 大小不是BUFFER_SIZE的缓冲区直接丢弃
+     */
+    public static void release(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hdh.engine.support;
+
+import jakarta.servlet.ServletException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ServiceLoader;
+
+/**
+ * 组件实例工厂
+ * 每个类只查找一次public无参构造方法, 缓存成MethodHandle, 之后直接调用.
+ * 缓存使用ClassValue, 跟随类的生命周期, 不会阻止类加载器被回收.
+ * 设置了InstanceProvider时先交给它创建, 返回null再使用构造方法.
+ */
+public class ComponentFactory {
+
+    private static final MethodType CONSTRUCTOR = MethodType.methodType(void.class);
+    private static final MethodType FACTORY = MethodType.methodType(Object.class);
+
+    private static final ClassValue<Object> constructors = new ClassValue<>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().findConstructor(type, CONSTRUCTOR).asType(FACTORY);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                // 查找失败也缓存, 避免每次都重新查找
+                return e;
+            }
+        }
+    };
+
+    private volatile InstanceProvider provider;
+
+    public ComponentFactory(InstanceProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * 使用ServiceLoader找到的第一个InstanceProvider, 没有时使用构造方法
+     */
+    public static ComponentFactory fromServiceLoader(ClassLoader loader) {
+        return new ComponentFactory(ServiceLoader.load(InstanceProvider.class, loader).findFirst().orElse(null));
+    }
+
+    public void setProvider(InstanceProvider provider) {
+        this.provider = provider;
+    }
+
+    public InstanceProvider getProvider() {
+        return this.provider;
+    }
+
+    public <T> T newInstance(Class<T> clazz) throws ServletException {
+        InstanceProvider provider = this.provider;
+        if (provider != null) {
+            T instance;
+            try {
+                instance = provider.getInstance(clazz);
+            } catch (Exception e) {
+                throw new ServletException("无法实例化类: " + clazz.getName(), e);
+            }
+            if (instance != null) {
+                return instance;
+            }
+        }
+        Object constructor = constructors.get(clazz);
+        if (constructor instanceof ReflectiveOperationException e) {
+            throw new ServletException("无法实例化类: " + clazz.getName() + ", 需要public无参构造方法", e);
+        }
+        try {
+            return clazz.cast(((MethodHandle) constructor).invokeExact());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ServletException("无法实例化类: " + clazz.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.hdh.engine.support;
+
+import com.hdh.engine.utils.DateUtils;
+
+/**
+ * 缓存当前秒的HTTP Date响应头, 同一秒内的响应共享同一个字符串
+ * 只用于Tomdog自己写出的响应头(接管连接后的升级响应和异步响应, 见ResponseHead);
+ * 经过JDK HttpServer的响应由HttpServer在sendResponseHeaders()时写入Date, 不使用这里的缓存.
+ * 不使用后台线程, 秒数变化后由第一个请求线程重新格式化.
+ */
+public final class DateService {
+
+    private static volatile CachedDate current = format(System.currentTimeMillis() / 1000);
+
+    private DateService() {
+    }
+
+    /**
+     * 获取当前时间的Date头
+     * @return 例如: "Tue, 15 Nov 1994 08:12:31 GMT"
+     */
+    public static String currentDate() {
+        CachedDate date = current;
+        long second = System.currentTimeMillis() / 1000;
+        if (date.second != second) {
+            date = format(second);
+            current = date;
+        }
+        return date.text;
+    }
+
+    static CachedDate format(long second) {
+        return new CachedDate(second, DateUtils.formatDateTimeGMT(second * 1000));
+    }
+
+    record CachedDate(long second, String text) {
+    }
+}
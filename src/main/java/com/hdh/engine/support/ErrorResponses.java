@@ -0,0 +1,79 @@
+package com.hdh.engine.support;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 默认错误页
+ * 响应体预先生成为字节数组并按状态码缓存, 同一状态码的错误响应共享同一个数组, 按实际长度写出
+ * 不包含请求路径等请求相关的内容, 大量404等错误请求时不产生额外的字符串拼接和编码
+ */
+public final class ErrorResponses {
+
+    private static final byte[][] BODIES = new byte[600][];
+
+    static {
+        // 常见的错误状态码启动时生成, 其他的第一次使用时生成
+        for (int status : new int[]{400, 401, 403, 404, 405, 408, 413, 414, 429, 500, 501, 502, 503, 504}) {
+            BODIES[status] = render(status);
+        }
+    }
+
+    private ErrorResponses() {
+    }
+
+    /**
+     * 获取状态码对应的默认错误页, 调用者不能修改返回的数组
+     */
+    public static byte[] body(int status) {
+        if (status < 0 || status >= BODIES.length) {
+            return render(status);
+        }
+        byte[] body = BODIES[status];
+        if (body == null) {
+            // 并发时可能重复生成, 内容相同, 不需要同步
+            body = render(status);
+            BODIES[status] = body;
+        }
+        return body;
+    }
+
+    private static byte[] render(int status) {
+        String title = status + " " + reason(status);
+        String html = "<!doctype html><html><head><title>" + title + "</title></head><body><h1>" + title + "</h1></body></html>";
+        return html.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取状态码的原因短语, 未知状态码返回""
+     */
+    public static String reason(int status) {
+        return switch (status) {
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 408 -> "Request Timeout";
+            case 409 -> "Conflict";
+            case 410 -> "Gone";
+            case 413 -> "Content Too Large";
+            case 414 -> "URI Too Long";
+            case 415 -> "Unsupported Media Type";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "";
+        };
+    }
+}
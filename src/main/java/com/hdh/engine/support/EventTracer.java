@@ -0,0 +1,59 @@
+package com.hdh.engine.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Listener事件跟踪
+ * 只在 com.hdh.engine.events 日志级别为TRACE时记录, 并按采样率抽样, 默认关闭时只有一次级别判断的开销
+ * 采样率通过系统属性配置, 例如: -Dtomdog.eventTraceSampleRate=100 表示每100个事件记录1个
+ */
+public class EventTracer {
+
+    final Logger logger = LoggerFactory.getLogger("com.hdh.engine.events");
+    final int sampleRate;
+
+    public EventTracer() {
+        this(Integer.getInteger("tomdog.eventTraceSampleRate", 1));
+    }
+
+    public EventTracer(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate必须大于0");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * 本次事件是否需要记录
+     */
+    public boolean isSampled() {
+        if (!this.logger.isTraceEnabled()) {
+            return false;
+        }
+        return this.sampleRate == 1 || ThreadLocalRandom.current().nextInt(this.sampleRate) == 0;
+    }
+
+    /**
+     * 记录事件, 调用前应先调用isSampled()
+     * @param event 事件名称
+     * @param listeners 监听器数量
+     * @param source 事件源
+     */
+    public void trace(String event, int listeners, Object source) {
+        this.logger.trace("event={} listeners={} source={}", event, listeners, source);
+    }
+
+    /**
+     * 记录属性事件, 调用前应先调用isSampled()
+     * @param event 事件名称
+     * @param listeners 监听器数量
+     * @param source 事件源
+     * @param name 属性名
+     */
+    public void trace(String event, int listeners, Object source, String name) {
+        this.logger.trace("event={} listeners={} source={} attribute={}", event, listeners, source, name);
+    }
+}
@@ -9,19 +9,36 @@ import java.util.Set;
 
 public class HttpHeaders {
 
-    final Headers headers;
+    Headers headers;
 
     public HttpHeaders(Headers headers) {
         this.headers = headers;
     }
 
+    /**
+     * 复用时绑定新的Headers, 传入null表示已回收
+     */
+    public void reset(Headers headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * 获取底层Headers, 回收后访问时抛出异常
+     */
+    Headers headers() {
+        if (this.headers == null) {
+            throw new IllegalStateException("Headers已回收");
+        }
+        return this.headers;
+    }
+
     public void addDateHeader(String name, long date) {
         String strDate = DateUtils.formatDateTimeGMT(date);
         addHeader(name, strDate);
     }
 
     public void addHeader(String name, String value) {
-        this.headers.add(name, value);
+        headers().add(name, value);
     }
 
     public void addIntHeader(String name, int value) {
@@ -29,7 +46,7 @@ public class HttpHeaders {
     }
 
     public boolean containsHeader(String name) {
-        List<String> values = this.headers.get(name);
+        List<String> values = headers().get(name);
         return values != null && !values.isEmpty();
     }
 
@@ -45,22 +62,39 @@ public class HttpHeaders {
         }
     }
 
+    /**
+     * 获取Content-Length, 没有或者不是合法的非负整数时返回-1
+     * 使用long, 超过2GB的请求体也能表示
+     */
+    public long getContentLength() {
+        String value = getHeader("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(value.strip());
+            return length < 0 ? -1 : length;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     public int getIntHeader(String name) {
         String value = getHeader(name);
         return value == null ? -1 : Integer.parseInt(value);
     }
 
     public String getHeader(String name) {
-        List<String> values = this.headers.get(name);
+        List<String> values = headers().get(name);
         return values == null || values.isEmpty() ? null : values.get(0);
     }
 
     public List<String> getHeaders(String name) {
-        return this.headers.get(name);
+        return headers().get(name);
     }
 
     public Set<String> getHeaderNames() {
-        return this.headers.keySet();
+        return headers().keySet();
     }
 
     public void setDateHeader(String name, long date) {
@@ -68,7 +102,7 @@ public class HttpHeaders {
     }
 
     public void setHeader(String name, String value) {
-        this.headers.set(name, value);
+        headers().set(name, value);
     }
 
     public void setIntHeader(String name, int value) {
@@ -76,6 +110,6 @@ public class HttpHeaders {
     }
 
     public void clearHeaders() {
-        this.headers.clear();
+        headers().clear();
     }
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.hdh.engine.support;
+
+/**
+ * 组件实例提供者, 供依赖注入框架接管Servlet/Filter/Listener等组件的创建
+ * 通过ServletContextImpl.setInstanceProvider()设置, 或者通过ServiceLoader注册
+ * (META-INF/services/com.hdh.engine.support.InstanceProvider).
+ */
+public interface InstanceProvider {
+
+    /**
+     * 创建组件实例
+     * @return 组件实例, 返回null时由容器调用无参构造方法创建
+     */
+    <T> T getInstance(Class<T> clazz) throws Exception;
+}
@@ -57,6 +57,15 @@ public class LazyMap<V> {
         return null;
     }
 
+    /**
+     * 清空数据, 保留已创建的Map以便复用
+     */
+    protected void clear() {
+        if (this.map != null) {
+            this.map.clear();
+        }
+    }
+
     protected Map<String, V> map() {
         if (this.map == null) {
             return Map.of();
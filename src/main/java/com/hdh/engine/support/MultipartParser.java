@@ -0,0 +1,255 @@
+package com.hdh.engine.support;
+
+import com.hdh.engine.PartImpl;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.http.Part;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * multipart/form-data 流式解析器
+ * 使用 Boyer-Moore-Horspool 算法在输入流上查找边界, 解析过程中只保留一个固定大小的缓冲区,
+ * 小的分块保存在内存中, 超过阈值的分块写入临时文件
+ */
+public class MultipartParser {
+
+    static final int BUFFER_SIZE = 8192;
+    static final int MAX_HEADER_SIZE = 8192; // 每个分块头部的最大字节数
+
+    final InputStream input;
+    final MultipartConfigElement config;
+    final File location;
+
+    final byte[] delimiter; // 分隔符: CRLF + "--" + boundary
+    final int[] shift = new int[256]; // Horspool 跳转表
+
+    byte[] buf;
+    int pos = 0;
+    int limit = 0;
+    long totalRead = 0;
+
+    public MultipartParser(InputStream input, String boundary, MultipartConfigElement config, File location) {
+        this.input = input;
+        this.config = config;
+        this.location = location;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        int n = this.delimiter.length;
+        Arrays.fill(this.shift, n);
+        for (int i = 0; i < n - 1; i++) {
+            this.shift[this.delimiter[i] & 0xff] = n - 1 - i;
+        }
+        this.buf = new byte[Math.max(BUFFER_SIZE, n * 2)];
+    }
+
+    /**
+     * 从 Content-Type 中获取 boundary
+     * @param contentType 例如: multipart/form-data; boundary=----abc
+     * @return boundary, 不存在时返回null
+     */
+    public static String getBoundary(String contentType) {
+        return getHeaderParameter(contentType, "boundary");
+    }
+
+    /**
+     * 获取头部值中的参数
+     * @param value 头部值, 例如: form-data; name="file"; filename="a.txt"
+     * @param name 参数名
+     * @return 参数值, 不存在时返回null
+     */
+    public static String getHeaderParameter(String value, String name) {
+        if (value == null) {
+            return null;
+        }
+        int start = value.indexOf(';');
+        while (start >= 0) {
+            int end = value.indexOf(';', start + 1);
+            String param = (end < 0 ? value.substring(start + 1) : value.substring(start + 1, end)).strip();
+            int eq = param.indexOf('=');
+            if (eq > 0 && param.substring(0, eq).strip().equalsIgnoreCase(name)) {
+                String v = param.substring(eq + 1).strip();
+                if (v.length() >= 2 && v.charAt(0) == '"' && v.charAt(v.length() - 1) == '"') {
+                    v = v.substring(1, v.length() - 1);
+                }
+                return v;
+            }
+            start = end;
+        }
+        return null;
+    }
+
+    /**
+     * 解析全部分块
+     * @return 分块列表
+     * @throws IOException 读取失败或数据格式错误
+     * @throws IllegalStateException 超过 MultipartConfigElement 配置的大小限制
+     */
+    public List<Part> parse() throws IOException {
+        // 在流前面放一个CRLF, 使第一个边界也能按分隔符匹配
+        this.buf[0] = '\r';
+        this.buf[1] = '\n';
+        this.limit = 2;
+        // 跳过前导内容
+        if (!skipToDelimiter()) {
+            throw new IOException("找不到multipart边界");
+        }
+        List<Part> parts = new ArrayList<>();
+        try {
+            for (;;) {
+                ensure(2);
+                if (this.buf[this.pos] == '-' && this.buf[this.pos + 1] == '-') {
+                    // 结束边界
+                    break;
+                }
+                // 跳过边界行剩余内容
+                readLine();
+                PartImpl part = readHeaders();
+                parts.add(part);
+                readBody(part);
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Part part : parts) {
+                part.delete();
+            }
+            throw e;
+        }
+        return parts;
+    }
+
+    PartImpl readHeaders() throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        int size = 0;
+        for (;;) {
+            String line = readLine();
+            if (line.isEmpty()) {
+                break;
+            }
+            size += line.length() + 2;
+            if (size > MAX_HEADER_SIZE) {
+                throw new IOException("multipart头部过大");
+            }
+            int n = line.indexOf(':');
+            if (n > 0) {
+                String name = line.substring(0, n).strip().toLowerCase(Locale.ROOT);
+                headers.computeIfAbsent(name, k -> new ArrayList<>(1)).add(line.substring(n + 1).strip());
+            }
+        }
+        return new PartImpl(headers, this.config.getFileSizeThreshold(), this.config.getMaxFileSize(), this.location);
+    }
+
+    void readBody(PartImpl part) throws IOException {
+        try {
+            int n = this.delimiter.length;
+            for (;;) {
+                int index = indexOfDelimiter();
+                if (index >= 0) {
+                    part.write(this.buf, this.pos, index - this.pos);
+                    this.pos = index + n;
+                    return;
+                }
+                // 末尾 n-1 个字节可能是分隔符的前缀, 保留到下一次查找
+                int safe = this.limit - (n - 1);
+                if (safe > this.pos) {
+                    part.write(this.buf, this.pos, safe - this.pos);
+                    this.pos = safe;
+                }
+                if (!fill()) {
+                    throw new IOException("multipart数据不完整");
+                }
+            }
+        } finally {
+            part.finish();
+        }
+    }
+
+    boolean skipToDelimiter() throws IOException {
+        int n = this.delimiter.length;
+        for (;;) {
+            int index = indexOfDelimiter();
+            if (index >= 0) {
+                this.pos = index + n;
+                return true;
+            }
+            this.pos = Math.max(this.pos, this.limit - (n - 1));
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Horspool 查找分隔符
+     * @return 分隔符在缓冲区中的位置, 未找到返回-1
+     */
+    int indexOfDelimiter() {
+        byte[] d = this.delimiter;
+        int last = d.length - 1;
+        int i = this.pos;
+        while (i + last < this.limit) {
+            int j = last;
+            while (this.buf[i + j] == d[j]) {
+                if (j == 0) {
+                    return i;
+                }
+                j--;
+            }
+            i += this.shift[this.buf[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * 读取一行(不包含CRLF), 只用于边界行和头部
+     */
+    String readLine() throws IOException {
+        for (;;) {
+            for (int i = this.pos; i + 1 < this.limit; i++) {
+                if (this.buf[i] == '\r' && this.buf[i + 1] == '\n') {
+                    String line = new String(this.buf, this.pos, i - this.pos, StandardCharsets.UTF_8);
+                    this.pos = i + 2;
+                    return line;
+                }
+            }
+            if (this.limit - this.pos >= this.buf.length) {
+                throw new IOException("multipart头部过大");
+            }
+            if (!fill()) {
+                throw new IOException("multipart数据不完整");
+            }
+        }
+    }
+
+    void ensure(int n) throws IOException {
+        while (this.limit - this.pos < n) {
+            if (!fill()) {
+                throw new IOException("multipart数据不完整");
+            }
+        }
+    }
+
+    /**
+     * 压缩缓冲区并从输入流读取更多数据
+     * @return 是否读取到数据
+     */
+    boolean fill() throws IOException {
+        if (this.pos > 0) {
+            System.arraycopy(this.buf, this.pos, this.buf, 0, this.limit - this.pos);
+            this.limit -= this.pos;
+            this.pos = 0;
+        }
+        int n = this.input.read(this.buf, this.limit, this.buf.length - this.limit);
+        if (n <= 0) {
+            return false;
+        }
+        this.limit += n;
+        this.totalRead += n;
+        long maxRequestSize = this.config.getMaxRequestSize();
+        if (maxRequestSize > 0 && this.totalRead > maxRequestSize) {
+            throw new IllegalStateException("请求大小超过上限: " + maxRequestSize);
+        }
+        return true;
+    }
+}
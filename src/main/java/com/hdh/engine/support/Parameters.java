@@ -19,6 +19,14 @@ public class Parameters {
         this.charset = Charset.forName(charset);
     }
 
+    /**
+     * 复用时清除已解析的参数
+     */
+    public void reset(String charset) {
+        this.charset = Charset.forName(charset);
+        this.parameters = null;
+    }
+
     public void setCharset(String charset) {
         this.charset = Charset.forName(charset);
     }
@@ -60,43 +68,28 @@ public class Parameters {
      * @return 参数Map
      */
     Map<String, String[]> initParameters() {
-        Map<String, List<String>> params = new HashMap<>();
+        Map<String, String[]> params = new HashMap<>();
         String query = this.exchangeRequest.getRequestURI().getRawQuery();
-        if (query != null) {
-            params = HttpUtils.parseQuery(query, charset);
+        if (query != null && !query.isEmpty()) {
+            byte[] data = query.getBytes(charset);
+            HttpUtils.parseQuery(data, 0, data.length, charset, params);
         }
         if ("POST".equals(this.exchangeRequest.getRequestMethod())) {
             String value = HttpUtils.getHeader(this.exchangeRequest.getRequestHeaders(), "Content-Type");
-            // 当Content-Type为表单提交时，解析body中的参数
+            // 当Content-Type为表单提交时，直接从body字节解析参数, 同名参数追加到query参数之后
             if (value != null && value.startsWith("application/x-www-form-urlencoded")) {
-                String requestBody;
+                byte[] body;
                 try {
-                    requestBody = new String(this.exchangeRequest.getRequestBody(), charset);
+                    body = this.exchangeRequest.getRequestBody();
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
                 }
-                Map<String, List<String>> postParams = HttpUtils.parseQuery(requestBody, charset);
-                // 合并query和post参数
-                for (String key : postParams.keySet()) {
-                    List<String> postValues = postParams.get(key);
-                    List<String> queryValues = params.get(key);
-                    if (queryValues == null) {
-                        params.put(key, postValues);
-                    } else {
-                        queryValues.addAll(postValues);
-                    }
-                }
+                HttpUtils.parseQuery(body, 0, body.length, charset, params);
             }
         }
         if (params.isEmpty()) {
             return Map.of();
         }
-        // List<String> -> String[]
-        Map<String, String[]> paramsMap = new HashMap<>();
-        for (String key : params.keySet()) {
-            List<String> values = params.get(key);
-            paramsMap.put(key, values.toArray(String[]::new));
-        }
-        return paramsMap;
+        return params;
     }
 }
@@ -2,7 +2,9 @@ package com.hdh.engine.utils;
 
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
+import jakarta.servlet.MultipartConfigElement;
 import jakarta.servlet.Servlet;
+import jakarta.servlet.annotation.MultipartConfig;
 import jakarta.servlet.annotation.WebFilter;
 import jakarta.servlet.annotation.WebInitParam;
 import jakarta.servlet.annotation.WebServlet;
@@ -44,6 +46,11 @@ public class AnnoUtils {
         return initParamsToMap(w.initParams());
     }
 
+    public static int getServletLoadOnStartup(Class<? extends Servlet> clazz) {
+        WebServlet w = clazz.getAnnotation(WebServlet.class);
+        return w == null ? -1 : w.loadOnStartup();
+    }
+
     public static String[] getServletUrlPatterns(Class<? extends Servlet> clazz) {
         WebServlet w = clazz.getAnnotation(WebServlet.class);
         if (w == null) {
@@ -68,6 +75,18 @@ public class AnnoUtils {
         return EnumSet.copyOf(Arrays.asList(w.dispatcherTypes()));
     }
 
+    /**
+     * 获取Servlet的multipart配置
+     * @return 没有@MultipartConfig注解时返回null
+     */
+    public static MultipartConfigElement getServletMultipartConfig(Class<? extends Servlet> clazz) {
+        MultipartConfig m = clazz.getAnnotation(MultipartConfig.class);
+        if (m == null) {
+            return null;
+        }
+        return new MultipartConfigElement(m);
+    }
+
     private static String defaultNameByClass(Class<?> clazz) {
         String name = clazz.getSimpleName();
         name = Character.toLowerCase(name.charAt(0)) + name.substring(1);
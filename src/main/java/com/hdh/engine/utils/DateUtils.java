@@ -1,5 +1,6 @@
 package com.hdh.engine.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -9,6 +10,15 @@ import java.time.format.DateTimeFormatter;
 public class DateUtils {
 
     static final ZoneId GMT = ZoneId.of("Z");
+    static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(GMT);
+
+    /**
+     * RFC-1123 时间字符串长度, 例如: "Tue, 15 Nov 1994 08:12:31 GMT"
+     */
+    public static final int GMT_LENGTH = 29;
+
+    static final byte[] DAY_NAMES = "MonTueWedThuFriSatSun".getBytes(StandardCharsets.ISO_8859_1);
+    static final byte[] MONTH_NAMES = "JanFebMarAprMayJunJulAugSepOctNovDec".getBytes(StandardCharsets.ISO_8859_1);
 
     /**
      * 解析GMT时间字符串
@@ -16,6 +26,11 @@ public class DateUtils {
      * @return 毫秒时间戳
      */
     public static long parseDateTimeGMT(String s) {
+        long ts = parseFixedDateTimeGMT(s);
+        if (ts != Long.MIN_VALUE) {
+            return ts;
+        }
+        // 非标准格式(例如日期只有一位数字)交给DateTimeFormatter处理
         ZonedDateTime zdt = ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME);
         return zdt.toInstant().toEpochMilli();
     }
@@ -26,8 +41,138 @@ public class DateUtils {
      * @return GMT时间字符串, 例如: "Tue, 15 Nov 1994 08:12:31 GMT"
      */
     public static String formatDateTimeGMT(long ts) {
-        ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts), GMT);
-        return zdt.format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        byte[] buf = new byte[GMT_LENGTH];
+        if (formatDateTimeGMT(ts, buf, 0) < 0) {
+            ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts), GMT);
+            return zdt.format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        }
+        return new String(buf, 0, GMT_LENGTH, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 格式化时间戳为GMT时间, 直接写入字节数组, 不分配对象
+     * @param ts 毫秒时间戳
+     * @param buf 目标数组, 从off开始至少有29个字节
+     * @param off 起始位置
+     * @return 写入的字节数, 年份超出0~9999时返回-1
+     */
+    public static int formatDateTimeGMT(long ts, byte[] buf, int off) {
+        long seconds = Math.floorDiv(ts, 1000);
+        long days = Math.floorDiv(seconds, 86400);
+        int secondOfDay = Math.floorMod(seconds, 86400);
+        // 1970-01-01 是星期四, 按周一为0计算
+        int dayOfWeek = Math.floorMod(days + 3, 7);
+        // 由纪元天数计算年月日
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        int hour = secondOfDay / 3600;
+        int minute = secondOfDay / 60 % 60;
+        int second = secondOfDay % 60;
+
+        int i = off;
+        buf[i++] = DAY_NAMES[dayOfWeek * 3];
+        buf[i++] = DAY_NAMES[dayOfWeek * 3 + 1];
+        buf[i++] = DAY_NAMES[dayOfWeek * 3 + 2];
+        buf[i++] = ',';
+        buf[i++] = ' ';
+        i = write2Digits(buf, i, day);
+        buf[i++] = ' ';
+        buf[i++] = MONTH_NAMES[(month - 1) * 3];
+        buf[i++] = MONTH_NAMES[(month - 1) * 3 + 1];
+        buf[i++] = MONTH_NAMES[(month - 1) * 3 + 2];
+        buf[i++] = ' ';
+        i = write2Digits(buf, i, (int) (year / 100));
+        i = write2Digits(buf, i, (int) (year % 100));
+        buf[i++] = ' ';
+        i = write2Digits(buf, i, hour);
+        buf[i++] = ':';
+        i = write2Digits(buf, i, minute);
+        buf[i++] = ':';
+        i = write2Digits(buf, i, second);
+        buf[i++] = ' ';
+        buf[i++] = 'G';
+        buf[i++] = 'M';
+        buf[i++] = 'T';
+        return i - off;
+    }
+
+    /**
+     * 解析固定格式的GMT时间字符串
+     * 只处理字段都合法且星期与日期一致的输入, 其他情况(例如2月31日、闰秒、星期不符)返回Long.MIN_VALUE,
+     * 交给DateTimeFormatter按原来的规则处理
+     * @return 毫秒时间戳, 格式不符时返回Long.MIN_VALUE
+     */
+    static long parseFixedDateTimeGMT(String s) {
+        if (s == null || s.length() != GMT_LENGTH || s.charAt(3) != ',' || s.charAt(4) != ' ' || s.charAt(7) != ' '
+                || s.charAt(11) != ' ' || s.charAt(16) != ' ' || s.charAt(19) != ':' || s.charAt(22) != ':'
+                || !s.endsWith(" GMT")) {
+            return Long.MIN_VALUE;
+        }
+        int day = parseDigits(s, 5, 2);
+        int month = -1;
+        for (int m = 0; m < 12; m++) {
+            if (s.charAt(8) == MONTH_NAMES[m * 3] && s.charAt(9) == MONTH_NAMES[m * 3 + 1] && s.charAt(10) == MONTH_NAMES[m * 3 + 2]) {
+                month = m + 1;
+                break;
+            }
+        }
+        int year = parseDigits(s, 12, 4);
+        int hour = parseDigits(s, 17, 2);
+        int minute = parseDigits(s, 20, 2);
+        int second = parseDigits(s, 23, 2);
+        if (month < 0 || year < 0 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59
+                || day < 1 || day > lengthOfMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        // 由年月日计算纪元天数
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097 + doe - 719468;
+        int dayOfWeek = Math.floorMod(days + 3, 7);
+        if (s.charAt(0) != DAY_NAMES[dayOfWeek * 3] || s.charAt(1) != DAY_NAMES[dayOfWeek * 3 + 1]
+                || s.charAt(2) != DAY_NAMES[dayOfWeek * 3 + 2]) {
+            return Long.MIN_VALUE;
+        }
+        return (days * 86400 + hour * 3600L + minute * 60L + second) * 1000;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static int parseDigits(String s, int start, int count) {
+        int n = 0;
+        for (int i = start; i < start + count; i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') {
+                return -1;
+            }
+            n = n * 10 + (ch - '0');
+        }
+        return n;
+    }
+
+    private static int write2Digits(byte[] buf, int i, int n) {
+        buf[i++] = (byte) ('0' + n / 10);
+        buf[i++] = (byte) ('0' + n % 10);
+        return i;
     }
 
     /**
@@ -36,7 +181,7 @@ public class DateUtils {
      * @return 毫秒时间戳
      */
     public static long parseDateTime(String s) {
-        ZonedDateTime zdt = ZonedDateTime.parse(s, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        ZonedDateTime zdt = ZonedDateTime.parse(s, DATE_TIME_FORMATTER);
         return zdt.toInstant().toEpochMilli();
     }
 
@@ -46,7 +191,6 @@ public class DateUtils {
      * @return 格式化后的时间字符串
      */
     public static String formatDateTime(long ts) {
-        ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts), GMT);
-        return zdt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+        return DATE_TIME_FORMATTER.format(Instant.ofEpochMilli(ts));
     }
 }
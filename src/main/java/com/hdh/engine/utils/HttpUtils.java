@@ -2,48 +2,206 @@ package com.hdh.engine.utils;
 
 import com.sun.net.httpserver.Headers;
 import jakarta.servlet.http.Cookie;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.net.URLDecoder;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 public class HttpUtils {
 
-    static final Pattern QUERY_SPLIT = Pattern.compile("&");
+    private static final Logger logger = LoggerFactory.getLogger(HttpUtils.class);
+
+    static final int MAX_PARAMETER_COUNT = 1000; // 单次解析的最大参数数量, 防止哈希碰撞攻击
+    static final int MAX_KEY_LENGTH = 1024; // 参数名最大字节数
+    static final int MAX_VALUE_LENGTH = 1024 * 1024; // 参数值最大字节数
+
+    private static volatile boolean parameterWarned; // 参数解析问题只记录一次WARN, 之后记录DEBUG, 避免客户端刷日志
 
     /**
      * 解析查询参数
-     * @param query 查询参数
+     * @param query 查询参数, 例如: a=1&b=2&b=3
      * @param charset 字符集
      * @return 参数Map
      */
-    public static Map<String, List<String>> parseQuery(String query, Charset charset) {
+    public static Map<String, String[]> parseQuery(String query, Charset charset) {
         if (query == null || query.isEmpty()) {
             return Map.of();
         }
-        String[] ss = QUERY_SPLIT.split(query);
-        Map<String, List<String>> map = new HashMap<>();
-        for (String s : ss) {
-            int n = s.indexOf('=');
-            if (n >= 1) {
-                String key = s.substring(0, n);
-                String value = s.substring(n + 1);
-                List<String> exist = map.computeIfAbsent(key, k -> new ArrayList<>(4));
-                exist.add(URLDecoder.decode(value, charset));
-            }
-        }
+        Map<String, String[]> map = new HashMap<>();
+        // rawQuery中只有ASCII和少量未编码字符, 用同一字符集编码再解码可以保持原样
+        byte[] data = query.getBytes(charset);
+        parseQuery(data, 0, data.length, charset, map);
         return map;
     }
 
-    public static Map<String, List<String>> parseQuery(String query) {
+    public static Map<String, String[]> parseQuery(String query) {
         return parseQuery(query, StandardCharsets.UTF_8);
     }
 
+    /**
+     * 直接从字节解析 application/x-www-form-urlencoded 格式的参数, 结果合并到map中
+     * 单次扫描完成分割与百分号解码, 不含'%'和'+'的片段不做解码直接转换为字符串
+     * 与Tomcat一致: 没有'='的参数值为空字符串; 参数名或参数值过长、百分号编码不合法的参数被跳过,
+     * 超过参数数量上限后忽略剩余参数, 不抛出异常
+     * @param data 字节数据
+     * @param off 起始位置
+     * @param len 长度
+     * @param charset 字符集
+     * @param map 存放结果的Map, 同名参数追加到已有数组后面
+     */
+    public static void parseQuery(byte[] data, int off, int len, Charset charset, Map<String, String[]> map) {
+        int end = off + len;
+        int count = 0;
+        byte[] buffer = null; // 解码缓冲区, 需要时才创建, 整个解析过程复用
+        int pos = off;
+        while (pos < end) {
+            int keyStart = pos;
+            int keyEnd = -1;
+            boolean keyEncoded = false;
+            boolean valueEncoded = false;
+            // 扫描一个 key=value 片段
+            while (pos < end) {
+                byte b = data[pos];
+                if (b == '&') {
+                    break;
+                }
+                if (b == '=' && keyEnd < 0) {
+                    keyEnd = pos;
+                } else if (b == '%' || b == '+') {
+                    if (keyEnd < 0) {
+                        keyEncoded = true;
+                    } else {
+                        valueEncoded = true;
+                    }
+                }
+                pos++;
+            }
+            int valueStart;
+            int valueEnd = pos;
+            if (keyEnd < 0) {
+                // 没有'='时, 值为空字符串
+                keyEnd = pos;
+                valueStart = pos;
+            } else {
+                valueStart = keyEnd + 1;
+            }
+            pos++; // 跳过'&'
+            int keyLength = keyEnd - keyStart;
+            if (keyLength == 0) {
+                continue;
+            }
+            if (++count > MAX_PARAMETER_COUNT) {
+                logParameterProblem("参数数量超过上限 {}, 忽略剩余参数", MAX_PARAMETER_COUNT);
+                return;
+            }
+            int valueLength = valueEnd - valueStart;
+            if (keyLength > MAX_KEY_LENGTH) {
+                logParameterProblem("参数名长度超过上限 {}, 跳过该参数", MAX_KEY_LENGTH);
+                continue;
+            }
+            if (valueLength > MAX_VALUE_LENGTH) {
+                logParameterProblem("参数值长度超过上限 {}, 跳过该参数", MAX_VALUE_LENGTH);
+                continue;
+            }
+            if (keyEncoded || valueEncoded) {
+                int required = Math.max(keyLength, valueLength);
+                if (buffer == null || buffer.length < required) {
+                    buffer = new byte[required];
+                }
+            }
+            String key = keyEncoded ? decode(data, keyStart, keyEnd, buffer, charset) : new String(data, keyStart, keyLength, charset);
+            String value;
+            if (valueLength == 0) {
+                value = "";
+            } else {
+                value = valueEncoded ? decode(data, valueStart, valueEnd, buffer, charset) : new String(data, valueStart, valueLength, charset);
+            }
+            if (key == null || value == null) {
+                logParameterProblem("百分号编码不合法, 跳过参数: {}", new String(data, keyStart, keyLength, StandardCharsets.ISO_8859_1));
+                continue;
+            }
+            String[] exist = map.get(key);
+            if (exist == null) {
+                map.put(key, new String[] { value });
+            } else {
+                // 同名参数较少出现, 直接复制数组追加
+                String[] values = Arrays.copyOf(exist, exist.length + 1);
+                values[exist.length] = value;
+                map.put(key, values);
+            }
+        }
+    }
+
+    /**
+     * 百分号解码, '+'解码为空格
+     * @param data 字节数据
+     * @param start 起始位置
+     * @param end 结束位置(不包含)
+     * @param buffer 解码缓冲区, 长度不小于 end - start
+     * @param charset 字符集
+     * @return 解码后的字符串, 百分号编码不完整或不合法时返回null
+     */
+    static String decode(byte[] data, int start, int end, byte[] buffer, Charset charset) {
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '+') {
+                buffer[n++] = ' ';
+            } else if (b == '%') {
+                if (i + 2 >= end) {
+                    return null;
+                }
+                int hi = Character.digit(data[i + 1], 16);
+                int lo = Character.digit(data[i + 2], 16);
+                if (hi < 0 || lo < 0) {
+                    return null;
+                }
+                buffer[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                buffer[n++] = b;
+            }
+        }
+        return new String(buffer, 0, n, charset);
+    }
+
+    private static void logParameterProblem(String message, Object arg) {
+        if (!parameterWarned) {
+            parameterWarned = true;
+            logger.warn(message + " (之后同类问题记录为DEBUG)", arg);
+        } else {
+            logger.debug(message, arg);
+        }
+    }
+
+    /**
+     * 异常是否由连接被关闭引起, 例如客户端断开、读取请求超时被HttpServer关闭连接
+     * 这类异常不是应用错误, 也无法再写出错误响应
+     */
+    public static boolean isConnectionClosed(Throwable e) {
+        for (int depth = 0; e != null && depth < 8; e = e.getCause(), depth++) {
+            if (e instanceof ClosedChannelException) {
+                return true;
+            }
+            if (e instanceof IOException) {
+                String message = e.getMessage();
+                if (message != null && (message.equals("stream is closed") || message.equals("Stream closed")
+                        || message.startsWith("Broken pipe") || message.startsWith("Connection reset"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public static String getHeader(Headers headers, String name) {
         List<String> values = headers.get(name);
         return values == null || values.isEmpty() ? null : values.get(0);
@@ -78,4 +236,58 @@ public class HttpUtils {
         }
         return cookies;
     }
+
+    /**
+     * 从Host请求头中取出主机名, 转为小写, 去掉端口; IPv6地址保留方括号
+     * @return Host为空时返回null
+     */
+    public static String parseHostName(String host) {
+        if (host == null || host.isEmpty()) {
+            return null;
+        }
+        int end = host.length();
+        if (host.charAt(0) == '[') {
+            int n = host.indexOf(']');
+            end = n < 0 ? end : n + 1;
+        } else {
+            int n = host.lastIndexOf(':');
+            end = n < 0 ? end : n;
+        }
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--; // 完整域名末尾的点
+        }
+        return host.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 从Host请求头中取出端口
+     * @return 没有端口或者端口不合法时返回-1
+     */
+    public static int parseHostPort(String host) {
+        if (host == null) {
+            return -1;
+        }
+        int n = host.lastIndexOf(':');
+        if (n < 0 || host.indexOf(']', n) >= 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(host, n + 1, host.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析相对路径, 以/开头的路径原样返回
+     * @param base 当前路径, 例如: /a/b
+     * @param path 相对路径, 例如: c 解析为 /a/c
+     */
+    public static String resolvePath(String base, String path) {
+        if (path.startsWith("/")) {
+            return path;
+        }
+        int n = base.lastIndexOf('/');
+        return n < 0 ? "/" + path : base.substring(0, n + 1) + path;
+    }
 }
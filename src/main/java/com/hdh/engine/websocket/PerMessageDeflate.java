@@ -0,0 +1,137 @@
+package com.hdh.engine.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * permessage-deflate扩展 (RFC 7692)
+ * 协商时双方都不保留压缩上下文(no_context_takeover), 每条消息独立压缩, 同样的内容压缩结果相同, 广播时只需压缩一次.
+ * 因为不保留上下文, Deflater/Inflater不属于某个会话, 所有会话共用一个编解码器池, 空闲会话不占用压缩状态.
+ */
+final class PerMessageDeflate {
+
+    static final PerMessageDeflate INSTANCE = new PerMessageDeflate();
+
+    static final String EXTENSION = "permessage-deflate";
+    static final String RESPONSE = "permessage-deflate; server_no_context_takeover; client_no_context_takeover";
+    static final int MIN_COMPRESS_SIZE = 64; // 小于这个长度的消息不压缩
+
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    // 池中最多保留的编解码器数, 超过的立即释放本地内存
+    private static final int MAX_POOLED_CODECS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final ArrayBlockingQueue<Codec> codecs = new ArrayBlockingQueue<>(MAX_POOLED_CODECS);
+
+    private PerMessageDeflate() {
+    }
+
+    /**
+     * 检查客户端的扩展请求, 返回是否接受permessage-deflate
+     * 不支持调整服务端窗口大小(Deflater固定15位窗口), 带server_max_window_bits参数的请求不接受
+     */
+    static boolean accept(String extensions) {
+        if (extensions == null) {
+            return false;
+        }
+        for (String offer : extensions.split(",")) {
+            String[] params = offer.split(";");
+            if (!params[0].trim().equalsIgnoreCase(EXTENSION)) {
+                continue;
+            }
+            boolean acceptable = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().toLowerCase();
+                if (param.startsWith("server_max_window_bits") && !param.endsWith("15")) {
+                    acceptable = false;
+                }
+            }
+            if (acceptable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 压缩一条消息, 去掉结尾的00 00 FF FF
+     */
+    byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        Codec codec = acquire();
+        try {
+            Deflater deflater = codec.deflater;
+            deflater.reset();
+            deflater.setInput(data);
+            int n;
+            do {
+                n = deflater.deflate(codec.chunk, 0, codec.chunk.length, Deflater.SYNC_FLUSH);
+                out.write(codec.chunk, 0, n);
+            } while (n == codec.chunk.length || !deflater.needsInput());
+        } finally {
+            release(codec);
+        }
+        byte[] compressed = out.toByteArray();
+        int length = compressed.length - TAIL.length;
+        byte[] result = new byte[length];
+        System.arraycopy(compressed, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * 解压一条消息
+     * @param maxSize 解压后的最大长度, 防止压缩炸弹
+     */
+    byte[] decompress(byte[] data, int off, int len, int maxSize) throws WebSocketException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, len * 2));
+        Codec codec = acquire();
+        try {
+            codec.inflater.reset();
+            inflate(codec, data, off, len, out, maxSize);
+            inflate(codec, TAIL, 0, TAIL.length, out, maxSize);
+        } catch (DataFormatException e) {
+            throw new WebSocketException(WebSocketSession.CLOSE_INVALID_DATA, "解压失败");
+        } finally {
+            release(codec);
+        }
+        return out.toByteArray();
+    }
+
+    private static void inflate(Codec codec, byte[] data, int off, int len, ByteArrayOutputStream out, int maxSize) throws DataFormatException, WebSocketException {
+        Inflater inflater = codec.inflater;
+        inflater.setInput(data, off, len);
+        while (!inflater.needsInput()) {
+            int n = inflater.inflate(codec.chunk);
+            if (n == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                break;
+            }
+            out.write(codec.chunk, 0, n);
+            if (out.size() > maxSize) {
+                throw new WebSocketException(WebSocketSession.CLOSE_TOO_BIG, "消息过大");
+            }
+        }
+    }
+
+    private static Codec acquire() {
+        Codec codec = codecs.poll();
+        return codec != null ? codec : new Codec();
+    }
+
+    private static void release(Codec codec) {
+        if (!codecs.offer(codec)) {
+            codec.deflater.end();
+            codec.inflater.end();
+        }
+    }
+
+    /**
+     * 一组压缩/解压状态, 同一时间只被一个线程使用
+     */
+    private static final class Codec {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        final Inflater inflater = new Inflater(true);
+        final byte[] chunk = new byte[8192];
+    }
+}
@@ -0,0 +1,25 @@
+package com.hdh.engine.websocket;
+
+/**
+ * WebSocket业务处理接口, 回调在工作线程执行, 同一个会话的回调不会并发
+ */
+public interface WebSocketEndpoint {
+
+    default void onOpen(WebSocketSession session) {
+    }
+
+    default void onText(WebSocketSession session, String text) {
+    }
+
+    default void onBinary(WebSocketSession session, byte[] data) {
+    }
+
+    /**
+     * 连接关闭, 没有收到关闭帧时code为1006
+     */
+    default void onClose(WebSocketSession session, int code, String reason) {
+    }
+
+    default void onError(WebSocketSession session, Throwable error) {
+    }
+}
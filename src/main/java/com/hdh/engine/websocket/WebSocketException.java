@@ -0,0 +1,16 @@
+package com.hdh.engine.websocket;
+
+import java.io.IOException;
+
+/**
+ * WebSocket协议错误, 携带关闭码
+ */
+class WebSocketException extends IOException {
+
+    final int code;
+
+    WebSocketException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+}
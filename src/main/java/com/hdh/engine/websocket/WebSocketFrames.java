@@ -0,0 +1,64 @@
+package com.hdh.engine.websocket;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * WebSocket帧的编码和掩码处理 (RFC 6455)
+ */
+final class WebSocketFrames {
+
+    static final int OP_CONTINUATION = 0x0;
+    static final int OP_TEXT = 0x1;
+    static final int OP_BINARY = 0x2;
+    static final int OP_CLOSE = 0x8;
+    static final int OP_PING = 0x9;
+    static final int OP_PONG = 0xA;
+
+    static final int MAX_CONTROL_PAYLOAD = 125;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private WebSocketFrames() {
+    }
+
+    /**
+     * 编码一个服务端帧(不带掩码), 返回的数组可以写给多个连接
+     */
+    static byte[] encode(int opcode, boolean rsv1, byte[] payload, int off, int len) {
+        int headerLength = len <= 125 ? 2 : len <= 0xFFFF ? 4 : 10;
+        byte[] frame = new byte[headerLength + len];
+        frame[0] = (byte) (0x80 | (rsv1 ? 0x40 : 0) | opcode);
+        if (len <= 125) {
+            frame[1] = (byte) len;
+        } else if (len <= 0xFFFF) {
+            frame[1] = 126;
+            frame[2] = (byte) (len >>> 8);
+            frame[3] = (byte) len;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) len >>> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(payload, off, frame, headerLength, len);
+        return frame;
+    }
+
+    /**
+     * 原地去掉客户端帧的掩码, 每次处理8个字节
+     * @param mask 4字节掩码在buf中的位置
+     */
+    static void unmask(byte[] buf, int mask, int off, int len) {
+        int key = (buf[mask] & 0xff) | (buf[mask + 1] & 0xff) << 8 | (buf[mask + 2] & 0xff) << 16 | (buf[mask + 3] & 0xff) << 24;
+        long key8 = (key & 0xffffffffL) | ((long) key << 32);
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            LONGS.set(buf, off + i, (long) LONGS.get(buf, off + i) ^ key8);
+        }
+        for (; i < len; i++) {
+            buf[off + i] ^= buf[mask + (i & 3)];
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.hdh.engine.websocket;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * WebSocket握手, 在Servlet中调用
+ */
+public final class WebSocketHandshake {
+
+    static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketHandshake() {
+    }
+
+    /**
+     * 校验握手请求并升级连接, Servlet返回后连接器写出101响应并开始WebSocket会话
+     * @return 创建的会话, 可以在Servlet返回前调整参数; 请求不是合法的握手请求时返回null, 已响应400
+     */
+    public static WebSocketSession upgrade(HttpServletRequest req, HttpServletResponse resp, WebSocketEndpoint endpoint) throws IOException, ServletException {
+        String key = req.getHeader("Sec-WebSocket-Key");
+        if (!"GET".equals(req.getMethod()) || key == null
+                || !headerContains(req.getHeader("Upgrade"), "websocket")
+                || !headerContains(req.getHeader("Connection"), "upgrade")) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+        if (!"13".equals(req.getHeader("Sec-WebSocket-Version"))) {
+            resp.setHeader("Sec-WebSocket-Version", "13");
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+        boolean deflate = PerMessageDeflate.accept(req.getHeader("Sec-WebSocket-Extensions"));
+        resp.setHeader("Upgrade", "websocket");
+        resp.setHeader("Connection", "Upgrade");
+        resp.setHeader("Sec-WebSocket-Accept", accept(key));
+        if (deflate) {
+            resp.setHeader("Sec-WebSocket-Extensions", PerMessageDeflate.RESPONSE);
+        }
+        WebSocketSession session = req.upgrade(WebSocketSession.class);
+        session.endpoint = endpoint;
+        if (deflate) {
+            session.deflate = PerMessageDeflate.INSTANCE;
+        }
+        return session;
+    }
+
+    /**
+     * 计算Sec-WebSocket-Accept
+     */
+    static String accept(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key.trim() + GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean headerContains(String header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String value : header.split(",")) {
+            if (value.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,502 @@
+package com.hdh.engine.websocket;
+
+import com.hdh.engine.support.BufferPool;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpUpgradeHandler;
+import jakarta.servlet.http.WebConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WebSocket会话, 通过HttpServletRequest.upgrade()创建
+ * 读写都是非阻塞的: 收到的数据在缓冲区中原地解析和去掩码; 发送时如果连接暂时不可写, 帧在会话中排队,
+ * 排队的字节数超过maxPendingBytes时认为客户端接收过慢, 直接断开连接.
+ */
+public class WebSocketSession implements HttpUpgradeHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketSession.class);
+    private static final AtomicLong ids = new AtomicLong();
+    private static final byte[] EMPTY = new byte[0];
+
+    public static final int CLOSE_NORMAL = 1000;
+    public static final int CLOSE_GOING_AWAY = 1001;
+    public static final int CLOSE_PROTOCOL_ERROR = 1002;
+    public static final int CLOSE_NO_STATUS = 1005;
+    public static final int CLOSE_ABNORMAL = 1006;
+    public static final int CLOSE_INVALID_DATA = 1007;
+    public static final int CLOSE_POLICY_VIOLATION = 1008;
+    public static final int CLOSE_TOO_BIG = 1009;
+
+    private final String id = Long.toString(ids.incrementAndGet());
+    private final Map<String, Object> userProperties = new ConcurrentHashMap<>();
+
+    WebSocketEndpoint endpoint;
+    PerMessageDeflate deflate; // 没有协商permessage-deflate时为null
+    int maxMessageSize = 1024 * 1024; // 消息最大长度, 分片消息按合并后的长度计算
+    long maxPendingBytes = 1024 * 1024; // 发送队列最大字节数
+
+    private WebConnection connection;
+    private ServletInputStream input;
+    private ServletOutputStream output;
+
+    // 读取状态, 只在读回调线程访问
+    private byte[] buffer = EMPTY; // 从BufferPool中取, 没有未解析的数据时还回, 空闲会话不持有缓冲区
+    private int start = 0;
+    private int end = 0;
+    private int messageOpcode = -1; // 正在接收的分片消息类型, -1表示没有
+    private boolean messageCompressed = false;
+    private byte[] message = new byte[0];
+    private int messageLength = 0;
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    // 发送状态, 通过this加锁
+    private final ArrayDeque<byte[]> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private boolean closeSent = false;
+
+    private volatile boolean open = false;
+    private volatile int closeCode = CLOSE_ABNORMAL;
+    private volatile String closeReason = "";
+
+    @Override
+    public void init(WebConnection wc) {
+        this.connection = wc;
+        try {
+            this.input = wc.getInputStream();
+            this.output = wc.getOutputStream();
+        } catch (IOException e) {
+            abort(e);
+            return;
+        }
+        this.open = true;
+        this.endpoint.onOpen(this);
+        this.output.setWriteListener(new WriteListener() {
+            @Override
+            public void onWritePossible() throws IOException {
+                drain();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                abort(t);
+            }
+        });
+        this.input.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                readFrames();
+            }
+
+            @Override
+            public void onAllDataRead() {
+                // 客户端没有发送关闭帧就断开了
+                abort(null);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                abort(t);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        boolean wasOpen = this.open;
+        this.open = false;
+        synchronized (this) {
+            this.queue.clear();
+            this.queuedBytes = 0;
+        }
+        if (wasOpen || this.closeSent) {
+            this.endpoint.onClose(this, this.closeCode, this.closeReason);
+        }
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    public Map<String, Object> getUserProperties() {
+        return this.userProperties;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * 发送文本消息
+     */
+    public void sendText(String text) throws IOException {
+        send(WebSocketFrames.OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 发送二进制消息
+     */
+    public void sendBinary(byte[] data) throws IOException {
+        send(WebSocketFrames.OP_BINARY, data);
+    }
+
+    public void sendPing(byte[] data) throws IOException {
+        if (data.length > WebSocketFrames.MAX_CONTROL_PAYLOAD) {
+            throw new IllegalArgumentException("控制帧数据不能超过125字节");
+        }
+        sendFrame(WebSocketFrames.encode(WebSocketFrames.OP_PING, false, data, 0, data.length));
+    }
+
+    /**
+     * 发送关闭帧, 收到客户端的关闭帧后断开连接
+     */
+    public void close(int code, String reason) throws IOException {
+        byte[] reasonBytes = reason == null ? new byte[0] : reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + Math.min(reasonBytes.length, WebSocketFrames.MAX_CONTROL_PAYLOAD - 2)];
+        payload[0] = (byte) (code >>> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(reasonBytes, 0, payload, 2, payload.length - 2);
+        synchronized (this) {
+            if (this.closeSent) {
+                return;
+            }
+            sendFrame(WebSocketFrames.encode(WebSocketFrames.OP_CLOSE, false, payload, 0, payload.length));
+            this.closeSent = true;
+        }
+    }
+
+    /**
+     * 向多个会话广播文本消息, 帧只编码(压缩)一次, 所有会话共享同一个字节数组
+     * 发送失败的会话(已关闭或接收过慢)会被跳过
+     */
+    public static void broadcast(Collection<WebSocketSession> sessions, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        byte[] plain = null;
+        byte[] compressed = null;
+        for (WebSocketSession session : sessions) {
+            if (!session.isOpen()) {
+                continue;
+            }
+            byte[] frame;
+            if (session.deflate != null && data.length >= PerMessageDeflate.MIN_COMPRESS_SIZE) {
+                if (compressed == null) {
+                    byte[] payload = session.deflate.compress(data);
+                    compressed = WebSocketFrames.encode(WebSocketFrames.OP_TEXT, true, payload, 0, payload.length);
+                }
+                frame = compressed;
+            } else {
+                if (plain == null) {
+                    plain = WebSocketFrames.encode(WebSocketFrames.OP_TEXT, false, data, 0, data.length);
+                }
+                frame = plain;
+            }
+            try {
+                session.sendFrame(frame);
+            } catch (IOException e) {
+                logger.debug("广播消息失败, 会话: {}", session.getId(), e);
+            }
+        }
+    }
+
+    private void send(int opcode, byte[] data) throws IOException {
+        PerMessageDeflate deflate = this.deflate;
+        if (deflate != null && data.length >= PerMessageDeflate.MIN_COMPRESS_SIZE) {
+            byte[] payload = deflate.compress(data);
+            sendFrame(WebSocketFrames.encode(opcode, true, payload, 0, payload.length));
+        } else {
+            sendFrame(WebSocketFrames.encode(opcode, false, data, 0, data.length));
+        }
+    }
+
+    /**
+     * 发送编码好的帧, 连接不可写时排队
+     */
+    synchronized void sendFrame(byte[] frame) throws IOException {
+        if (!this.open || this.closeSent) {
+            throw new IOException("WebSocket已关闭");
+        }
+        if (this.queue.isEmpty() && this.output.isReady()) {
+            this.output.write(frame);
+            return;
+        }
+        if (this.queuedBytes + frame.length > this.maxPendingBytes) {
+            // 客户端接收过慢, 放弃这个连接
+            this.closeCode = CLOSE_POLICY_VIOLATION;
+            this.closeReason = "客户端接收过慢";
+            abort(null);
+            throw new IOException("客户端接收过慢, 已断开连接");
+        }
+        this.queue.add(frame);
+        this.queuedBytes += frame.length;
+    }
+
+    private synchronized void drain() throws IOException {
+        while (!this.queue.isEmpty() && this.output.isReady()) {
+            byte[] frame = this.queue.poll();
+            this.queuedBytes -= frame.length;
+            this.output.write(frame);
+        }
+    }
+
+    /**
+     * 读取并处理所有完整的帧
+     */
+    private void readFrames() throws IOException {
+        try {
+            while (this.open && this.input.isReady()) {
+                if (this.buffer == EMPTY) {
+                    this.buffer = BufferPool.acquire();
+                } else if (this.end == this.buffer.length) {
+                    compact(this.buffer.length);
+                }
+                int n = this.input.read(this.buffer, this.end, this.buffer.length - this.end);
+                if (n < 0) {
+                    break;
+                }
+                this.end += n;
+                parseFrames();
+            }
+        } catch (WebSocketException e) {
+            protocolError(e.code, e.getMessage());
+        } finally {
+            if (this.start == this.end && this.buffer != EMPTY) {
+                // 数据都已处理, 大帧用过的大缓冲区直接丢弃
+                BufferPool.release(this.buffer);
+                this.buffer = EMPTY;
+            }
+        }
+    }
+
+    /**
+     * 解析缓冲区中的完整帧, 不完整的帧留在缓冲区中
+     */
+    private void parseFrames() throws IOException {
+        while (this.open && this.end - this.start >= 2) {
+            byte[] buf = this.buffer;
+            int b0 = buf[this.start] & 0xff;
+            int b1 = buf[this.start + 1] & 0xff;
+            boolean fin = (b0 & 0x80) != 0;
+            boolean rsv1 = (b0 & 0x40) != 0;
+            int opcode = b0 & 0x0f;
+            if ((b0 & 0x30) != 0 || (rsv1 && (this.deflate == null || opcode == WebSocketFrames.OP_CONTINUATION || opcode >= WebSocketFrames.OP_CLOSE))) {
+                throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "RSV位错误");
+            }
+            if ((b1 & 0x80) == 0) {
+                throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "客户端帧必须带掩码");
+            }
+            int len7 = b1 & 0x7f;
+            int headerLength = 2 + (len7 == 126 ? 2 : len7 == 127 ? 8 : 0) + 4;
+            if (this.end - this.start < headerLength) {
+                return;
+            }
+            long payloadLength = len7;
+            if (len7 == 126) {
+                payloadLength = (buf[this.start + 2] & 0xff) << 8 | (buf[this.start + 3] & 0xff);
+            } else if (len7 == 127) {
+                payloadLength = 0;
+                for (int i = 0; i < 8; i++) {
+                    payloadLength = payloadLength << 8 | (buf[this.start + 2 + i] & 0xff);
+                }
+            }
+            if (opcode >= WebSocketFrames.OP_CLOSE && (!fin || payloadLength > WebSocketFrames.MAX_CONTROL_PAYLOAD)) {
+                throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "控制帧格式错误");
+            }
+            if (payloadLength < 0 || payloadLength > this.maxMessageSize) {
+                throw new WebSocketException(CLOSE_TOO_BIG, "消息过大");
+            }
+            int frameLength = headerLength + (int) payloadLength;
+            if (this.end - this.start < frameLength) {
+                if (frameLength > this.buffer.length) {
+                    compact(frameLength);
+                }
+                return;
+            }
+            int payload = this.start + headerLength;
+            WebSocketFrames.unmask(buf, payload - 4, payload, (int) payloadLength);
+            this.start += frameLength;
+            onFrame(fin, rsv1, opcode, buf, payload, (int) payloadLength);
+        }
+        if (this.start == this.end) {
+            this.start = 0;
+            this.end = 0;
+        }
+    }
+
+    private void onFrame(boolean fin, boolean rsv1, int opcode, byte[] buf, int off, int len) throws IOException {
+        switch (opcode) {
+            case WebSocketFrames.OP_TEXT, WebSocketFrames.OP_BINARY -> {
+                if (this.messageOpcode != -1) {
+                    throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "上一条分片消息没有结束");
+                }
+                if (fin && !rsv1) {
+                    // 未分片未压缩的消息直接从读缓冲区交付, 不复制
+                    deliver(opcode, buf, off, len);
+                    return;
+                }
+                this.messageOpcode = opcode;
+                this.messageCompressed = rsv1;
+                this.messageLength = 0;
+                appendMessage(buf, off, len);
+                if (fin) {
+                    finishMessage();
+                }
+            }
+            case WebSocketFrames.OP_CONTINUATION -> {
+                if (this.messageOpcode == -1) {
+                    throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "没有需要继续的分片消息");
+                }
+                appendMessage(buf, off, len);
+                if (fin) {
+                    finishMessage();
+                }
+            }
+            case WebSocketFrames.OP_PING -> sendFrame(WebSocketFrames.encode(WebSocketFrames.OP_PONG, false, buf, off, len));
+            case WebSocketFrames.OP_PONG -> {
+            }
+            case WebSocketFrames.OP_CLOSE -> onCloseFrame(buf, off, len);
+            default -> throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "未知的opcode: " + opcode);
+        }
+    }
+
+    private void appendMessage(byte[] buf, int off, int len) throws WebSocketException {
+        int length = this.messageLength + len;
+        if (length > this.maxMessageSize) {
+            throw new WebSocketException(CLOSE_TOO_BIG, "消息过大");
+        }
+        if (length > this.message.length) {
+            byte[] grown = new byte[Math.min(this.maxMessageSize, Math.max(length, this.message.length * 2))];
+            System.arraycopy(this.message, 0, grown, 0, this.messageLength);
+            this.message = grown;
+        }
+        System.arraycopy(buf, off, this.message, this.messageLength, len);
+        this.messageLength = length;
+    }
+
+    private void finishMessage() throws IOException {
+        int opcode = this.messageOpcode;
+        this.messageOpcode = -1;
+        if (this.messageCompressed) {
+            byte[] data = this.deflate.decompress(this.message, 0, this.messageLength, this.maxMessageSize);
+            deliver(opcode, data, 0, data.length);
+        } else {
+            deliver(opcode, this.message, 0, this.messageLength);
+        }
+        if (this.message.length > BufferPool.BUFFER_SIZE) {
+            // 不长期持有大消息的缓冲区
+            this.message = new byte[0];
+        }
+    }
+
+    private void deliver(int opcode, byte[] data, int off, int len) throws WebSocketException {
+        try {
+            if (opcode == WebSocketFrames.OP_TEXT) {
+                String text;
+                try {
+                    text = this.utf8.decode(ByteBuffer.wrap(data, off, len)).toString();
+                } catch (CharacterCodingException e) {
+                    throw new WebSocketException(CLOSE_INVALID_DATA, "文本消息不是合法的UTF-8");
+                }
+                this.endpoint.onText(this, text);
+            } else {
+                byte[] copy = new byte[len];
+                System.arraycopy(data, off, copy, 0, len);
+                this.endpoint.onBinary(this, copy);
+            }
+        } catch (RuntimeException e) {
+            this.endpoint.onError(this, e);
+        }
+    }
+
+    private void onCloseFrame(byte[] buf, int off, int len) throws IOException {
+        int code = CLOSE_NO_STATUS;
+        String reason = "";
+        if (len == 1) {
+            throw new WebSocketException(CLOSE_PROTOCOL_ERROR, "关闭帧格式错误");
+        }
+        if (len >= 2) {
+            code = (buf[off] & 0xff) << 8 | (buf[off + 1] & 0xff);
+            try {
+                reason = this.utf8.decode(ByteBuffer.wrap(buf, off + 2, len - 2)).toString();
+            } catch (CharacterCodingException e) {
+                throw new WebSocketException(CLOSE_INVALID_DATA, "关闭原因不是合法的UTF-8");
+            }
+        }
+        this.closeCode = code;
+        this.closeReason = reason;
+        synchronized (this) {
+            if (!this.closeSent) {
+                // 回复关闭帧, 状态码与客户端相同
+                byte[] payload = len >= 2 ? new byte[]{buf[off], buf[off + 1]} : new byte[0];
+                try {
+                    sendFrame(WebSocketFrames.encode(WebSocketFrames.OP_CLOSE, false, payload, 0, payload.length));
+                } catch (IOException ignored) {
+                }
+                this.closeSent = true;
+            }
+        }
+        abort(null);
+    }
+
+    /**
+     * 协议错误: 发送关闭帧后断开连接
+     */
+    private void protocolError(int code, String reason) {
+        logger.debug("WebSocket协议错误, 会话: {}, {}", this.id, reason);
+        this.closeCode = code;
+        this.closeReason = reason;
+        try {
+            close(code, reason);
+        } catch (IOException ignored) {
+        }
+        abort(null);
+    }
+
+    /**
+     * 直接断开连接
+     */
+    private void abort(Throwable error) {
+        if (error != null && this.endpoint != null) {
+            this.endpoint.onError(this, error);
+        }
+        try {
+            this.connection.close();
+        } catch (Exception e) {
+            logger.debug("关闭WebSocket连接失败", e);
+        }
+    }
+
+    /**
+     * 把未解析的数据移到缓冲区开头, 缓冲区不足capacity时扩容
+     */
+    private void compact(int capacity) {
+        byte[] target = capacity > this.buffer.length ? new byte[capacity] : this.buffer;
+        System.arraycopy(this.buffer, this.start, target, 0, this.end - this.start);
+        this.end -= this.start;
+        this.start = 0;
+        this.buffer = target;
+    }
+}
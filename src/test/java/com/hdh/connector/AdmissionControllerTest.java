@@ -0,0 +1,43 @@
+package com.hdh.connector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    static AdmissionController controller(int limit, int maxQueue, long queueTimeoutMillis) {
+        return new AdmissionController(limit, 1, limit, maxQueue, queueTimeoutMillis, 1,
+                List.of(new AdmissionController.PriorityMapping("/login", AdmissionController.Priority.CRITICAL)));
+    }
+
+    @Test
+    void boundsWorkerQueue() {
+        AdmissionController admission = controller(10, 2, 50);
+        assertTrue(admission.enqueue());
+        assertTrue(admission.enqueue());
+        assertFalse(admission.enqueue());
+        assertEquals(1, admission.getRejected());
+        admission.dequeue();
+        assertTrue(admission.enqueue());
+    }
+
+    @Test
+    void countsQueueTimeAgainstTimeout() {
+        AdmissionController admission = controller(10, 100, 50);
+        // NORMAL只能使用90%的额度
+        for (int i = 0; i < 9; i++) {
+            assertTrue(admission.acquire(AdmissionController.Priority.NORMAL));
+        }
+        // 已经在工作线程队列中等待超过超时时间, 不再等待, 立即拒绝
+        long enqueued = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100);
+        long start = System.nanoTime();
+        assertFalse(admission.acquire(admission.classify("/orders"), enqueued));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40));
+        // 高优先级请求还有额度
+        assertTrue(admission.acquire(admission.classify("/login"), enqueued));
+    }
+}
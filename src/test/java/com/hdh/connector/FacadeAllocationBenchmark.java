@@ -0,0 +1,139 @@
+package com.hdh.connector;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 比较回收复用请求/响应对象(tomdog.recycleFacades)开和关时每个请求在服务端分配的字节数
+ * 启动进程内的HttpConnector, 用长连接反复请求首页, 统计tomdog-worker和HTTP-Dispatcher线程分配的字节数,
+ * 计数器与JFR的jdk.ThreadAllocationStatistics事件相同.
+ * 运行: mvn -q test-compile, 然后
+ * java -cp target/classes:target/test-classes:依赖 com.hdh.connector.FacadeAllocationBenchmark [请求数]
+ */
+public class FacadeAllocationBenchmark {
+
+    static final int PORT = 18080;
+    static final int CONNECTIONS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        // 示例Listener和Filter每个请求都打印日志, 日志的分配会淹没请求对象的分配
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        // 交替运行两次, 第一轮只用于预热JIT
+        for (int round = 0; round < 2; round++) {
+            for (boolean recycle : new boolean[]{false, true}) {
+                double bytes = run(recycle, round == 0 ? requests / 4 : requests);
+                if (round == 1) {
+                    System.out.printf("recycleFacades=%-5s %,10.0f bytes/request%n", recycle, bytes);
+                }
+            }
+        }
+    }
+
+    static double run(boolean recycle, int requests) throws Exception {
+        ConnectorConfig config = ConnectorConfig.fromSystemProperties();
+        config.setRecycleFacades(recycle);
+        config.setMaxKeepAliveRequests(-1); // 长连接一直复用, 不统计新建连接的分配
+        try (HttpConnector connector = new HttpConnector("127.0.0.1", PORT, config)) {
+            String cookie = sessionCookie();
+            // 预热: 创建工作线程和每个线程的复用对象
+            load(cookie, 2000);
+            long before = serverAllocatedBytes();
+            load(cookie, requests);
+            long after = serverAllocatedBytes();
+            return (after - before) / (double) requests;
+        }
+    }
+
+    /**
+     * 首页每次都会获取会话, 先取得会话Cookie, 之后的请求不再创建会话
+     */
+    static String sessionCookie() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", PORT)) {
+            String response = new String(request(socket, null), StandardCharsets.ISO_8859_1);
+            for (String line : response.split("\r\n")) {
+                if (line.regionMatches(true, 0, "Set-Cookie:", 0, 11)) {
+                    return line.substring(11).strip().split(";")[0];
+                }
+            }
+        }
+        throw new IOException("没有返回会话Cookie");
+    }
+
+    static void load(String cookie, int requests) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            int count = requests / CONNECTIONS;
+            Thread thread = new Thread(() -> {
+                try (Socket socket = new Socket("127.0.0.1", PORT)) {
+                    socket.setTcpNoDelay(true);
+                    for (int n = 0; n < count; n++) {
+                        request(socket, cookie);
+                    }
+                } catch (IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    /**
+     * 发送一个GET请求并读取完整响应, 返回响应头
+     */
+    static byte[] request(Socket socket, String cookie) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        String head = "GET / HTTP/1.1\r\nHost: localhost\r\n" + (cookie == null ? "" : "Cookie: " + cookie + "\r\n") + "\r\n";
+        output.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+        InputStream input = socket.getInputStream();
+        StringBuilder headers = new StringBuilder();
+        int b;
+        while ((b = input.read()) >= 0) {
+            headers.append((char) b);
+            if (headers.length() >= 4 && headers.lastIndexOf("\r\n\r\n") == headers.length() - 4) {
+                break;
+            }
+        }
+        int length = 0;
+        for (String line : headers.toString().split("\r\n")) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(line.substring(15).strip());
+            }
+        }
+        input.readNBytes(length);
+        return headers.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static long serverAllocatedBytes() {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (name.startsWith("tomdog-worker-") || name.startsWith("HTTP-Dispatcher")) {
+                total += threads.getThreadAllocatedBytes(thread.getId());
+            }
+        }
+        return total;
+    }
+}
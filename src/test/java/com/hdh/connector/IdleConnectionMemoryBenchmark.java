@@ -0,0 +1,114 @@
+package com.hdh.connector;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 测量每个空闲WebSocket连接(协商了permessage-deflate)在服务端占用的堆内存
+ * 启动进程内的HttpConnector, 建立连接并各收发一条消息后保持空闲, 比较建立连接前后GC后的堆使用量.
+ * 只统计堆内存, Deflater/Inflater的本地内存(zlib的压缩窗口和哈希表)不在堆中, 不包含在结果里.
+ * 运行: mvn -q test-compile, 然后
+ * java --add-opens jdk.httpserver/sun.net.httpserver=ALL-UNNAMED -cp target/classes:target/test-classes:依赖
+ * com.hdh.connector.IdleConnectionMemoryBenchmark [连接数]
+ */
+public class IdleConnectionMemoryBenchmark {
+
+    static final int PORT = 18081;
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        ConnectorConfig config = ConnectorConfig.fromSystemProperties();
+        config.setMaxKeepAliveRequests(-1);
+        try (HttpConnector connector = new HttpConnector("127.0.0.1", PORT, config)) {
+            // 预热: 创建升级处理线程和编解码器
+            List<Socket> warmup = open(10);
+            close(warmup);
+            long before = usedHeap();
+            List<Socket> sockets = open(connections);
+            long after = usedHeap();
+            System.out.printf("connections=%d %,10.0f bytes/connection%n", connections, (after - before) / (double) connections);
+            close(sockets);
+        }
+    }
+
+    static List<Socket> open(int count) throws IOException {
+        List<Socket> sockets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Socket socket = new Socket("127.0.0.1", PORT);
+            handshake(socket);
+            echo(socket, "hello");
+            sockets.add(socket);
+        }
+        return sockets;
+    }
+
+    static void close(List<Socket> sockets) throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    static void handshake(Socket socket) throws IOException {
+        byte[] nonce = new byte[16];
+        ThreadLocalRandom.current().nextBytes(nonce);
+        String request = "GET /ws/echo HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(nonce) + "\r\nSec-WebSocket-Version: 13\r\n"
+                + "Sec-WebSocket-Extensions: permessage-deflate\r\n\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        InputStream input = socket.getInputStream();
+        StringBuilder head = new StringBuilder();
+        int b;
+        while ((b = input.read()) >= 0) {
+            head.append((char) b);
+            if (head.length() >= 4 && head.lastIndexOf("\r\n\r\n") == head.length() - 4) {
+                break;
+            }
+        }
+        if (!head.toString().startsWith("HTTP/1.1 101")) {
+            throw new IOException("握手失败: " + head);
+        }
+    }
+
+    /**
+     * 发送一个带掩码的文本帧并读取回显
+     */
+    static void echo(Socket socket, String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        byte[] mask = {1, 2, 3, 4};
+        byte[] frame = new byte[6 + payload.length];
+        frame[0] = (byte) 0x81;
+        frame[1] = (byte) (0x80 | payload.length);
+        System.arraycopy(mask, 0, frame, 2, 4);
+        for (int i = 0; i < payload.length; i++) {
+            frame[6 + i] = (byte) (payload[i] ^ mask[i % 4]);
+        }
+        OutputStream output = socket.getOutputStream();
+        output.write(frame);
+        InputStream input = socket.getInputStream();
+        input.read();
+        int length = input.read() & 0x7f;
+        input.readNBytes(length);
+    }
+
+    static long usedHeap() throws InterruptedException {
+        var memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
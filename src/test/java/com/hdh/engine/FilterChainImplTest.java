@@ -0,0 +1,50 @@
+package com.hdh.engine;
+
+import com.hdh.engine.metrics.LatencyMetrics;
+import jakarta.servlet.Filter;
+import jakarta.servlet.GenericServlet;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilterChainImplTest {
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Filter filter(long millis) {
+        return (request, response, chain) -> {
+            sleep(millis);
+            chain.doFilter(request, response);
+        };
+    }
+
+    static double meanMillis(LatencyMetrics metrics) {
+        assertEquals(1, metrics.getCount());
+        return metrics.getMeanMillis();
+    }
+
+    @Test
+    void recordsFilterSelfTime() throws Exception {
+        Servlet servlet = new GenericServlet() {
+            @Override
+            public void service(ServletRequest req, ServletResponse res) {
+                sleep(200);
+            }
+        };
+        LatencyMetrics outer = new LatencyMetrics("outer");
+        LatencyMetrics inner = new LatencyMetrics("inner");
+        new FilterChainImpl(new Filter[]{filter(50), filter(0)}, new LatencyMetrics[]{outer, inner}, servlet).doFilter(null, null);
+        // 后续Filter和Servlet的耗时不计入
+        assertTrue(meanMillis(outer) >= 50 && meanMillis(outer) < 150, "outer: " + meanMillis(outer));
+        assertTrue(meanMillis(inner) < 100, "inner: " + meanMillis(inner));
+    }
+}
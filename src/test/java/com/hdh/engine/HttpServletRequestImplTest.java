@@ -0,0 +1,144 @@
+package com.hdh.engine;
+
+import com.hdh.connector.HttpExchangeRequest;
+import com.sun.net.httpserver.Headers;
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.http.Part;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpServletRequestImplTest {
+
+    static final String BOUNDARY = "----tomdog5678";
+
+    final ServletContextImpl context = new ServletContextImpl();
+
+    @TempDir
+    File dir;
+
+    @AfterEach
+    void destroy() {
+        this.context.destroy();
+    }
+
+    /**
+     * 内存中的请求, 请求体只有body, 声明的Content-Length可以与实际长度不同
+     */
+    static HttpExchangeRequest exchange(String method, String contentLength, byte[] body) {
+        Headers headers = new Headers();
+        headers.set("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        if (contentLength != null) {
+            headers.set("Content-Length", contentLength);
+        }
+        return new HttpExchangeRequest() {
+            @Override
+            public String getRequestMethod() {
+                return method;
+            }
+
+            @Override
+            public URI getRequestURI() {
+                return URI.create("/upload");
+            }
+
+            @Override
+            public String getProtocol() {
+                return "HTTP/1.1";
+            }
+
+            @Override
+            public boolean isSecure() {
+                return false;
+            }
+
+            @Override
+            public Headers getRequestHeaders() {
+                return headers;
+            }
+
+            @Override
+            public InetSocketAddress getRemoteAddress() {
+                return new InetSocketAddress("127.0.0.1", 50000);
+            }
+
+            @Override
+            public InetSocketAddress getLocalAddress() {
+                return new InetSocketAddress("127.0.0.1", 8080);
+            }
+
+            @Override
+            public byte[] getRequestBody() {
+                return body;
+            }
+
+            @Override
+            public InputStream getRequestBodyStream() {
+                return new ByteArrayInputStream(body);
+            }
+        };
+    }
+
+    static byte[] body() {
+        return ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"a.bin\"\r\n\r\nabc\r\n--" + BOUNDARY + "--\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    HttpServletRequestImpl request(String contentLength, MultipartConfigElement config) {
+        HttpServletRequestImpl request = new HttpServletRequestImpl(this.context, exchange("POST", contentLength, body()), null);
+        request.multipartConfig = config;
+        return request;
+    }
+
+    @Test
+    void keepsContentLengthOverIntRange() throws Exception {
+        HttpServletRequestImpl request = request("3000000000", new MultipartConfigElement(this.dir.getPath()));
+        assertEquals(3_000_000_000L, request.getContentLengthLong());
+        assertEquals(-1, request.getContentLength());
+        // 声明的长度不影响流式解析
+        List<Part> parts = List.copyOf(request.getParts());
+        assertEquals(1, parts.size());
+        assertEquals(3, parts.get(0).getSize());
+    }
+
+    @Test
+    void rejectsDeclaredLengthOverMaxRequestSize() {
+        HttpServletRequestImpl request = request(Long.toString(5L * 1024 * 1024 * 1024), new MultipartConfigElement(this.dir.getPath(), -1, 1024, 0));
+        assertThrows(IllegalStateException.class, request::getParts);
+        assertEquals(0, this.dir.list().length);
+    }
+
+    @Test
+    void ignoresMalformedContentLength() {
+        assertEquals(-1, request("abc", null).getContentLengthLong());
+        assertEquals(-1, request(null, null).getContentLength());
+        assertEquals(1234, request("1234", null).getContentLength());
+    }
+
+    @Test
+    void staleReferenceStaysRecycledAfterReuse() {
+        HttpExchangeRequest exchange = exchange("GET", null, new byte[0]);
+        HttpServletRequestImpl first = new HttpServletRequestImpl(this.context, exchange, null);
+        first.setAttribute("user", "alice");
+        first.recycle();
+        HttpServletRequestImpl second = new HttpServletRequestImpl(this.context, exchange, null, first);
+        assertNotSame(first, second);
+        // 业务代码保留的旧引用不能读到新请求的数据
+        assertThrows(IllegalStateException.class, () -> first.getAttribute("user"));
+        assertThrows(IllegalStateException.class, () -> first.getHeader("Content-Type"));
+        assertNull(second.getAttribute("user"));
+        assertEquals("GET", second.getMethod());
+        // 还在使用中的对象不能被复用
+        assertThrows(IllegalArgumentException.class, () -> new HttpServletRequestImpl(this.context, exchange, null, second));
+    }
+}
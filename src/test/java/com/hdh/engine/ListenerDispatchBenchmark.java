@@ -0,0 +1,89 @@
+package com.hdh.engine;
+
+import jakarta.servlet.ServletRequestAttributeEvent;
+import jakarta.servlet.ServletRequestAttributeListener;
+import jakarta.servlet.ServletRequestEvent;
+import jakarta.servlet.ServletRequestListener;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 测量每个请求的Listener分发开销: 没有Listener和6个Listener(3个ServletRequestListener, 3个ServletRequestAttributeListener)
+ * 每个模拟请求触发一次requestInitialized、一次attributeAdded、一次attributeRemoved和一次requestDestroyed,
+ * 输出每个请求的耗时和当前线程分配的字节数.
+ * 运行: mvn -q test-compile, 然后
+ * java -cp target/classes:target/test-classes:依赖 com.hdh.engine.ListenerDispatchBenchmark [请求数]
+ */
+public class ListenerDispatchBenchmark {
+
+    static long sink; // Listener的调用次数, 防止分发被优化掉
+
+    public static void main(String[] args) {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        ServletContextImpl empty = new ServletContextImpl();
+        ServletContextImpl six = new ServletContextImpl();
+        for (int i = 0; i < 3; i++) {
+            six.addListener(new RequestListener());
+            six.addListener(new AttributeListener());
+        }
+        // 第一轮预热JIT, 第二轮输出结果
+        for (int round = 0; round < 2; round++) {
+            for (ServletContextImpl context : new ServletContextImpl[]{empty, six}) {
+                long[] result = run(context, round == 0 ? requests / 4 : requests);
+                if (round == 1) {
+                    System.out.printf("listeners=%d %6.1f ns/request %6.1f bytes/request%n",
+                            context == empty ? 0 : 6, result[0] / (double) requests, result[1] / (double) requests);
+                }
+            }
+        }
+        empty.destroy();
+        six.destroy();
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+    }
+
+    /**
+     * @return 耗时(ns)和分配的字节数
+     */
+    static long[] run(ServletContextImpl context, int requests) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        Object value = new Object();
+        long allocated = threads.getThreadAllocatedBytes(id);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            // Listener不读取请求, 传入null不影响分发路径
+            context.invokeServletRequestInitialized(null);
+            context.invokeServletRequestAttributeAdded(null, "user", value);
+            context.invokeServletRequestAttributeRemoved(null, "user", value);
+            context.invokeServletRequestDestroyed(null);
+        }
+        long elapsed = System.nanoTime() - start;
+        return new long[]{elapsed, threads.getThreadAllocatedBytes(id) - allocated};
+    }
+
+    public static class RequestListener implements ServletRequestListener {
+        @Override
+        public void requestInitialized(ServletRequestEvent sre) {
+            sink++;
+        }
+
+        @Override
+        public void requestDestroyed(ServletRequestEvent sre) {
+            sink++;
+        }
+    }
+
+    public static class AttributeListener implements ServletRequestAttributeListener {
+        @Override
+        public void attributeAdded(ServletRequestAttributeEvent srae) {
+            sink++;
+        }
+
+        @Override
+        public void attributeRemoved(ServletRequestAttributeEvent srae) {
+            sink++;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.hdh.engine;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.GenericServlet;
+import jakarta.servlet.ServletConfig;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServletContextImplTest {
+
+    @Test
+    void setsContextClassLoaderForLifecycleCallbacks() throws Exception {
+        Map<String, ClassLoader> loaders = new ConcurrentHashMap<>();
+        try (URLClassLoader loader = new URLClassLoader(new URL[0], getClass().getClassLoader())) {
+            ServletContextImpl context = new ServletContextImpl("/app", loader);
+            context.addListener(new ServletContextListener() {
+                @Override
+                public void contextInitialized(ServletContextEvent sce) {
+                    loaders.put("contextInitialized", Thread.currentThread().getContextClassLoader());
+                }
+
+                @Override
+                public void contextDestroyed(ServletContextEvent sce) {
+                    loaders.put("contextDestroyed", Thread.currentThread().getContextClassLoader());
+                }
+            });
+            context.addServlet("startup", new GenericServlet() {
+                @Override
+                public void init(ServletConfig config) {
+                    loaders.put("servlet.init", Thread.currentThread().getContextClassLoader());
+                }
+
+                @Override
+                public void service(ServletRequest req, ServletResponse res) {
+                }
+
+                @Override
+                public void destroy() {
+                    loaders.put("servlet.destroy", Thread.currentThread().getContextClassLoader());
+                }
+            }).setLoadOnStartup(1);
+            context.addFilter("filter", new Filter() {
+                @Override
+                public void init(FilterConfig filterConfig) {
+                    loaders.put("filter.init", Thread.currentThread().getContextClassLoader());
+                }
+
+                @Override
+                public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+                }
+
+                @Override
+                public void destroy() {
+                    loaders.put("filter.destroy", Thread.currentThread().getContextClassLoader());
+                }
+            });
+            ClassLoader original = Thread.currentThread().getContextClassLoader();
+            context.invokeServletContextInitialized();
+            context.initServlets(List.of());
+            context.initFilters(List.of());
+            context.destroy();
+            assertSame(original, Thread.currentThread().getContextClassLoader());
+            for (String callback : List.of("contextInitialized", "servlet.init", "filter.init", "servlet.destroy", "filter.destroy", "contextDestroyed")) {
+                assertSame(loader, loaders.get(callback), callback);
+            }
+        }
+    }
+}
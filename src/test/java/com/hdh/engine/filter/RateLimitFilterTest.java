@@ -0,0 +1,109 @@
+package com.hdh.engine.filter;
+
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+    static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    RateLimitFilter filter = new RateLimitFilter();
+
+    @AfterEach
+    void destroy() {
+        this.filter.destroy();
+    }
+
+    static FilterConfig config(Map<String, String> params) {
+        return new FilterConfig() {
+            @Override
+            public String getFilterName() {
+                return "rateLimit";
+            }
+
+            @Override
+            public ServletContext getServletContext() {
+                return null;
+            }
+
+            @Override
+            public String getInitParameter(String name) {
+                return params.get(name);
+            }
+
+            @Override
+            public Enumeration<String> getInitParameterNames() {
+                return Collections.enumeration(params.keySet());
+            }
+        };
+    }
+
+    void init(String rate, String burst) throws ServletException {
+        this.filter.init(config(Map.of("enabled", "true", "rate", rate, "burst", burst, "idleTimeoutSeconds", "10")));
+    }
+
+    @Test
+    void disabledByDefault() throws ServletException {
+        this.filter.init(config(Map.of()));
+        assertFalse(this.filter.enabled);
+        assertNull(this.filter.shards);
+        assertNull(this.filter.sweeper);
+    }
+
+    @Test
+    void allowsBurstThenLimits() throws ServletException {
+        init("10", "5");
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, this.filter.tryAcquire("a", now), "request " + i);
+        }
+        long wait = this.filter.tryAcquire("a", now);
+        assertEquals(SECOND / 10, wait);
+        // 其他key不受影响
+        assertEquals(0, this.filter.tryAcquire("b", now));
+    }
+
+    @Test
+    void refillsAtRate() throws ServletException {
+        init("10", "5");
+        long now = 1_000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            this.filter.tryAcquire("a", now);
+        }
+        assertTrue(this.filter.tryAcquire("a", now) > 0);
+        now += SECOND / 10;
+        assertEquals(0, this.filter.tryAcquire("a", now));
+        assertTrue(this.filter.tryAcquire("a", now) > 0);
+        // 空闲足够久后桶补满, 但不超过容量
+        now += 10 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, this.filter.tryAcquire("a", now), "request " + i);
+        }
+        assertTrue(this.filter.tryAcquire("a", now) > 0);
+    }
+
+    @Test
+    void sweepRemovesIdleKeys() throws ServletException {
+        init("10", "5");
+        long now = System.nanoTime();
+        this.filter.tryAcquire("idle", now - 20 * SECOND);
+        this.filter.tryAcquire("active", now);
+        this.filter.sweep();
+        int keys = 0;
+        for (RateLimitFilter.Shard shard : this.filter.shards) {
+            assertFalse(shard.buckets.containsKey("idle"));
+            keys += shard.buckets.size();
+        }
+        assertEquals(1, keys);
+    }
+}
@@ -0,0 +1,67 @@
+package com.hdh.engine.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    static ObjectName name(String properties) throws Exception {
+        return new ObjectName(MetricsRegistry.DOMAIN + ":" + properties);
+    }
+
+    @Test
+    void registersPerContextNames() throws Exception {
+        MetricsRegistry shop = new MetricsRegistry("test-a", "/shop");
+        MetricsRegistry blog = new MetricsRegistry("test-a", "");
+        MetricsRegistry other = new MetricsRegistry("test-b", "/shop");
+        shop.servlet("cart");
+        blog.servlet("cart");
+        try {
+            assertTrue(this.server.isRegistered(name("type=Requests,host=test-a,context=/shop")));
+            assertTrue(this.server.isRegistered(name("type=Requests,host=test-a,context=/")));
+            assertTrue(this.server.isRegistered(name("type=Requests,host=test-b,context=/shop")));
+            assertTrue(this.server.isRegistered(name("type=Servlet,host=test-a,context=/shop,name=\"cart\"")));
+            assertTrue(this.server.isRegistered(name("type=Servlet,host=test-a,context=/,name=\"cart\"")));
+        } finally {
+            shop.unregisterAll();
+            blog.unregisterAll();
+            other.unregisterAll();
+        }
+        assertTrue(this.server.queryNames(name("*,host=test-a"), null).isEmpty());
+        assertTrue(this.server.queryNames(name("*,host=test-b"), null).isEmpty());
+    }
+
+    @Test
+    void keepsReplacementRegisteredWhenOldContextIsDestroyed() throws Exception {
+        MetricsRegistry old = new MetricsRegistry("test-c", "/app");
+        old.filter("auth");
+        // 重新部署: 新应用先注册, 之后旧应用销毁
+        MetricsRegistry replacement = new MetricsRegistry("test-c", "/app");
+        replacement.filter("auth");
+        old.unregisterAll();
+        ObjectName requests = name("type=Requests,host=test-c,context=/app");
+        assertTrue(this.server.isRegistered(requests));
+        assertTrue(this.server.isRegistered(name("type=Filter,host=test-c,context=/app,name=\"auth\"")));
+        replacement.unregisterAll();
+        assertFalse(this.server.isRegistered(requests));
+    }
+
+    @Test
+    void quotesSpecialCharacters() throws Exception {
+        assertEquals("/a", MetricsRegistry.value("/a"));
+        assertEquals("\"a:b\"", MetricsRegistry.value("a:b"));
+        MetricsRegistry registry = new MetricsRegistry("test-d", "/a,b");
+        try {
+            assertTrue(this.server.isRegistered(name("type=Requests,host=test-d,context=\"/a,b\"")));
+        } finally {
+            registry.unregisterAll();
+        }
+    }
+}
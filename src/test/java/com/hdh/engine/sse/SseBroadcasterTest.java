@@ -0,0 +1,91 @@
+package com.hdh.engine.sse;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseBroadcasterTest {
+
+    /**
+     * 只实现SseEmitter用到的方法的异步请求, complete()时通知AsyncListener.onComplete
+     */
+    static final class StubAsync {
+        final List<AsyncListener> listeners = new ArrayList<>();
+        final AsyncContext context = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{AsyncContext.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "addListener" -> this.listeners.add((AsyncListener) args[0]);
+                case "complete" -> {
+                    for (AsyncListener listener : this.listeners) {
+                        listener.onComplete(new AsyncEvent((AsyncContext) proxy));
+                    }
+                }
+                default -> {
+                }
+            }
+            return null;
+        });
+
+        SseEmitter start() throws IOException {
+            ServletOutputStream output = new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+
+                @Override
+                public void write(int b) {
+                }
+            };
+            HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                    (proxy, method, args) -> method.getName().equals("startAsync") ? this.context : null);
+            HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class},
+                    (proxy, method, args) -> method.getName().equals("getOutputStream") ? output : null);
+            return SseEmitter.start(request, response);
+        }
+    }
+
+    @Test
+    void runsCloseListenerOnceWhenAlreadyClosed() throws IOException {
+        SseEmitter emitter = new StubAsync().start();
+        AtomicInteger before = new AtomicInteger();
+        emitter.onClose(before::incrementAndGet);
+        emitter.close();
+        assertFalse(emitter.isOpen());
+        assertEquals(1, before.get());
+        AtomicInteger after = new AtomicInteger();
+        emitter.onClose(after::incrementAndGet);
+        assertEquals(1, after.get());
+        assertEquals(1, before.get());
+    }
+
+    @Test
+    void doesNotKeepClosedSubscribers() throws IOException {
+        try (SseBroadcaster broadcaster = new SseBroadcaster(0)) {
+            SseEmitter open = new StubAsync().start();
+            SseEmitter closed = new StubAsync().start();
+            closed.close();
+            broadcaster.subscribe(open);
+            broadcaster.subscribe(closed);
+            assertEquals(1, broadcaster.getSubscriberCount());
+            open.close();
+            assertEquals(0, broadcaster.getSubscriberCount());
+        }
+    }
+}
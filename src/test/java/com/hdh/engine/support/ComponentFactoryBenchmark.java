@@ -0,0 +1,60 @@
+package com.hdh.engine.support;
+
+import jakarta.servlet.ServletException;
+
+/**
+ * 比较组件实例化的吞吐量:
+ * 原来的Class.forName + getConstructor().newInstance(), 只用反射(getConstructor().newInstance()),
+ * 以及ComponentFactory缓存的MethodHandle.
+ * 运行: mvn -q test-compile, 然后
+ * java -cp target/classes:target/test-classes:依赖 com.hdh.engine.support.ComponentFactoryBenchmark [次数]
+ */
+public class ComponentFactoryBenchmark {
+
+    static Object sink; // 最后一次创建的实例, 防止创建被优化掉
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        ComponentFactory factory = new ComponentFactory(null);
+        String name = Component.class.getName();
+        ClassLoader loader = ComponentFactoryBenchmark.class.getClassLoader();
+        // 第一轮预热JIT, 第二轮输出结果
+        for (int round = 0; round < 2; round++) {
+            int n = round == 0 ? count / 4 : count;
+            long forName = time(n, () -> Class.forName(name, true, loader).getConstructor().newInstance());
+            long reflection = time(n, () -> Component.class.getConstructor().newInstance());
+            long cached = time(n, () -> factory.newInstance(Component.class));
+            if (round == 1) {
+                print("Class.forName + newInstance", forName, n);
+                print("getConstructor().newInstance", reflection, n);
+                print("ComponentFactory (MethodHandle)", cached, n);
+            }
+        }
+        if (sink == null) {
+            System.out.println("没有创建实例");
+        }
+    }
+
+    interface Instantiation {
+        Object create() throws ReflectiveOperationException, ServletException;
+    }
+
+    static long time(int count, Instantiation instantiation) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            sink = instantiation.create();
+        }
+        return System.nanoTime() - start;
+    }
+
+    static void print(String name, long elapsed, int count) {
+        System.out.printf("%-32s %7.1f ns/op %,14.0f ops/s%n", name, elapsed / (double) count, count * 1e9 / elapsed);
+    }
+
+    /**
+     * 被实例化的组件, 与Servlet/Filter/Listener一样只有public无参构造方法
+     */
+    public static class Component {
+        int value = 1;
+    }
+}
@@ -0,0 +1,167 @@
+package com.hdh.engine.support;
+
+import jakarta.servlet.MultipartConfigElement;
+import jakarta.servlet.http.Part;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartParserTest {
+
+    static final String BOUNDARY = "----tomdog1234";
+
+    @TempDir
+    File dir;
+
+    /**
+     * 每次最多返回chunk个字节, 模拟边界被拆到多次读取中
+     */
+    static InputStream chunked(byte[] data, int chunk) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunk));
+            }
+        };
+    }
+
+    static byte[] body(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            sb.append("--").append(BOUNDARY).append("\r\n").append(part).append("\r\n");
+        }
+        sb.append("--").append(BOUNDARY).append("--\r\n");
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    static String field(String name, String value) {
+        return "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value;
+    }
+
+    static String content(Part part) throws IOException {
+        try (InputStream in = part.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    List<Part> parse(InputStream input, MultipartConfigElement config) throws IOException {
+        return new MultipartParser(input, BOUNDARY, config, this.dir).parse();
+    }
+
+    List<Part> parse(byte[] data) throws IOException {
+        return parse(new ByteArrayInputStream(data), new MultipartConfigElement(this.dir.getPath()));
+    }
+
+    @Test
+    void parsesFieldsAndFile() throws IOException {
+        byte[] data = body(field("a", "1"),
+                "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\nContent-Type: text/plain\r\n\r\nhello\r\nworld",
+                field("b", ""));
+        List<Part> parts = parse(data);
+        assertEquals(3, parts.size());
+        assertEquals("a", parts.get(0).getName());
+        assertEquals("1", content(parts.get(0)));
+        assertEquals("file", parts.get(1).getName());
+        assertEquals("a.txt", parts.get(1).getSubmittedFileName());
+        assertEquals("text/plain", parts.get(1).getContentType());
+        assertEquals("hello\r\nworld", content(parts.get(1)));
+        assertEquals(0, parts.get(2).getSize());
+    }
+
+    @Test
+    void ignoresPreambleAndEpilogue() throws IOException {
+        byte[] body = body(field("a", "1"));
+        String data = "preamble\r\n" + new String(body, StandardCharsets.ISO_8859_1) + "epilogue";
+        List<Part> parts = parse(data.getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(1, parts.size());
+        assertEquals("1", content(parts.get(0)));
+    }
+
+    @Test
+    void findsBoundarySplitAcrossReads() throws IOException {
+        byte[] data = body(field("a", "x".repeat(20000)), field("b", "2"));
+        for (int chunk : new int[]{1, 3, 7, BOUNDARY.length() + 3, 8191}) {
+            List<Part> parts = parse(chunked(data, chunk), new MultipartConfigElement(this.dir.getPath()));
+            assertEquals(2, parts.size(), "chunk=" + chunk);
+            assertEquals(20000, parts.get(0).getSize(), "chunk=" + chunk);
+            assertEquals("2", content(parts.get(1)), "chunk=" + chunk);
+        }
+    }
+
+    @Test
+    void keepsDelimiterPrefixInBody() throws IOException {
+        // 只匹配了分隔符的一部分, 属于分块内容
+        String value = "a\r\n--" + BOUNDARY.substring(0, BOUNDARY.length() - 1) + "b\r\n-";
+        List<Part> parts = parse(chunked(body(field("a", value)), 5), new MultipartConfigElement(this.dir.getPath()));
+        assertEquals(1, parts.size());
+        assertEquals(value, content(parts.get(0)));
+    }
+
+    @Test
+    void writesLargePartToTemporaryFile() throws IOException {
+        byte[] data = body(field("file", "y".repeat(5000)));
+        List<Part> parts = parse(new ByteArrayInputStream(data), new MultipartConfigElement(this.dir.getPath(), -1, -1, 1024));
+        assertEquals(5000, parts.get(0).getSize());
+        assertEquals(1, this.dir.list().length);
+        assertEquals("y".repeat(5000), content(parts.get(0)));
+        parts.get(0).delete();
+        assertEquals(0, this.dir.list().length);
+    }
+
+    @Test
+    void rejectsPartOverMaxFileSize() {
+        byte[] data = body(field("a", "1"), field("file", "z".repeat(4096)));
+        MultipartConfigElement config = new MultipartConfigElement(this.dir.getPath(), 4000, -1, 100);
+        assertThrows(IllegalStateException.class, () -> parse(new ByteArrayInputStream(data), config));
+        // 已经写出的临时文件被删除
+        assertEquals(0, this.dir.list().length);
+    }
+
+    @Test
+    void acceptsPartOfExactlyMaxFileSize() throws IOException {
+        byte[] data = body(field("file", "z".repeat(4000)));
+        List<Part> parts = parse(new ByteArrayInputStream(data), new MultipartConfigElement(this.dir.getPath(), 4000, -1, 0));
+        assertEquals(4000, parts.get(0).getSize());
+    }
+
+    @Test
+    void rejectsRequestOverMaxRequestSize() {
+        byte[] data = body(field("a", "1".repeat(3000)), field("b", "2".repeat(3000)));
+        MultipartConfigElement config = new MultipartConfigElement(this.dir.getPath(), -1, 5000, 0);
+        assertThrows(IllegalStateException.class, () -> parse(chunked(data, 1000), config));
+    }
+
+    @Test
+    void rejectsTruncatedBody() {
+        byte[] data = body(field("a", "1"));
+        byte[] truncated = Arrays.copyOf(data, data.length - BOUNDARY.length() - 8);
+        assertThrows(IOException.class, () -> parse(truncated));
+    }
+
+    @Test
+    void rejectsBodyWithoutBoundary() {
+        assertThrows(IOException.class, () -> parse("no boundary here".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void rejectsOversizedPartHeaders() {
+        String part = "Content-Disposition: form-data; name=\"a\"\r\nX-Long: " + "h".repeat(MultipartParser.MAX_HEADER_SIZE) + "\r\n\r\n1";
+        assertThrows(IOException.class, () -> parse(body(part)));
+    }
+
+    @Test
+    void readsBoundaryParameter() {
+        assertEquals("abc", MultipartParser.getBoundary("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartParser.getBoundary("multipart/form-data; charset=utf-8; BOUNDARY=\"a b\""));
+        assertNull(MultipartParser.getBoundary("multipart/form-data"));
+    }
+}
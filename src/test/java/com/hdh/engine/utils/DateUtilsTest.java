@@ -0,0 +1,61 @@
+package com.hdh.engine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateUtilsTest {
+
+    @Test
+    void formatsLikeRfc1123Formatter() {
+        long[] samples = {0, -1, 784887151000L, 951782400000L, 1709164800000L, 253402300799000L, -62135596800000L};
+        for (long ts : samples) {
+            String expected = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts), DateUtils.GMT)
+                    .format(DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH));
+            assertEquals(expected, DateUtils.formatDateTimeGMT(ts), "ts=" + ts);
+        }
+    }
+
+    @Test
+    void parsesWhatItFormats() {
+        for (long ts = -86_400_000L * 800; ts < 4_102_444_800_000L; ts += 86_400_000L * 37 + 3_723_000L) {
+            long seconds = Math.floorDiv(ts, 1000) * 1000;
+            assertEquals(seconds, DateUtils.parseDateTimeGMT(DateUtils.formatDateTimeGMT(ts)));
+        }
+    }
+
+    @Test
+    void parsesLeapDay() {
+        assertEquals(1709164800000L, DateUtils.parseFixedDateTimeGMT("Thu, 29 Feb 2024 00:00:00 GMT"));
+        assertEquals(951782400000L, DateUtils.parseFixedDateTimeGMT("Tue, 29 Feb 2000 00:00:00 GMT"));
+    }
+
+    @Test
+    void leavesImpossibleDatesToStrictParser() {
+        assertEquals(Long.MIN_VALUE, DateUtils.parseFixedDateTimeGMT("Sat, 31 Feb 2024 00:00:00 GMT"));
+        assertEquals(Long.MIN_VALUE, DateUtils.parseFixedDateTimeGMT("Sun, 29 Feb 2023 00:00:00 GMT"));
+        assertEquals(Long.MIN_VALUE, DateUtils.parseFixedDateTimeGMT("Mon, 31 Apr 2024 00:00:00 GMT"));
+        assertEquals(Long.MIN_VALUE, DateUtils.parseFixedDateTimeGMT("Fri, 01 Jan 2024 00:00:60 GMT"));
+        assertThrows(DateTimeParseException.class, () -> DateUtils.parseDateTimeGMT("Sat, 31 Feb 2024 00:00:00 GMT"));
+    }
+
+    @Test
+    void leavesWrongWeekdayToStrictParser() {
+        // 1994-11-15 是星期二
+        assertEquals(Long.MIN_VALUE, DateUtils.parseFixedDateTimeGMT("Mon, 15 Nov 1994 08:12:31 GMT"));
+        assertThrows(DateTimeParseException.class, () -> DateUtils.parseDateTimeGMT("Mon, 15 Nov 1994 08:12:31 GMT"));
+        assertEquals(784887151000L, DateUtils.parseDateTimeGMT("Tue, 15 Nov 1994 08:12:31 GMT"));
+    }
+
+    @Test
+    void fallsBackForNonFixedFormat() {
+        assertEquals(DateUtils.parseDateTimeGMT("Tue, 01 Nov 1994 08:12:31 GMT"), DateUtils.parseDateTimeGMT("Tue, 1 Nov 1994 08:12:31 GMT"));
+        assertThrows(DateTimeParseException.class, () -> DateUtils.parseDateTimeGMT("Tue, 15 Foo 1994 08:12:31 GMT"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.hdh.engine.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerMessageDeflateTest {
+
+    PerMessageDeflate deflate = PerMessageDeflate.INSTANCE;
+
+    @Test
+    void roundTrips() throws WebSocketException {
+        byte[] text = "hello hello hello hello hello hello hello hello hello hello hello".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = this.deflate.compress(text);
+        assertTrue(compressed.length < text.length);
+        assertArrayEquals(text, this.deflate.decompress(compressed, 0, compressed.length, 1024));
+
+        byte[] random = new byte[100_000];
+        new Random(7).nextBytes(random);
+        compressed = this.deflate.compress(random);
+        assertArrayEquals(random, this.deflate.decompress(compressed, 0, compressed.length, random.length));
+    }
+
+    @Test
+    void compressesWithoutContextTakeover() {
+        // 不保留上下文, 同样的内容压缩结果相同, 广播时可以共享
+        byte[] text = "abcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabcabc".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(this.deflate.compress(text), this.deflate.compress(text));
+    }
+
+    @Test
+    void stripsSyncFlushTail() {
+        byte[] compressed = this.deflate.compress(new byte[1000]);
+        int n = compressed.length;
+        assertFalse(n >= 4 && compressed[n - 4] == 0 && compressed[n - 3] == 0 && compressed[n - 2] == (byte) 0xFF && compressed[n - 1] == (byte) 0xFF);
+    }
+
+    @Test
+    void rejectsDecompressionBomb() {
+        byte[] compressed = this.deflate.compress(new byte[1024 * 1024]);
+        WebSocketException e = assertThrows(WebSocketException.class, () -> this.deflate.decompress(compressed, 0, compressed.length, 64 * 1024));
+        assertEquals(WebSocketSession.CLOSE_TOO_BIG, e.code);
+    }
+
+    @Test
+    void rejectsCorruptData() {
+        byte[] garbage = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x12, 0x34};
+        WebSocketException e = assertThrows(WebSocketException.class, () -> this.deflate.decompress(garbage, 0, garbage.length, 1024));
+        assertEquals(WebSocketSession.CLOSE_INVALID_DATA, e.code);
+    }
+
+    @Test
+    void negotiatesExtension() {
+        assertTrue(PerMessageDeflate.accept("permessage-deflate; client_max_window_bits"));
+        assertTrue(PerMessageDeflate.accept("x-webkit-deflate-frame, permessage-deflate"));
+        assertTrue(PerMessageDeflate.accept("permessage-deflate; server_max_window_bits=10, permessage-deflate"));
+        assertFalse(PerMessageDeflate.accept("permessage-deflate; server_max_window_bits=10"));
+        assertFalse(PerMessageDeflate.accept("x-webkit-deflate-frame"));
+        assertFalse(PerMessageDeflate.accept(null));
+    }
+}
@@ -0,0 +1,62 @@
+package com.hdh.engine.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketFramesTest {
+
+    @Test
+    void encodesPayloadLengthForms() {
+        for (int len : new int[]{0, 125, 126, 0xFFFF, 0x10000}) {
+            byte[] frame = WebSocketFrames.encode(WebSocketFrames.OP_BINARY, false, new byte[len], 0, len);
+            assertEquals(0x82, frame[0] & 0xff);
+            int headerLength;
+            long decoded;
+            int len7 = frame[1] & 0x7f;
+            assertEquals(0, frame[1] & 0x80, "服务端帧不带掩码");
+            if (len7 == 126) {
+                headerLength = 4;
+                decoded = (frame[2] & 0xff) << 8 | (frame[3] & 0xff);
+            } else if (len7 == 127) {
+                headerLength = 10;
+                decoded = 0;
+                for (int i = 0; i < 8; i++) {
+                    decoded = decoded << 8 | (frame[2 + i] & 0xff);
+                }
+            } else {
+                headerLength = 2;
+                decoded = len7;
+            }
+            assertEquals(len, decoded, "len=" + len);
+            assertEquals(headerLength + len, frame.length, "len=" + len);
+        }
+    }
+
+    @Test
+    void encodesRsv1ForCompressedFrames() {
+        byte[] frame = WebSocketFrames.encode(WebSocketFrames.OP_TEXT, true, new byte[]{1, 2, 3}, 1, 2);
+        assertEquals(0xC1, frame[0] & 0xff);
+        assertEquals(2, frame[1]);
+        assertArrayEquals(new byte[]{2, 3}, new byte[]{frame[2], frame[3]});
+    }
+
+    @Test
+    void unmaskMatchesBytewiseXor() {
+        Random random = new Random(42);
+        for (int len = 0; len < 70; len++) {
+            for (int off = 4; off < 12; off++) {
+                byte[] buf = new byte[off + len];
+                random.nextBytes(buf);
+                byte[] expected = buf.clone();
+                for (int i = 0; i < len; i++) {
+                    expected[off + i] ^= buf[off - 4 + (i & 3)];
+                }
+                WebSocketFrames.unmask(buf, off - 4, off, len);
+                assertArrayEquals(expected, buf, "len=" + len + " off=" + off);
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.hdh.engine.websocket;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.WebConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用内存中的连接驱动WebSocketSession, 检查客户端帧的解析
+ */
+class WebSocketSessionTest {
+
+    final Random random = new Random(1);
+    final List<Object> received = new ArrayList<>();
+    final List<Integer> closed = new ArrayList<>();
+    WebSocketSession session;
+    FakeConnection connection;
+
+    @BeforeEach
+    void open() {
+        this.session = new WebSocketSession();
+        this.session.endpoint = new WebSocketEndpoint() {
+            @Override
+            public void onText(WebSocketSession session, String text) {
+                received.add(text);
+            }
+
+            @Override
+            public void onBinary(WebSocketSession session, byte[] data) {
+                received.add(data);
+            }
+
+            @Override
+            public void onClose(WebSocketSession session, int code, String reason) {
+                closed.add(code);
+            }
+        };
+        this.connection = new FakeConnection();
+        this.session.init(this.connection);
+    }
+
+    /**
+     * 编码一个带随机掩码的客户端帧
+     */
+    byte[] clientFrame(boolean fin, boolean rsv1, int opcode, byte[] payload) {
+        int len = payload.length;
+        int lengthBytes = len <= 125 ? 0 : len <= 0xFFFF ? 2 : 8;
+        byte[] frame = new byte[2 + lengthBytes + 4 + len];
+        frame[0] = (byte) ((fin ? 0x80 : 0) | (rsv1 ? 0x40 : 0) | opcode);
+        if (lengthBytes == 0) {
+            frame[1] = (byte) (0x80 | len);
+        } else if (lengthBytes == 2) {
+            frame[1] = (byte) (0x80 | 126);
+            frame[2] = (byte) (len >>> 8);
+            frame[3] = (byte) len;
+        } else {
+            frame[1] = (byte) (0x80 | 127);
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) len >>> (56 - 8 * i));
+            }
+        }
+        int mask = 2 + lengthBytes;
+        byte[] key = new byte[4];
+        this.random.nextBytes(key);
+        System.arraycopy(key, 0, frame, mask, 4);
+        for (int i = 0; i < len; i++) {
+            frame[mask + 4 + i] = (byte) (payload[i] ^ key[i & 3]);
+        }
+        return frame;
+    }
+
+    byte[] clientFrame(int opcode, String text) {
+        return clientFrame(true, false, opcode, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] a : arrays) {
+            out.writeBytes(a);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 服务端发出的帧的opcode和负载
+     */
+    List<byte[]> sentFrames(int opcode) {
+        List<byte[]> frames = new ArrayList<>();
+        byte[] data = this.connection.output.toByteArray();
+        int i = 0;
+        while (i < data.length) {
+            int op = data[i] & 0x0f;
+            int len = data[i + 1] & 0x7f;
+            int header = 2;
+            if (len == 126) {
+                len = (data[i + 2] & 0xff) << 8 | (data[i + 3] & 0xff);
+                header = 4;
+            }
+            if (op == opcode) {
+                frames.add(Arrays.copyOfRange(data, i + header, i + header + len));
+            }
+            i += header + len;
+        }
+        return frames;
+    }
+
+    int sentCloseCode() {
+        List<byte[]> frames = sentFrames(WebSocketFrames.OP_CLOSE);
+        assertEquals(1, frames.size());
+        byte[] payload = frames.get(0);
+        return (payload[0] & 0xff) << 8 | (payload[1] & 0xff);
+    }
+
+    @Test
+    void decodesMaskedFramesOfEveryLengthForm() throws IOException {
+        String small = "héllo";
+        String medium = "m".repeat(300);
+        byte[] large = new byte[70_000];
+        this.random.nextBytes(large);
+        this.connection.receive(concat(clientFrame(WebSocketFrames.OP_TEXT, small), clientFrame(WebSocketFrames.OP_TEXT, medium),
+                clientFrame(true, false, WebSocketFrames.OP_BINARY, large)));
+        assertEquals(3, this.received.size());
+        assertEquals(small, this.received.get(0));
+        assertEquals(medium, this.received.get(1));
+        assertArrayEquals(large, (byte[]) this.received.get(2));
+    }
+
+    @Test
+    void reassemblesFramesSplitAcrossReads() throws IOException {
+        byte[] data = concat(clientFrame(WebSocketFrames.OP_TEXT, "first"), clientFrame(WebSocketFrames.OP_TEXT, "x".repeat(500)));
+        for (byte b : data) {
+            this.connection.receive(new byte[]{b});
+        }
+        assertEquals(List.of("first", "x".repeat(500)), this.received);
+    }
+
+    @Test
+    void reassemblesFragmentedMessageWithInterleavedPing() throws IOException {
+        this.connection.receive(concat(
+                clientFrame(false, false, WebSocketFrames.OP_TEXT, "frag".getBytes(StandardCharsets.UTF_8)),
+                clientFrame(true, false, WebSocketFrames.OP_PING, "p".getBytes(StandardCharsets.UTF_8)),
+                clientFrame(false, false, WebSocketFrames.OP_CONTINUATION, "men".getBytes(StandardCharsets.UTF_8)),
+                clientFrame(true, false, WebSocketFrames.OP_CONTINUATION, "ted".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(List.of("fragmented"), this.received);
+        List<byte[]> pongs = sentFrames(WebSocketFrames.OP_PONG);
+        assertEquals(1, pongs.size());
+        assertArrayEquals("p".getBytes(StandardCharsets.UTF_8), pongs.get(0));
+    }
+
+    @Test
+    void decodesCompressedAndCompressedFragmentedMessages() throws IOException {
+        this.session.deflate = PerMessageDeflate.INSTANCE;
+        PerMessageDeflate client = PerMessageDeflate.INSTANCE;
+        String text = "compressed ".repeat(50);
+        byte[] compressed = client.compress(text.getBytes(StandardCharsets.UTF_8));
+        int half = compressed.length / 2;
+        this.connection.receive(concat(
+                clientFrame(true, true, WebSocketFrames.OP_TEXT, compressed),
+                clientFrame(false, true, WebSocketFrames.OP_TEXT, Arrays.copyOfRange(compressed, 0, half)),
+                clientFrame(true, false, WebSocketFrames.OP_CONTINUATION, Arrays.copyOfRange(compressed, half, compressed.length))));
+        assertEquals(List.of(text, text), this.received);
+    }
+
+    @Test
+    void rejectsUnmaskedFrame() throws IOException {
+        byte[] frame = clientFrame(WebSocketFrames.OP_TEXT, "hi");
+        frame[1] &= 0x7f;
+        this.connection.receive(frame);
+        assertTrue(this.received.isEmpty());
+        assertEquals(WebSocketSession.CLOSE_PROTOCOL_ERROR, sentCloseCode());
+        assertTrue(this.connection.closed);
+    }
+
+    @Test
+    void rejectsRsv1WithoutNegotiatedDeflate() throws IOException {
+        this.connection.receive(clientFrame(true, true, WebSocketFrames.OP_TEXT, new byte[]{1}));
+        assertEquals(WebSocketSession.CLOSE_PROTOCOL_ERROR, sentCloseCode());
+    }
+
+    @Test
+    void rejectsContinuationWithoutStart() throws IOException {
+        this.connection.receive(clientFrame(WebSocketFrames.OP_CONTINUATION, "x"));
+        assertEquals(WebSocketSession.CLOSE_PROTOCOL_ERROR, sentCloseCode());
+    }
+
+    @Test
+    void rejectsFragmentedControlFrame() throws IOException {
+        this.connection.receive(clientFrame(false, false, WebSocketFrames.OP_PING, new byte[1]));
+        assertEquals(WebSocketSession.CLOSE_PROTOCOL_ERROR, sentCloseCode());
+    }
+
+    @Test
+    void rejectsMessageOverMaxSizeAcrossFragments() throws IOException {
+        this.session.setMaxMessageSize(100);
+        this.connection.receive(concat(
+                clientFrame(false, false, WebSocketFrames.OP_BINARY, new byte[60]),
+                clientFrame(true, false, WebSocketFrames.OP_CONTINUATION, new byte[60])));
+        assertTrue(this.received.isEmpty());
+        assertEquals(WebSocketSession.CLOSE_TOO_BIG, sentCloseCode());
+    }
+
+    @Test
+    void rejectsInvalidUtf8() throws IOException {
+        this.connection.receive(clientFrame(true, false, WebSocketFrames.OP_TEXT, new byte[]{(byte) 0xC3, 0x28}));
+        assertEquals(WebSocketSession.CLOSE_INVALID_DATA, sentCloseCode());
+    }
+
+    @Test
+    void echoesCloseFrame() throws IOException {
+        this.connection.receive(clientFrame(true, false, WebSocketFrames.OP_CLOSE, new byte[]{0x03, (byte) 0xE8, 'b', 'y', 'e'}));
+        assertEquals(WebSocketSession.CLOSE_NORMAL, sentCloseCode());
+        assertTrue(this.connection.closed);
+        this.session.destroy();
+        assertEquals(List.of(WebSocketSession.CLOSE_NORMAL), this.closed);
+    }
+
+    /**
+     * 内存中的升级连接: 测试通过receive()投递数据, 服务端写出的数据保存在output中
+     */
+    static final class FakeConnection implements WebConnection {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] pending = new byte[0];
+        int pos = 0;
+        ReadListener readListener;
+        boolean closed = false;
+
+        void receive(byte[] data) throws IOException {
+            this.pending = data;
+            this.pos = 0;
+            this.readListener.onDataAvailable();
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return false;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return pos < pending.length;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    readListener = listener;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    int n = Math.min(len, pending.length - pos);
+                    System.arraycopy(pending, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+
+                @Override
+                public int read() {
+                    return pos < pending.length ? pending[pos++] & 0xff : -1;
+                }
+            };
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                }
+
+                @Override
+                public void write(int b) {
+                    output.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    output.write(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}